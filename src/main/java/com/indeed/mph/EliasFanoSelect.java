@@ -0,0 +1,214 @@
+package com.indeed.mph;
+
+import com.google.common.io.LittleEndianDataOutputStream;
+import com.indeed.util.io.BufferedFileDataOutputStream;
+import com.indeed.util.mmap.DirectMemory;
+import com.indeed.util.mmap.HeapMemory;
+import com.indeed.util.mmap.MMapBuffer;
+import com.indeed.util.mmap.Memory;
+import it.unimi.dsi.bits.BitVector;
+import it.unimi.dsi.sux4j.bits.Select;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Elias-Fano encoding of a non-decreasing sequence of n values less
+ * than u, viewed as a Select where select(i) is the i-th value.  Each
+ * value is split into its low l = floor(log2(u / n)) bits, stored
+ * verbatim, and its high bits, stored in unary as a one at position
+ * (value &gt;&gt; l) + i of a bit vector of n + (u &gt;&gt; l) + 1 bits, for a
+ * total of about 2 + l bits per value.  The high bits are decoded
+ * with an {@link MMapSelect} index, so access is a constant number of
+ * memory reads, and nothing needs to be computed to open it.
+ * <p>
+ * The encoding is a single little-endian file:
+ * <p>
+ *   numValues, lowBits, numLowWords, numHighWords
+ *   low[numLowWords]: the packed low bits of each value
+ *   high[numHighWords]: the unary-coded high bits
+ *   the MMapSelect index over the high bits
+ * <p>
+ * Serializing copies the underlying memory to the stream.
+ */
+public class EliasFanoSelect implements Select {
+    private static final long serialVersionUID = 3178925420687154317L;
+    private static final int HEADER_SIZE = 4 * 8;
+
+    private transient Memory memory;
+    private transient long numValues;
+    private transient int lowBits;
+    private transient long lowMask;
+    private transient long lowStart;
+    private transient MMapSelect high;
+
+    public EliasFanoSelect(@Nonnull final Memory memory) {
+        init(memory);
+    }
+
+    private void init(final Memory memory) {
+        this.memory = memory;
+        this.numValues = memory.getLong(0);
+        this.lowBits = (int) memory.getLong(8);
+        this.lowMask = lowBits == 0 ? 0L : -1L >>> (64 - lowBits);
+        final long numLowWords = memory.getLong(16);
+        final long numHighWords = memory.getLong(24);
+        this.lowStart = HEADER_SIZE;
+        final long highStart = lowStart + 8L * numLowWords;
+        final long indexStart = highStart + 8L * numHighWords;
+        this.high = new MMapSelect(memory.slice(highStart, 8L * numHighWords),
+                                   memory.slice(indexStart, memory.length() - indexStart));
+    }
+
+    /**
+     * Writes the encoding of values to path.
+     *
+     * @param values    function from index to value, must be non-decreasing
+     * @param numValues the number of values
+     * @param universe  an upper bound (exclusive) on the values
+     * @param path      the file to write
+     * @throws IOException if unable to write the file
+     */
+    public static void writeTo(@Nonnull final LongUnaryOperator values,
+                               final long numValues,
+                               final long universe,
+                               @Nonnull final File path) throws IOException {
+        final int lowBits = lowBits(numValues, universe);
+        final long numLowWords = (numValues * lowBits + 63) >>> 6;
+        final long numHighWords = (numHighBits(numValues, universe, lowBits) + 63) >>> 6;
+        final long lowMask = lowBits == 0 ? 0L : -1L >>> (64 - lowBits);
+        try (final LittleEndianDataOutputStream out =
+             new LittleEndianDataOutputStream(new BufferedFileDataOutputStream(path))) {
+            out.writeLong(numValues);
+            out.writeLong(lowBits);
+            out.writeLong(numLowWords);
+            out.writeLong(numHighWords);
+            // both bit vectors are filled in order, so we can stream the words
+            long word = 0;
+            long written = 0;
+            for (long i = 0, bit = 0; i < numValues; ++i, bit += lowBits) {
+                final long low = values.applyAsLong(i) & lowMask;
+                final long wordIndex = bit >>> 6;
+                if (wordIndex > written) {
+                    out.writeLong(word);
+                    ++written;
+                    word = 0;
+                }
+                final int shift = (int) (bit & 63);
+                word |= low << shift;
+                if (shift + lowBits > 64) {
+                    out.writeLong(word);
+                    ++written;
+                    word = low >>> (64 - shift);
+                }
+            }
+            for (; written < numLowWords; ++written, word = 0) {
+                out.writeLong(word);
+            }
+            word = 0;
+            written = 0;
+            long prev = 0;
+            for (long i = 0; i < numValues; ++i) {
+                final long value = values.applyAsLong(i);
+                if (value < prev || value >= universe) {
+                    throw new IllegalArgumentException("value " + i + " out of order or range: " + value);
+                }
+                prev = value;
+                final long bit = (value >>> lowBits) + i;
+                for (; (bit >>> 6) > written; ++written, word = 0) {
+                    out.writeLong(word);
+                }
+                word |= 1L << (bit & 63);
+            }
+            for (; written < numHighWords; ++written, word = 0) {
+                out.writeLong(word);
+            }
+            out.flush();
+        }
+        // append the select index over the high bits
+        final long highStart = HEADER_SIZE + 8L * numLowWords;
+        try (final MMapBuffer buffer = new MMapBuffer(path, FileChannel.MapMode.READ_ONLY, ByteOrder.LITTLE_ENDIAN);
+             final LittleEndianDataOutputStream out =
+             new LittleEndianDataOutputStream(new BufferedOutputStream(new FileOutputStream(path, true)))) {
+            final DirectMemory memory = buffer.memory();
+            MMapSelect.writeTo(i -> memory.getLong(highStart + 8L * i), 64L * numHighWords, out);
+            out.flush();
+        }
+        path.setReadOnly();
+    }
+
+    /**
+     * @param numValues the number of values
+     * @param universe  an upper bound (exclusive) on the values
+     * @return the size in bytes of the encoding, including the select index
+     */
+    public static long sizeInBytes(final long numValues, final long universe) {
+        final int lowBits = lowBits(numValues, universe);
+        final long numHighBits = numHighBits(numValues, universe, lowBits);
+        return HEADER_SIZE + 8L * ((numValues * lowBits + 63) >>> 6) + 8L * ((numHighBits + 63) >>> 6) +
+            MMapSelect.indexSize(64L * ((numHighBits + 63) >>> 6), numValues);
+    }
+
+    private static int lowBits(final long numValues, final long universe) {
+        return numValues == 0 || universe <= numValues ? 0 : 63 - Long.numberOfLeadingZeros(universe / numValues);
+    }
+
+    private static long numHighBits(final long numValues, final long universe, final int lowBits) {
+        return numValues + (universe >>> lowBits) + 1;
+    }
+
+    @Override
+    public long select(final long rank) {
+        if (rank < 0 || rank >= numValues) {
+            return -1;
+        }
+        final long highBits = high.select(rank) - rank;
+        if (lowBits == 0) {
+            return highBits;
+        }
+        final long bit = rank * lowBits;
+        final long wordOffset = lowStart + 8L * (bit >>> 6);
+        final int shift = (int) (bit & 63);
+        long low = memory.getLong(wordOffset) >>> shift;
+        if (shift + lowBits > 64) {
+            low |= memory.getLong(wordOffset + 8) << (64 - shift);
+        }
+        return (highBits << lowBits) | (low & lowMask);
+    }
+
+    public long size64() {
+        return numValues;
+    }
+
+    // there's no materialized bit vector of the values, only of the high bits
+    @Override
+    public BitVector bitVector() {
+        return high.bitVector();
+    }
+
+    @Override
+    public long numBits() {
+        return 8L * memory.length();
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        final byte[] bytes = new byte[(int) memory.length()];
+        memory.getBytes(0, bytes);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        init(new HeapMemory(bytes, ByteOrder.LITTLE_ENDIAN));
+    }
+}
@@ -0,0 +1,201 @@
+package com.indeed.mph;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A uniform sample of the keys found by lookups against a table, so that
+ * the next version of the table can be warmed by pre-faulting only
+ * the pages those keys map to, rather than entire files.  Since keys
+ * are sampled per lookup, hot keys are proportionally more likely to
+ * be in the sample.
+ * <p>
+ * Only one in sampleInterval lookups takes the sampler's lock, so
+ * the cost on the lookup path is a thread-local random number.
+ * <p>
+ * Example, persisting the sample so a restarted process warms with
+ * the hot set of its previous run:
+ * <p>
+ * <code>
+ *   final HotKeySampler&lt;KeyClass&gt; sampler = new HotKeySampler&lt;&gt;();
+ *   final ReloadingTableReader&lt;KeyClass, ValueClass&gt; reader = ReloadingTableReader
+ *       .&lt;KeyClass, ValueClass&gt;builder(ReloadingTableReader.latestSubdirectory(dir))
+ *       .withWarmer(sampler.asWarmer(new File(dir, "_hotkeys")))
+ *       .open();
+ * </code>
+ */
+public class HotKeySampler<K> {
+    private static final Logger LOGGER = Logger.getLogger(HotKeySampler.class);
+    public static final int DEFAULT_CAPACITY = 100000;
+    public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+
+    private final Object[] reservoir;
+    private final int sampleInterval;
+    // the number of lookups sampled since the last restart, guarded by this
+    private long sampled;
+    private int size;
+
+    public HotKeySampler() {
+        this(DEFAULT_CAPACITY, DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * @param capacity       the maximum number of keys to keep
+     * @param sampleInterval sample one in this many lookups on average, 1 to sample all
+     */
+    public HotKeySampler(final int capacity, final int sampleInterval) {
+        if (capacity <= 0 || sampleInterval <= 0) {
+            throw new IllegalArgumentException("capacity and sampleInterval must be positive: " +
+                                               capacity + ", " + sampleInterval);
+        }
+        this.reservoir = new Object[capacity];
+        this.sampleInterval = sampleInterval;
+    }
+
+    public int getCapacity() {
+        return reservoir.length;
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    // called for each successful lookup by a TableReader the sampler is set on
+    public void offer(@Nonnull final K key) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (sampleInterval > 1 && random.nextInt(sampleInterval) != 0) {
+            return;
+        }
+        synchronized (this) {
+            // reservoir sampling: each of the sampled lookups is kept with equal probability
+            if (sampled < reservoir.length) {
+                reservoir[(int) sampled] = key;
+                size = Math.max(size, (int) sampled + 1);
+            } else {
+                final long slot = random.nextLong(sampled + 1);
+                if (slot < reservoir.length) {
+                    reservoir[(int) slot] = key;
+                }
+            }
+            ++sampled;
+        }
+    }
+
+    // the distinct keys currently in the sample
+    public synchronized List<K> getKeys() {
+        final Set<K> result = new LinkedHashSet<>();
+        for (int i = 0; i < size; ++i) {
+            result.add((K) reservoir[i]);
+        }
+        return new ArrayList<>(result);
+    }
+
+    public synchronized long getSampledCount() {
+        return sampled;
+    }
+
+    /**
+     * Starts a new sample which progressively replaces the current
+     * one, so the sample follows the current hot set without being
+     * empty right after a restart.
+     */
+    public synchronized void restart() {
+        sampled = 0;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(reservoir, null);
+        sampled = 0;
+        size = 0;
+    }
+
+    /**
+     * Writes the distinct sampled keys to file, replacing it atomically.
+     *
+     * @param file       the file to write
+     * @param serializer the key serializer, e.g. from the table config
+     * @throws IOException if the file can't be written
+     */
+    public void save(@Nonnull final File file, @Nonnull final SmartSerializer<? super K> serializer) throws IOException {
+        final List<K> keys = getKeys();
+        final File tmp = new File(file.getPath() + ".tmp");
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(keys.size());
+            for (final K key : keys) {
+                serializer.write(key, out);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param file       a file written by {@link #save}
+     * @param serializer the key serializer it was written with
+     * @return the keys, or an empty list if the file doesn't exist
+     * @throws IOException if the file can't be read
+     */
+    public static <K> List<K> load(@Nonnull final File file, @Nonnull final SmartSerializer<? super K> serializer) throws IOException {
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            final int n = in.readInt();
+            final List<K> result = new ArrayList<>(n);
+            for (int i = 0; i < n; ++i) {
+                result.add((K) serializer.read(in));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns a warmer for {@link ReloadingTableReader} which warms
+     * each new version with the keys sampled from the previous one
+     * (see {@link TableReader#warmKeys}), then samples lookups on the
+     * new version.  If persistTo is given, the sample is saved there
+     * on each swap, and read from there when nothing has been sampled
+     * yet, i.e. for the first version opened by a new process.
+     *
+     * @param persistTo the file to keep the sample in, or null to keep it only in memory
+     * @param <V>       the value type
+     * @return a new warmer
+     */
+    public <V> ReloadingTableReader.Warmer<K, V> asWarmer(@Nullable final File persistTo) {
+        return reader -> {
+            final SmartSerializer<? super K> serializer = reader.getConfig().getKeySerializer();
+            List<K> keys = getKeys();
+            if (persistTo != null) {
+                if (keys.isEmpty()) {
+                    keys = load(persistTo, serializer);
+                } else {
+                    save(persistTo, serializer);
+                }
+            }
+            final long start = System.currentTimeMillis();
+            final long pages = reader.warmKeys(keys);
+            LOGGER.info("warmed " + pages + " pages for " + keys.size() + " hot keys of " + reader.getName() +
+                        " in " + (System.currentTimeMillis() - start) + " ms");
+            restart();
+            reader.setKeySampler(this);
+        };
+    }
+}
@@ -0,0 +1,191 @@
+package com.indeed.mph;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The flight recorder event types, only loaded through
+ * {@link TableEvents} when the jdk.jfr classes exist.
+ */
+final class JfrTableEvents {
+    private JfrTableEvents() {}
+
+    static void register() {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+                @Override
+                public void recorderInitialized(final FlightRecorder recorder) {
+                    update(recorder);
+                }
+
+                @Override
+                public void recordingStateChanged(final Recording recording) {
+                    update(FlightRecorder.getFlightRecorder());
+                }
+            });
+    }
+
+    private static void update(final FlightRecorder recorder) {
+        boolean running = false;
+        for (final Recording recording : recorder.getRecordings()) {
+            running |= recording.getState() == RecordingState.RUNNING;
+        }
+        TableEvents.recording = running;
+    }
+
+    static Object beginLookup() {
+        final LookupEvent event = new LookupEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void commitLookup(final Object e, final String table, final long hash, final long offset,
+                             final long bytesRead, final LookupStatus status) {
+        final LookupEvent event = (LookupEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.table = table;
+            event.hash = hash;
+            event.offset = offset;
+            event.bytesRead = bytesRead;
+            event.status = status.name();
+            event.commit();
+        }
+    }
+
+    static Object beginOpen() {
+        final OpenEvent event = new OpenEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void commitOpen(final Object e, final String table, final String offsetStorage, final long entries,
+                           final long dataBytes, final boolean onHeap, final long[] stepNanos) {
+        final OpenEvent event = (OpenEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.table = table;
+            event.offsetStorage = offsetStorage;
+            event.entries = entries;
+            event.dataBytes = dataBytes;
+            event.onHeap = onHeap;
+            event.metaNanos = stepNanos[0];
+            event.mapNanos = stepNanos[1];
+            event.copyNanos = stepNanos[2];
+            event.initNanos = stepNanos[3];
+            event.commit();
+        }
+    }
+
+    static Object beginPhase() {
+        final WritePhaseEvent event = new WritePhaseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void commitPhase(final Object e, final String phase, final long entries, final long bytes) {
+        final WritePhaseEvent event = (WritePhaseEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.entries = entries;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    @Name("com.indeed.mph.Lookup")
+    @Label("Table Lookup")
+    @Description("A sampled lookup in a TableReader or MphMap")
+    @Category("MPH Table")
+    @StackTrace(false)
+    static class LookupEvent extends Event {
+        @Label("Table")
+        String table;
+
+        @Label("Hash")
+        long hash;
+
+        @Label("Offset")
+        long offset;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Status")
+        String status;
+    }
+
+    @Name("com.indeed.mph.Open")
+    @Label("Table Open")
+    @Description("Opening a TableReader, with the time taken by each step")
+    @Category("MPH Table")
+    static class OpenEvent extends Event {
+        @Label("Table")
+        String table;
+
+        @Label("Offset Storage")
+        String offsetStorage;
+
+        @Label("Entries")
+        long entries;
+
+        @Label("Data Size")
+        @DataAmount
+        long dataBytes;
+
+        @Label("Data On Heap")
+        boolean onHeap;
+
+        @Label("Load Meta-Data")
+        @Timespan
+        long metaNanos;
+
+        @Label("Map Files")
+        @Timespan
+        long mapNanos;
+
+        @Label("Copy To Heap")
+        @Timespan
+        long copyNanos;
+
+        @Label("Initialize Reader")
+        @Timespan
+        long initNanos;
+    }
+
+    @Name("com.indeed.mph.WritePhase")
+    @Label("Table Write Phase")
+    @Description("A phase of writing a table with TableWriter")
+    @Category("MPH Table")
+    static class WritePhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Entries")
+        long entries;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+}
@@ -0,0 +1,226 @@
+package com.indeed.mph;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default {@link TableMetrics} listener, registering a
+ * {@link TableMXBean} for each open table with the platform MBean
+ * server, named e.g.
+ * com.indeed.mph:type=TableReader,name="/path/to/meta.bin",id=3
+ * and unregistering it when the table is closed.
+ * <p>
+ * Tables are only weakly referenced, so beans for tables which are
+ * never closed (or {@link MphMap}s never unregistered) are removed
+ * once the table has been collected.
+ */
+public class JmxTableMetrics implements TableMetrics {
+    private static final Logger LOGGER = Logger.getLogger(JmxTableMetrics.class);
+    public static final String DOMAIN = "com.indeed.mph";
+    // LookupRate is averaged over the last one to two of these
+    public static final long RATE_WINDOW_NANOS = 60L * 1000000000L;
+    public static final JmxTableMetrics INSTANCE = new JmxTableMetrics(ManagementFactory.getPlatformMBeanServer());
+
+    private final MBeanServer server;
+    private final Map<ObjectName, Table> beans = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    public JmxTableMetrics(@Nonnull final MBeanServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public void opened(@Nonnull final MonitoredTable table) {
+        removeCollected();
+        try {
+            final ObjectName name = new ObjectName(
+                DOMAIN + ":type=" + table.getClass().getSimpleName() + ",name=" +
+                ObjectName.quote(table.getName()) + ",id=" + nextId.incrementAndGet());
+            final Table bean = new Table(table);
+            server.registerMBean(bean, name);
+            beans.put(name, bean);
+        } catch (final JMException e) {
+            LOGGER.warn("couldn't register mbean for " + table.getName(), e);
+        }
+    }
+
+    @Override
+    public void closed(@Nonnull final MonitoredTable table) {
+        for (final Iterator<Map.Entry<ObjectName, Table>> iter = beans.entrySet().iterator(); iter.hasNext(); ) {
+            final Map.Entry<ObjectName, Table> entry = iter.next();
+            final MonitoredTable other = entry.getValue().table.get();
+            if (other == null || other == table) {
+                iter.remove();
+                unregister(entry.getKey());
+            }
+        }
+    }
+
+    // the names of the currently registered beans
+    public Iterable<ObjectName> getNames() {
+        return beans.keySet();
+    }
+
+    private void removeCollected() {
+        for (final Iterator<Map.Entry<ObjectName, Table>> iter = beans.entrySet().iterator(); iter.hasNext(); ) {
+            final Map.Entry<ObjectName, Table> entry = iter.next();
+            if (entry.getValue().table.get() == null) {
+                iter.remove();
+                unregister(entry.getKey());
+            }
+        }
+    }
+
+    private void unregister(final ObjectName name) {
+        try {
+            server.unregisterMBean(name);
+        } catch (final JMException e) {
+            LOGGER.warn("couldn't unregister mbean " + name, e);
+        }
+    }
+
+    static class Table implements TableMXBean {
+        private final WeakReference<MonitoredTable> table;
+        private final String name;
+        private final String type;
+        private final long openedTime;
+        // lookup counts sampled at the start of the previous and current rate windows
+        private long previousWindowTime;
+        private long previousWindowCount;
+        private long windowTime;
+        private long windowCount;
+
+        Table(@Nonnull final MonitoredTable table) {
+            this.table = new WeakReference<>(table);
+            this.name = table.getName();
+            this.type = table.getClass().getSimpleName();
+            this.openedTime = System.currentTimeMillis();
+            this.previousWindowTime = System.nanoTime();
+            this.windowTime = previousWindowTime;
+        }
+
+        private TableReader.TableStats stats() {
+            final MonitoredTable t = table.get();
+            if (t != null) {
+                try {
+                    return t.getStats();
+                } catch (final IOException | RuntimeException e) {
+                    // closed under us
+                }
+            }
+            return new TableReader.TableStats(0, 0, 0);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public boolean isOpen() {
+            return table.get() != null;
+        }
+
+        public long getTableSize() {
+            final MonitoredTable t = table.get();
+            if (t != null) {
+                try {
+                    return t.getTableSize();
+                } catch (final RuntimeException e) {
+                    // closed under us
+                }
+            }
+            return 0;
+        }
+
+        public long getTimestamp() {
+            final MonitoredTable t = table.get();
+            if (t != null) {
+                try {
+                    return t.getTimestamp();
+                } catch (final RuntimeException e) {
+                    // closed under us
+                }
+            }
+            return 0;
+        }
+
+        public long getOpenedTime() {
+            return openedTime;
+        }
+
+        public long getFilteredCount() {
+            return stats().filteredCount;
+        }
+
+        public long getMissingCount() {
+            return stats().missingCount;
+        }
+
+        public long getRetrievedCount() {
+            return stats().retrievedCount;
+        }
+
+        public long getLookupCount() {
+            final TableReader.TableStats stats = stats();
+            return stats.filteredCount + stats.missingCount + stats.retrievedCount;
+        }
+
+        public double getLookupRate() {
+            return getLookupRate(System.nanoTime(), getLookupCount());
+        }
+
+        // the rate since the start of the previous window, so that reads
+        // don't affect the rate seen by other clients
+        synchronized double getLookupRate(final long now, final long count) {
+            if (now - windowTime >= RATE_WINDOW_NANOS) {
+                previousWindowTime = windowTime;
+                previousWindowCount = windowCount;
+                windowTime = now;
+                windowCount = count;
+            }
+            return now == previousWindowTime ? 0.0 : (count - previousWindowCount) * 1e9 / (now - previousWindowTime);
+        }
+
+        public double getHitRatio() {
+            final TableReader.TableStats stats = stats();
+            final long total = stats.filteredCount + stats.missingCount + stats.retrievedCount;
+            return total == 0 ? 0.0 : (double) stats.retrievedCount / total;
+        }
+
+        public long getLatencyP50Nanos() {
+            return stats().getLatencyPercentile(50);
+        }
+
+        public long getLatencyP99Nanos() {
+            return stats().getLatencyPercentile(99);
+        }
+
+        public long getLatencyP999Nanos() {
+            return stats().getLatencyPercentile(99.9);
+        }
+
+        public long getMappedBytes() {
+            final MonitoredTable t = table.get();
+            return t == null ? 0 : t.getMappedBytes();
+        }
+
+        public long getHeapBytes() {
+            final MonitoredTable t = table.get();
+            return t == null ? 0 : t.getHeapBytes();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.indeed.mph;
+
+import com.indeed.mph.serializers.SmartByteSerializer;
+import com.indeed.mph.serializers.SmartIntegerSerializer;
+import com.indeed.mph.serializers.SmartLongSerializer;
+import com.indeed.mph.serializers.SmartShortSerializer;
+import com.indeed.mph.serializers.SmartVLongSerializer;
+import com.indeed.util.mmap.Memory;
+import com.indeed.util.mmap.MemoryDataInput;
+import it.unimi.dsi.bits.LongArrayBitVector;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Primitive-specialized reader for tables with keys written by
+ * {@link SmartLongSerializer}, avoiding boxing and per-lookup
+ * serialization.  The key is hashed directly from its 8 bytes, the
+ * stored key is compared as a raw long, and the value is decoded
+ * without boxing.  Values may be written with any of the
+ * SmartLongSerializer, SmartVLongSerializer, SmartIntegerSerializer,
+ * SmartShortSerializer or SmartByteSerializer, and are widened to
+ * long.  Tables are read in the existing on-disk format, and like
+ * TableReader this is safe to use from multiple threads.
+ * <p>
+ * Example:
+ * <p>
+ * <code>
+ *   try (final LongLongTableReader reader = LongLongTableReader.open(dir)) {
+ *     final long value = reader.getLong(key, -1L);
+ *   }
+ * </code>
+ */
+public class LongLongTableReader implements Closeable {
+    private static final int NO_VALUE = 0;
+    private static final int LONG_VALUE = 1;
+    private static final int VLONG_VALUE = 2;
+    private static final int INT_VALUE = 3;
+    private static final int SHORT_VALUE = 4;
+    private static final int BYTE_VALUE = 5;
+
+    private final TableReader<Long, ?> reader;
+    private final TableMeta<Long, ?> meta;
+    private final KeyValidator<Long, Object> validator;
+    private final boolean explicitKeys;
+    private final int valueType;
+    private final long minKey;
+    private final long maxKey;
+    private final ThreadLocal<Probe> probes = ThreadLocal.withInitial(Probe::new);
+
+    public LongLongTableReader(@Nonnull final TableReader<Long, ?> reader) {
+        final TableConfig<Long, ?> config = reader.getConfig();
+        if (!(config.getKeySerializer() instanceof SmartLongSerializer)) {
+            throw new IllegalArgumentException("keys must be written with SmartLongSerializer: " + config.getKeySerializer());
+        }
+        this.reader = reader;
+        this.meta = reader.getMeta();
+        this.validator = (KeyValidator<Long, Object>) config.getKeyValidator();
+        this.explicitKeys = !TableConfig.KeyStorage.IMPLICIT.equals(config.getKeyStorage());
+        this.valueType = getValueType(config.getValueSerializer());
+        final Long min = meta.getMinKey();
+        final Long max = meta.getMaxKey();
+        this.minKey = min == null ? Long.MIN_VALUE : min;
+        this.maxKey = max == null ? Long.MAX_VALUE : max;
+    }
+
+    public static LongLongTableReader open(@Nonnull final File metaPath) throws IOException {
+        return new LongLongTableReader(TableReader.<Long, Object>open(metaPath));
+    }
+
+    public static LongLongTableReader open(@Nonnull final String metaPath) throws IOException {
+        return open(new File(metaPath));
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    public TableReader<Long, ?> getReader() {
+        return reader;
+    }
+
+    public long size() {
+        return reader.size();
+    }
+
+    /**
+     * Looks up the value for key without boxing.
+     *
+     * @param key          the key to look up
+     * @param defaultValue returned if the key is not found
+     * @return the value widened to a long, or defaultValue
+     * @throws IOException if the table is closed or the entry can't be read
+     */
+    public long getLong(final long key, final long defaultValue) throws IOException {
+        if (valueType == NO_VALUE) {
+            throw new UnsupportedOperationException("table has no values");
+        }
+        final long start = reader.startLookup();
+        final Probe probe = probe();
+        if (!seek(probe, key)) {
+            reader.countLookup(LookupStatus.FILTERED, start);
+            return defaultValue;
+        }
+        if (!readValidKey(probe, key)) {
+            reader.countLookup(LookupStatus.MISSING, start);
+            return defaultValue;
+        }
+        reader.countLookup(LookupStatus.RETRIEVED, start);
+        return readValue(probe.in);
+    }
+
+    public boolean containsKey(final long key) {
+        try {
+            final Probe probe = probe();
+            return seek(probe, key) && readValidKey(probe, key);
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    // the hash bucket for key, or -1 if known not to be in the table
+    public long getHash(final long key) throws IOException {
+        return hash(probe(), key);
+    }
+
+    // the data offset for key, or -1 if not in the table
+    public long getOffset(final long key) throws IOException {
+        final Probe probe = probe();
+        return seek(probe, key) ? probe.in.position() : -1;
+    }
+
+    private Probe probe() throws IOException {
+        final Probe probe = probes.get();
+        final Memory dataMemory = reader.getDataMemory();
+        if (dataMemory == null) {
+            throw new IOException("table has been closed!");
+        }
+        if (probe.in == null || probe.dataMemory != dataMemory) {
+            probe.dataMemory = dataMemory;
+            probe.in = new MemoryDataInput(dataMemory);
+        }
+        return probe;
+    }
+
+    // SerializerTransformationStrategy presents the big-endian bytes
+    // of the key little-endian first, which as a single word is just
+    // the byte-reversed key.
+    private long hash(final Probe probe, final long key) {
+        if (key < minKey || key > maxKey) {
+            return -1;
+        }
+        probe.words[0] = Long.reverseBytes(key);
+        return meta.getFilteredHash(probe.bits, probe.triple);
+    }
+
+    private boolean seek(final Probe probe, final long key) {
+        final long hash = hash(probe, key);
+        if (hash < 0 || hash >= meta.numEntries()) {
+            return false;
+        }
+        final long offset = meta.getHashOffset(hash, reader.getOffsetsMemory(), reader.getSelect());
+        if (offset < 0) {
+            return false;
+        }
+        probe.in.seek(offset);
+        return true;
+    }
+
+    private boolean readValidKey(final Probe probe, final long key) throws IOException {
+        if (!explicitKeys) {
+            // with no extracted key to compare, the default validator always passes
+            return validator == null || validator instanceof EqualKeyValidator || validateBoxed(probe, key, null);
+        }
+        final long extractedKey = probe.in.readLong();
+        if (validator == null) {
+            return true;
+        }
+        if (validator instanceof EqualKeyValidator) {
+            return extractedKey == key;
+        }
+        return validateBoxed(probe, key, extractedKey);
+    }
+
+    // custom validators need the boxed entry, leaving the input
+    // positioned back at the value
+    private boolean validateBoxed(final Probe probe, final long key, @Nullable final Long extractedKey) throws IOException {
+        final long start = probe.in.position();
+        final Object value = meta.getConfig().readValue(probe.in);
+        probe.in.seek(start);
+        return validator.validate(key, extractedKey, value) != null;
+    }
+
+    private long readValue(final MemoryDataInput in) throws IOException {
+        switch (valueType) {
+        case LONG_VALUE:
+            return in.readLong();
+        case VLONG_VALUE:
+            return SmartVLongSerializer.readVLong(in);
+        case INT_VALUE:
+            return in.readInt();
+        case SHORT_VALUE:
+            return in.readShort();
+        case BYTE_VALUE:
+            return in.readByte();
+        default:
+            throw new IllegalStateException("unknown value type: " + valueType);
+        }
+    }
+
+    private static int getValueType(@Nullable final SmartSerializer<?> serializer) {
+        if (serializer == null) {
+            return NO_VALUE;
+        } else if (serializer instanceof SmartLongSerializer) {
+            return LONG_VALUE;
+        } else if (serializer instanceof SmartVLongSerializer) {
+            return VLONG_VALUE;
+        } else if (serializer instanceof SmartIntegerSerializer) {
+            return INT_VALUE;
+        } else if (serializer instanceof SmartShortSerializer) {
+            return SHORT_VALUE;
+        } else if (serializer instanceof SmartByteSerializer) {
+            return BYTE_VALUE;
+        }
+        throw new IllegalArgumentException("values must be written with an integral serializer: " + serializer);
+    }
+
+    // per-thread scratch space for hashing and reading
+    private static class Probe {
+        final long[] words = new long[1];
+        final LongArrayBitVector bits = LongArrayBitVector.wrap(words, Long.SIZE);
+        final long[] triple = new long[3];
+        Memory dataMemory;
+        MemoryDataInput in;
+    }
+}
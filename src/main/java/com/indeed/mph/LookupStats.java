@@ -0,0 +1,87 @@
+package com.indeed.mph;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The lookup counters (and optionally latencies) behind
+ * {@link TableReader#getStats()}, using striped LongAdders so that
+ * many threads reading the same table don't contend on a shared
+ * counter.  Time is only read when latencies are enabled.
+ */
+class LookupStats {
+    private final LongAdder filteredCount = new LongAdder();
+    private final LongAdder missingCount = new LongAdder();
+    private final LongAdder retrievedCount = new LongAdder();
+    private volatile TableReader.StatsLevel level = TableReader.StatsLevel.COUNTS;
+    private volatile LatencyHistogram latencies;
+
+    TableReader.StatsLevel getLevel() {
+        return level;
+    }
+
+    void setLevel(@Nonnull final TableReader.StatsLevel level) {
+        if (TableReader.StatsLevel.LATENCIES.equals(level) && latencies == null) {
+            latencies = new LatencyHistogram();
+        }
+        this.level = level;
+    }
+
+    // the start time for a lookup, or 0 if latencies aren't being recorded
+    long start() {
+        return level == TableReader.StatsLevel.LATENCIES ? System.nanoTime() : 0L;
+    }
+
+    // counts a lookup begun at startNanos (as returned by start)
+    void count(final LookupStatus status, final long startNanos) {
+        final TableReader.StatsLevel current = level;
+        if (current == TableReader.StatsLevel.NONE) {
+            return;
+        }
+        add(status, 1L);
+        if (startNanos != 0L && current == TableReader.StatsLevel.LATENCIES) {
+            latencies.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    void add(final LookupStatus status, final long n) {
+        if (n == 0 || level == TableReader.StatsLevel.NONE) {
+            return;
+        }
+        switch (status) {
+        case FILTERED:
+            filteredCount.add(n);
+            break;
+        case MISSING:
+            missingCount.add(n);
+            break;
+        default:
+            retrievedCount.add(n);
+        }
+    }
+
+    // counts the results of a batch lookup, whose latency isn't that of a single lookup
+    void addAll(final LookupStatus[] statuses) {
+        if (level == TableReader.StatsLevel.NONE) {
+            return;
+        }
+        long filtered = 0;
+        long missing = 0;
+        for (final LookupStatus status : statuses) {
+            if (status == LookupStatus.FILTERED) {
+                ++filtered;
+            } else if (status == LookupStatus.MISSING) {
+                ++missing;
+            }
+        }
+        add(LookupStatus.FILTERED, filtered);
+        add(LookupStatus.MISSING, missing);
+        add(LookupStatus.RETRIEVED, statuses.length - filtered - missing);
+    }
+
+    TableReader.TableStats snapshot() {
+        final LatencyHistogram histogram = latencies;
+        return new TableReader.TableStats(filteredCount.sum(), missingCount.sum(), retrievedCount.sum(),
+                                          histogram == null ? null : histogram.getCounts());
+    }
+}
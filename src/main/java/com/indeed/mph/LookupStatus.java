@@ -0,0 +1,11 @@
+package com.indeed.mph;
+
+/**
+ * The outcome of looking up a single key, matching the counts kept
+ * in {@link TableReader.TableStats}.
+ */
+public enum LookupStatus {
+    FILTERED,               // rejected before touching the data (range, signature, etc.)
+    MISSING,                // an entry was read but failed validation
+    RETRIEVED               // found
+}
@@ -1,13 +1,20 @@
 package com.indeed.mph;
 
 import com.indeed.util.mmap.MMapBuffer;
+import com.indeed.util.mmap.Memory;
 import it.unimi.dsi.bits.AbstractBitVector;
 
+import java.nio.ByteOrder;
+
 public class MMapBitVector extends AbstractBitVector {
-    final MMapBuffer buffer;    // we're not responsible for closing this
+    final Memory memory;        // we're not responsible for closing this
 
     MMapBitVector(final MMapBuffer buffer) {
-        this.buffer = buffer;
+        this(buffer.memory());
+    }
+
+    MMapBitVector(final Memory memory) {
+        this.memory = memory;
     }
 
     public boolean getBoolean(final int index) {
@@ -15,15 +22,36 @@ public class MMapBitVector extends AbstractBitVector {
     }
 
     public boolean getBoolean(final long index) {
-        final byte b = buffer.memory().getByte(index / 8);
+        final byte b = memory.getByte(index / 8);
         return ((b >>> (index % 8L)) & 1L) == 1L;
     }
 
+    // the index-th 64-bit word of the vector, read little-endian whatever
+    // the memory's order so that bit i of the word is bit i of getBoolean
+    public long getWord(final long index) {
+        final long word = memory.getLong(index * 8);
+        return ByteOrder.BIG_ENDIAN.equals(memory.getOrder()) ? Long.reverseBytes(word) : word;
+    }
+
+    public long getLong(final long from, final long to) {
+        final int width = (int) (to - from);
+        if (width == 0) {
+            return 0L;
+        }
+        final long word = from >>> 6;
+        final int bit = (int) (from & 63);
+        final long mask = width == 64 ? -1L : (1L << width) - 1;
+        if (bit + width <= 64) {
+            return (getWord(word) >>> bit) & mask;
+        }
+        return ((getWord(word) >>> bit) | (getWord(word + 1) << (64 - bit))) & mask;
+    }
+
     public long length() {
         return size64();
     }
 
     public long size64() {
-        return buffer.memory().length() * 8;
+        return memory.length() * 8;
     }
 }
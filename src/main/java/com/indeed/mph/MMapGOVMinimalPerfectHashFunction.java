@@ -0,0 +1,344 @@
+package com.indeed.mph;
+
+import com.google.common.io.LittleEndianDataOutputStream;
+import com.indeed.util.io.BufferedFileDataOutputStream;
+import com.indeed.util.mmap.HeapMemory;
+import com.indeed.util.mmap.MMapBuffer;
+import com.indeed.util.mmap.Memory;
+import it.unimi.dsi.bits.BitVector;
+import it.unimi.dsi.bits.LongArrayBitVector;
+import it.unimi.dsi.bits.TransformationStrategy;
+import it.unimi.dsi.fastutil.longs.LongBigList;
+import it.unimi.dsi.sux4j.mph.AbstractHashFunction;
+import it.unimi.dsi.sux4j.mph.GOVMinimalPerfectHashFunction;
+import it.unimi.dsi.sux4j.mph.Hashes;
+import it.unimi.dsi.sux4j.mph.solve.Linear3SystemSolver;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A GOVMinimalPerfectHashFunction whose bit-packed arrays live in a
+ * separate file which is mmapped rather than deserialized onto the
+ * heap, so opening is O(1) and the arrays are shared through the page
+ * cache between processes.  The remaining scalar state is kept in a
+ * "skeleton" copy of the original function with its arrays removed,
+ * which is what gets stored in the table meta.
+ * <p>
+ * The file consists of little-endian longs: a header with the number
+ * of chunk offsets, the number of value words, the signature width
+ * and the number of signature words, followed by each array in turn.
+ * Lookups return exactly the same results as the original function.
+ * <p>
+ * Serializing this function copies the arrays into the serialized
+ * form, and deserializes into a heap-backed copy.
+ *
+ * @param <K> key type
+ */
+public class MMapGOVMinimalPerfectHashFunction<K> extends AbstractHashFunction<K> implements Closeable {
+    private static final long serialVersionUID = -3175318493524108113L;
+    private static final int HEADER_SIZE = 4 * 8;
+    private static final int C_TIMES_256 = (int) Math.floor(1.1 * 256);
+    private static final long OFFSET_MASK = 0xFFFFFFFFFFFFFFL;
+
+    private final GOVMinimalPerfectHashFunction<K> skeleton;
+    private transient MMapBuffer buffer;
+    private transient Memory memory;
+    private transient TransformationStrategy<? super K> transform;
+    private transient long n;
+    private transient int chunkShift;
+    private transient long globalSeed;
+    private transient long signatureMask;
+    private transient int signatureWidth;
+    private transient long edgesStart;
+    private transient long valuesStart;
+    private transient long signaturesStart;
+    private transient long numValueWords;
+    private transient long numEdges;
+
+    public MMapGOVMinimalPerfectHashFunction(@Nonnull final GOVMinimalPerfectHashFunction<K> skeleton,
+                                             @Nonnull final Memory memory) {
+        this(skeleton, memory, null);
+    }
+
+    private MMapGOVMinimalPerfectHashFunction(@Nonnull final GOVMinimalPerfectHashFunction<K> skeleton,
+                                              @Nonnull final Memory memory,
+                                              @Nullable final MMapBuffer buffer) {
+        this.skeleton = skeleton;
+        init(memory, buffer);
+    }
+
+    /**
+     * Maps the arrays for the given skeleton function from path.
+     *
+     * @param skeleton the function as stripped by {@link #writeTo}
+     * @param path     the file written by {@link #writeTo}
+     * @param <K> key type
+     * @return a new mmapped function, which must be closed
+     * @throws IOException if the file can't be mapped
+     */
+    public static <K> MMapGOVMinimalPerfectHashFunction<K> open(
+            @Nonnull final GOVMinimalPerfectHashFunction<K> skeleton,
+            @Nonnull final File path) throws IOException {
+        final MMapBuffer buffer = new MMapBuffer(path, FileChannel.MapMode.READ_ONLY, ByteOrder.LITTLE_ENDIAN);
+        return new MMapGOVMinimalPerfectHashFunction<>(skeleton, buffer.memory(), buffer);
+    }
+
+    /**
+     * As above, but reads the arrays onto the heap.
+     *
+     * @param skeleton the function as stripped by {@link #writeTo}
+     * @param bytes    the contents of the file written by {@link #writeTo}
+     * @param <K> key type
+     * @return a new heap-backed function
+     */
+    public static <K> MMapGOVMinimalPerfectHashFunction<K> fromBytes(
+            @Nonnull final GOVMinimalPerfectHashFunction<K> skeleton,
+            @Nonnull final byte[] bytes) {
+        return new MMapGOVMinimalPerfectHashFunction<>(skeleton, new HeapMemory(bytes, ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Writes the arrays of mph to path, and then removes them from
+     * mph, leaving the skeleton to be serialized on its own.  After
+     * this mph can no longer be used for lookups.
+     *
+     * @param mph  the function to write
+     * @param path the file to write the arrays to
+     * @throws IOException if unable to write the file or access the arrays
+     */
+    public static void writeTo(@Nonnull final GOVMinimalPerfectHashFunction<?> mph, @Nonnull final File path) throws IOException {
+        try {
+            final long[] edges = (long[]) getField(mph, "edgeOffsetAndSeed");
+            final long[] values = ((LongArrayBitVector) getField(mph, "bitVector")).bits();
+            final LongBigList signatures = (LongBigList) getField(mph, "signatures");
+            final long[] signatureBits;
+            final int width;
+            if (signatures == null) {
+                signatureBits = new long[0];
+                width = 0;
+            } else {
+                final Field bitVectorField = signatures.getClass().getDeclaredField("bitVector");
+                bitVectorField.setAccessible(true);
+                signatureBits = ((BitVector) bitVectorField.get(signatures)).bits();
+                width = Long.bitCount((Long) getField(mph, "signatureMask"));
+            }
+            try (final LittleEndianDataOutputStream out = new LittleEndianDataOutputStream(new BufferedFileDataOutputStream(path))) {
+                out.writeLong(edges.length);
+                out.writeLong(values.length);
+                out.writeLong(width);
+                out.writeLong(signatureBits.length);
+                for (final long[] array : new long[][] {edges, values, signatureBits}) {
+                    for (final long value : array) {
+                        out.writeLong(value);
+                    }
+                }
+                out.flush();
+            }
+            path.setReadOnly();
+            // the skeleton's readObject expects a non-null bitVector
+            setField(mph, "bitVector", LongArrayBitVector.getInstance());
+            setField(mph, "values", null);
+            setField(mph, "signatures", null);
+            setField(mph, "edgeOffsetAndSeed", null);
+            setField(mph, "array", null);
+        } catch (final NoSuchFieldException | IllegalAccessException e) {
+            throw new IOException("can't access hash function arrays", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer != null) {
+            buffer.close();
+            buffer = null;
+        }
+    }
+
+    @Nonnull
+    public GOVMinimalPerfectHashFunction<K> getSkeleton() {
+        return skeleton;
+    }
+
+    public long getGlobalSeed() {
+        return globalSeed;
+    }
+
+    @Override
+    public long getLong(final Object key) {
+        if (n == 0) {
+            return defRetValue;
+        }
+        final long[] triple = new long[3];
+        Hashes.spooky4(transform.toBitVector((K) key), globalSeed, triple);
+        return getLongByTriple(triple);
+    }
+
+    /**
+     * Equivalent to {@link GOVMinimalPerfectHashFunction#getLongByTriple(long[])}.
+     *
+     * @param triple the spooky hash of the transformed key
+     * @return the hash bucket of the key, or -1 if not present
+     */
+    public long getLongByTriple(final long[] triple) {
+        if (n == 0) {
+            return defRetValue;
+        }
+        final int chunk = chunkShift == Long.SIZE ? 0 : (int) (triple[0] >>> chunkShift);
+        final long edgeOffsetSeed = memory.getLong(edgesStart + 8L * chunk);
+        final long chunkOffset = vertexOffset(edgeOffsetSeed);
+        final int numVariables = (int) (vertexOffset(memory.getLong(edgesStart + 8L * (chunk + 1))) - chunkOffset);
+        final int[] e = new int[3];
+        Linear3SystemSolver.tripleToEquation(triple, edgeOffsetSeed & ~OFFSET_MASK, numVariables, e);
+        if (e[0] == -1) {
+            return defRetValue;
+        }
+        final long which = getValue(e[0] + chunkOffset) + getValue(e[1] + chunkOffset) + getValue(e[2] + chunkOffset);
+        final long result = (edgeOffsetSeed & OFFSET_MASK) +
+            countNonzeroPairs(chunkOffset, chunkOffset + e[(int) (which % 3)]);
+        if (result >= n) {
+            return defRetValue;
+        }
+        if (signatureMask != 0 && getSignature(result) != (triple[0] & signatureMask)) {
+            return defRetValue;
+        }
+        return result;
+    }
+
+    @Override
+    public long size64() {
+        return n;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(n, Integer.MAX_VALUE);
+    }
+
+    public long numBits() {
+        return numValueWords * Long.SIZE + numEdges * Long.SIZE;
+    }
+
+    // the size of the arrays in bytes, whether mmapped or on the heap
+    public long length() {
+        return memory.length();
+    }
+
+    // true if the arrays are mmapped rather than on the heap
+    public boolean isMapped() {
+        return buffer != null;
+    }
+
+    Memory getMemory() {
+        return memory;
+    }
+
+    private static long vertexOffset(final long edgeOffsetSeed) {
+        return ((edgeOffsetSeed & OFFSET_MASK) * C_TIMES_256) >> 8;
+    }
+
+    private long getWord(final long word) {
+        return memory.getLong(valuesStart + 8L * word);
+    }
+
+    private long getValue(final long index) {
+        final long bit = index * 2;
+        return (getWord(bit >>> 6) >>> (bit & 63)) & 3L;
+    }
+
+    private long getSignature(final long index) {
+        final long bit = index * signatureWidth;
+        final long word = bit >>> 6;
+        final int shift = (int) (bit & 63);
+        long result = memory.getLong(signaturesStart + 8L * word) >>> shift;
+        if (shift + signatureWidth > Long.SIZE) {
+            result |= memory.getLong(signaturesStart + 8L * (word + 1)) << (Long.SIZE - shift);
+        }
+        return signatureWidth == Long.SIZE ? result : result & ((1L << signatureWidth) - 1);
+    }
+
+    private static int countNonzeroPairs(final long x) {
+        return Long.bitCount((x | x >>> 1) & 0x5555555555555555L);
+    }
+
+    // number of nonzero 2-bit values in [start, end)
+    private long countNonzeroPairs(final long start, final long end) {
+        long block = start / 32;
+        final long endBlock = end / 32;
+        final int startOffset = (int) (start % 32);
+        final int endOffset = (int) (end % 32);
+        if (block == endBlock) {
+            return countNonzeroPairs((getWord(block) & ((1L << (endOffset * 2)) - 1)) >>> (startOffset * 2));
+        }
+        long pairs = 0;
+        if (startOffset != 0) {
+            pairs += countNonzeroPairs(getWord(block++) >>> (startOffset * 2));
+        }
+        while (block < endBlock) {
+            pairs += countNonzeroPairs(getWord(block++));
+        }
+        if (endOffset != 0) {
+            pairs += countNonzeroPairs(getWord(block) & ((1L << (endOffset * 2)) - 1));
+        }
+        return pairs;
+    }
+
+    private void init(final Memory memory, final MMapBuffer buffer) {
+        this.memory = memory;
+        this.buffer = buffer;
+        try {
+            transform = (TransformationStrategy<? super K>) getField(skeleton, "transform");
+            chunkShift = (Integer) getField(skeleton, "chunkShift");
+            globalSeed = (Long) getField(skeleton, "globalSeed");
+            signatureMask = (Long) getField(skeleton, "signatureMask");
+        } catch (final NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalStateException("can't access hash function fields", e);
+        }
+        n = skeleton.size64();
+        defRetValue = skeleton.defaultReturnValue();
+        numEdges = memory.getLong(0);
+        numValueWords = memory.getLong(8);
+        signatureWidth = (int) memory.getLong(16);
+        edgesStart = HEADER_SIZE;
+        valuesStart = edgesStart + 8L * numEdges;
+        signaturesStart = valuesStart + 8L * numValueWords;
+        if (signatureMask != 0 && signatureWidth != Long.bitCount(signatureMask)) {
+            throw new IllegalStateException("signature width " + signatureWidth + " doesn't match the hash function");
+        }
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        final byte[] bytes = new byte[(int) memory.length()];
+        memory.getBytes(0, bytes);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        init(new HeapMemory(bytes, ByteOrder.LITTLE_ENDIAN), null);
+    }
+
+    private static Object getField(final Object obj, final String name) throws NoSuchFieldException, IllegalAccessException {
+        final Field field = GOVMinimalPerfectHashFunction.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(obj);
+    }
+
+    private static void setField(final Object obj, final String name, final Object value) throws NoSuchFieldException, IllegalAccessException {
+        final Field field = GOVMinimalPerfectHashFunction.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(obj, value);
+    }
+}
@@ -0,0 +1,168 @@
+package com.indeed.mph;
+
+import com.google.common.io.LittleEndianDataOutputStream;
+import com.indeed.util.io.BufferedFileDataOutputStream;
+import com.indeed.util.mmap.Memory;
+import it.unimi.dsi.bits.BitVector;
+import it.unimi.dsi.sux4j.bits.Select;
+
+import javax.annotation.Nonnull;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A Select over a bit vector in memory (generally mmapped) using a
+ * pre-computed index, also in memory, so that no work is needed to
+ * open it.  The index is written by {@link #writeTo} alongside the bit
+ * vector and consists of little-endian longs:
+ * <p>
+ *   numBits, numOnes, numBlocks, numInventory
+ *   counts[numBlocks + 1]: the number of ones before each 512-bit block
+ *   inventory[numInventory]: the position of every 512th one
+ * <p>
+ * A select finds the range of blocks from the inventory, binary
+ * searches the block counts, and then scans at most 8 words.  This
+ * uses about 13% extra space, similar to Rank9.
+ * <p>
+ * This is a view on the underlying memory and isn't intended to be
+ * serialized.
+ */
+public class MMapSelect implements Select {
+    private static final long serialVersionUID = -4628203718367447510L;
+    private static final int HEADER_SIZE = 4 * 8;
+    private static final int LOG2_WORDS_PER_BLOCK = 3;
+    private static final int LOG2_BLOCK_BITS = LOG2_WORDS_PER_BLOCK + 6;
+    private static final int LOG2_ONES_PER_INVENTORY = 9;
+
+    private final MMapBitVector bits;
+    private final Memory index;
+    private final long numOnes;
+    private final long numBlocks;
+    private final long numInventory;
+    private final long countsStart;
+    private final long inventoryStart;
+
+    public MMapSelect(@Nonnull final Memory bits, @Nonnull final Memory index) {
+        this.bits = new MMapBitVector(bits);
+        this.index = index;
+        this.numOnes = index.getLong(8);
+        this.numBlocks = index.getLong(16);
+        this.numInventory = index.getLong(24);
+        this.countsStart = HEADER_SIZE;
+        this.inventoryStart = countsStart + 8L * (numBlocks + 1);
+    }
+
+    /**
+     * Writes the select index for the first numBits bits of words to path.
+     *
+     * @param words   the bit vector, as little-endian words
+     * @param numBits the length of the bit vector
+     * @param path    the file to write the index to
+     * @throws IOException if unable to write the file
+     */
+    public static void writeTo(@Nonnull final long[] words, final long numBits, @Nonnull final File path) throws IOException {
+        try (final LittleEndianDataOutputStream out = new LittleEndianDataOutputStream(new BufferedFileDataOutputStream(path))) {
+            writeTo(i -> words[(int) i], numBits, out);
+            out.flush();
+        }
+        path.setReadOnly();
+    }
+
+    /**
+     * As above, writing the index to out, with the i-th word of the
+     * bit vector given by words.
+     *
+     * @param words   function from word index to the little-endian word
+     * @param numBits the length of the bit vector
+     * @param out     the (little-endian) output to write the index to
+     * @throws IOException if unable to write the index
+     */
+    public static void writeTo(@Nonnull final LongUnaryOperator words, final long numBits, @Nonnull final DataOutput out) throws IOException {
+        final long numWords = (numBits + 63) >>> 6;
+        final long numBlocks = (numWords + (1 << LOG2_WORDS_PER_BLOCK) - 1) >>> LOG2_WORDS_PER_BLOCK;
+        long numOnes = 0;
+        for (long i = 0; i < numWords; ++i) {
+            numOnes += Long.bitCount(words.applyAsLong(i));
+        }
+        final long numInventory = (numOnes + (1 << LOG2_ONES_PER_INVENTORY) - 1) >>> LOG2_ONES_PER_INVENTORY;
+        out.writeLong(numBits);
+        out.writeLong(numOnes);
+        out.writeLong(numBlocks);
+        out.writeLong(numInventory);
+        long count = 0;
+        for (long i = 0; i < numWords; ++i) {
+            if ((i & ((1 << LOG2_WORDS_PER_BLOCK) - 1)) == 0) {
+                out.writeLong(count);
+            }
+            count += Long.bitCount(words.applyAsLong(i));
+        }
+        out.writeLong(count);
+        count = 0;
+        for (long i = 0; i < numWords; ++i) {
+            for (long word = words.applyAsLong(i); word != 0; word &= word - 1) {
+                if ((count++ & ((1 << LOG2_ONES_PER_INVENTORY) - 1)) == 0) {
+                    out.writeLong((i << 6) + Long.numberOfTrailingZeros(word));
+                }
+            }
+        }
+    }
+
+    // the size in bytes of the index for a bit vector with the given number of bits and ones
+    public static long indexSize(final long numBits, final long numOnes) {
+        final long numBlocks = (((numBits + 63) >>> 6) + (1 << LOG2_WORDS_PER_BLOCK) - 1) >>> LOG2_WORDS_PER_BLOCK;
+        final long numInventory = (numOnes + (1 << LOG2_ONES_PER_INVENTORY) - 1) >>> LOG2_ONES_PER_INVENTORY;
+        return HEADER_SIZE + 8L * (numBlocks + 1 + numInventory);
+    }
+
+    @Override
+    public long select(final long rank) {
+        if (rank < 0 || rank >= numOnes) {
+            return -1;
+        }
+        final long inventory = rank >>> LOG2_ONES_PER_INVENTORY;
+        long lo = index.getLong(inventoryStart + 8L * inventory) >>> LOG2_BLOCK_BITS;
+        long hi = inventory + 1 < numInventory ?
+            index.getLong(inventoryStart + 8L * (inventory + 1)) >>> LOG2_BLOCK_BITS : numBlocks - 1;
+        // find the last block with at most rank ones before it
+        while (lo < hi) {
+            final long mid = (lo + hi + 1) >>> 1;
+            if (getCount(mid) <= rank) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        long remaining = rank - getCount(lo);
+        for (long word = lo << LOG2_WORDS_PER_BLOCK; ; ++word) {
+            long bits = this.bits.getWord(word);
+            final int ones = Long.bitCount(bits);
+            if (remaining < ones) {
+                for (; remaining > 0; --remaining) {
+                    bits &= bits - 1;
+                }
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            remaining -= ones;
+        }
+    }
+
+    @Override
+    public BitVector bitVector() {
+        return bits;
+    }
+
+    @Override
+    public long numBits() {
+        return (numBlocks + 1 + numInventory) * Long.SIZE;
+    }
+
+    public long numOnes() {
+        return numOnes;
+    }
+
+    private long getCount(final long block) {
+        return index.getLong(countsStart + 8L * block);
+    }
+}
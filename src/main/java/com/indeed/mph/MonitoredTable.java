@@ -0,0 +1,32 @@
+package com.indeed.mph;
+
+import java.io.IOException;
+
+/**
+ * The view of an open table published to {@link TableMetrics}
+ * listeners, implemented by {@link TableReader},
+ * {@link SharedTableReader} and {@link MphMap}.  All methods are cheap
+ * enough to call on every metrics poll, and return zeros once the
+ * table has been closed.
+ */
+public interface MonitoredTable {
+    // a name for the table, generally the path to its meta-data
+    String getName();
+
+    // the number of entries in the table
+    long getTableSize();
+
+    // the time the table was written
+    long getTimestamp();
+
+    // the lookup counts (and latencies if enabled) so far
+    TableReader.TableStats getStats() throws IOException;
+
+    // the total size of the files mmapped for the table
+    long getMappedBytes();
+
+    // an estimate of the heap used by the table, including the hash
+    // function, offsets selects, dictionaries and any data or files
+    // copied into the heap
+    long getHeapBytes();
+}
@@ -29,7 +29,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.indeed.util.io.Files.loadFileAsByteArray;
 
@@ -50,21 +54,36 @@ import static com.indeed.util.io.Files.loadFileAsByteArray;
  *
  * @author alexs
  */
-public class MphMap<K, V> implements Map<K, V>, Serializable {
+public class MphMap<K, V> implements Map<K, V>, Serializable, MonitoredTable {
     private static final long serialVersionUID = -607723193592825808L;
     private final TableMeta<K, V> meta;
-    private final Memory memory;
+    private transient Memory memory;
     private final Select select;
     private Memory dataMemory;
     private byte[] data;
     private byte[] offsets;
+    private byte[] hash;
+    private byte[] fingerprints;
+    private byte[] filter;
     private final K minKey;
     private final K maxKey;
-
-    private MphMap(final TableMeta<K, V> meta, final byte[] data, final byte[] offsets) {
+    private transient ThreadLocal<TableCursor<K, V>> cursors;
+    private transient LookupStats stats;
+    private transient AtomicBoolean registered;
+
+    private MphMap(final TableMeta<K, V> meta,
+                   final byte[] data,
+                   final byte[] offsets,
+                   final byte[] hash,
+                   final byte[] fingerprints,
+                   final byte[] filter) throws IOException {
         this.meta = meta;
         this.data = data;
         this.offsets = offsets;
+        this.hash = hash;
+        this.fingerprints = fingerprints;
+        this.filter = filter;
+        attachHash();
         dataMemory = new HeapMemory(data, ByteOrder.nativeOrder());
         minKey = meta.getMinKey();
         maxKey = meta.getMaxKey();
@@ -72,14 +91,20 @@ public class MphMap<K, V> implements Map<K, V>, Serializable {
             if (TableConfig.OffsetStorage.SELECTED.equals(meta.getConfig().getOffsetStorage())) {
                 select = new HintedBsearchSelect(new Rank9(new ByteArrayBitVector(offsets)));
                 memory = null;
+            } else if (TableConfig.OffsetStorage.ELIAS_FANO.equals(meta.getConfig().getOffsetStorage())) {
+                select = new EliasFanoSelect(new HeapMemory(offsets, ByteOrder.nativeOrder()));
+                memory = null;
             } else {
                 select = null;
                 memory = new HeapMemory(offsets, ByteOrder.nativeOrder());
             }
         } else {
             select = null;
-            memory = null;
+            memory = TableConfig.OffsetStorage.INLINED.equals(meta.getConfig().getOffsetStorage()) ? dataMemory : null;
         }
+        cursors = ThreadLocal.withInitial(this::newCursor);
+        stats = new LookupStats();
+        registered = new AtomicBoolean();
     }
 
     /**
@@ -103,7 +128,13 @@ public class MphMap<K, V> implements Map<K, V>, Serializable {
         final byte[] data = loadFileAsByteArray(meta.getDataPath().getPath());
         final byte[] offsets = (meta.getOffsetsPath() != null && meta.getOffsetsPath().exists()) ?
             loadFileAsByteArray(meta.getOffsetsPath().getPath()) : null;
-        return new MphMap<>(meta, data, offsets);
+        final byte[] hash = TableConfig.HashStorage.MMAPPED.equals(meta.getConfig().getHashStorage()) ?
+            loadFileAsByteArray(meta.getHashPath().getPath()) : null;
+        final byte[] fingerprints = meta.getConfig().getFingerprintWidth() > 0 && meta.getFingerprintsPath().exists() ?
+            loadFileAsByteArray(meta.getFingerprintsPath().getPath()) : null;
+        final byte[] filter = meta.getConfig().getKeyFilter() && meta.getFilterPath().exists() ?
+            loadFileAsByteArray(meta.getFilterPath().getPath()) : null;
+        return new MphMap<>(meta, data, offsets, hash, fingerprints, filter);
     }
 
     public static <K, V> MphMap<K, V> load(@Nonnull final File metaPath) throws IOException {
@@ -188,6 +219,26 @@ public class MphMap<K, V> implements Map<K, V>, Serializable {
         }
     }
 
+    /**
+     * Reports this map to {@link TableMetricsRegistry}, e.g. as an
+     * MBean.  Since maps are never closed they aren't reported by
+     * default, and should be unregistered once no longer used.
+     *
+     * @return this map
+     */
+    public MphMap<K, V> registerMetrics() {
+        if (registered.compareAndSet(false, true)) {
+            TableMetricsRegistry.opened(this);
+        }
+        return this;
+    }
+
+    public void unregisterMetrics() {
+        if (registered.compareAndSet(true, false)) {
+            TableMetricsRegistry.closed(this);
+        }
+    }
+
     /**
      * Returns the meta-data associated with this mph table.
      */
@@ -205,12 +256,17 @@ public class MphMap<K, V> implements Map<K, V>, Serializable {
     }
 
     public boolean containsKey(@Nonnull final Object o) {
+        final long start = stats.start();
         try {
             final K key = (K) o;
+            final LookupStatus status;
             if (meta.getConfig().getKeyValidator() == null) {
-                return getOffset(key) >= 0;
+                status = getOffset(key) >= 0 ? LookupStatus.RETRIEVED : LookupStatus.FILTERED;
+            } else {
+                status = cursors.get().contains(key);
             }
-            return get(key) != null;
+            stats.count(status, start);
+            return LookupStatus.RETRIEVED.equals(status);
         } catch (final Exception e) {
             return false;
         }
@@ -221,27 +277,110 @@ public class MphMap<K, V> implements Map<K, V>, Serializable {
     }
 
     public V get(@Nonnull final Object o) {
+        final long start = stats.start();
         try {
             final K key = (K) o;
-            final long offset = getOffset(key);
-            if (offset < 0) {
-                return null;
-            }
-            final MemoryDataInput in = new MemoryDataInput(dataMemory);
-            in.seek(offset);
-            final TableConfig<K, V> config = meta.getConfig();
-            final K extractedKey = config.readKey(in);
-            final V value = config.readValue(in);
-            if (config.getKeyValidator() != null) {
-                final V result = config.getKeyValidator().validate(key, extractedKey, value);
-                return result;
+            final TableCursor<K, V> cursor = cursors.get();
+            final Object event = TableEvents.beginLookup(cursor);
+            final V result;
+            final LookupStatus status;
+            if (!cursor.seek(key)) {
+                result = null;
+                status = LookupStatus.FILTERED;
+            } else {
+                result = cursor.readValidated(key);
+                status = result == null && meta.getConfig().getKeyValidator() != null ?
+                    LookupStatus.MISSING : LookupStatus.RETRIEVED;
             }
-            return value;
+            stats.count(status, start);
+            TableEvents.commitLookup(event, this, cursor, status);
+            return result;
+        } catch (final IOException e) {
+            throw new RuntimeException("corrupt serialized data in MphMap", e);
+        }
+    }
+
+    /**
+     * Looks up many keys at once, reading the data in offset order.
+     * See {@link TableCursor#getAll(Object[], Object[])}.
+     *
+     * @param keys the keys to look up
+     * @param out  array at least as long as keys to hold the values (null if not found)
+     * @return the status of each lookup, parallel to keys
+     */
+    public LookupStatus[] getAll(@Nonnull final K[] keys, @Nonnull final V[] out) {
+        try {
+            final LookupStatus[] result = cursors.get().getAll(keys, out);
+            stats.addAll(result);
+            return result;
         } catch (final IOException e) {
             throw new RuntimeException("corrupt serialized data in MphMap", e);
         }
     }
 
+    /**
+     * As above, returning a map of only the keys which were found.
+     *
+     * @param keys the keys to look up
+     * @return a map from each found key to its value
+     */
+    public Map<K, V> getAll(@Nonnull final Iterable<K> keys) {
+        final K[] keyArray = TableReader.toArray(keys);
+        final V[] values = (V[]) new Object[keyArray.length];
+        return TableReader.toMap(keyArray, values, getAll(keyArray, values));
+    }
+
+    public TableReader.TableStats getStats() {
+        return stats.snapshot();
+    }
+
+    public TableReader.StatsLevel getStatsLevel() {
+        return stats.getLevel();
+    }
+
+    // see TableReader#setStatsLevel
+    public void setStatsLevel(@Nonnull final TableReader.StatsLevel level) {
+        stats.setLevel(level);
+    }
+
+    @Override
+    public String getName() {
+        return String.valueOf(meta.getMetaPath());
+    }
+
+    @Override
+    public long getTableSize() {
+        return meta.numEntries();
+    }
+
+    @Override
+    public long getMappedBytes() {
+        return meta.getMappedBytes();
+    }
+
+    // the data and offsets plus the hash function, fingerprints and filter copied from the table
+    @Override
+    public long getHeapBytes() {
+        return data.length + (offsets != null ? offsets.length : 0) +
+            (select instanceof HintedBsearchSelect ? select.numBits() / 8 : 0) +
+            meta.getHeapBytes();
+    }
+
+    /**
+     * Returns a new cursor for repeated lookups from a single thread
+     * without per-call allocation.
+     *
+     * @return a new TableCursor on this map
+     */
+    public TableCursor<K, V> newCursor() {
+        return new TableCursor<>(meta, dataMemory, memory, select, minKey, maxKey);
+    }
+
+    // a new scanner over all entries in hash order, see TableScanner
+    public TableScanner<K, V> newScanner() {
+        return new TableScanner<>(meta, dataMemory, memory, select, 0, size());
+    }
+
     // no validation other than range, just get the value associated with the hash
     public MemoryDataInput getMemoryForHash(final long hash) throws IOException {
         if (dataMemory == null) {
@@ -272,7 +411,7 @@ public class MphMap<K, V> implements Map<K, V>, Serializable {
         if (in == null) {
             return null;
         }
-        meta.getConfig().readKey(in);
+        meta.getConfig().skipKey(in);
         return meta.getConfig().readValue(in);
     }
 
@@ -312,6 +451,19 @@ public class MphMap<K, V> implements Map<K, V>, Serializable {
         return meta.getTimestamp();
     }
 
+    // keep the hash function arrays, fingerprints and filter in the heap alongside the data
+    private void attachHash() throws IOException {
+        if (hash != null) {
+            meta.setMappedHashFunction(MMapGOVMinimalPerfectHashFunction.fromBytes(meta.getMph(), hash));
+        }
+        if (fingerprints != null) {
+            meta.setFingerprints(new HeapMemory(fingerprints, ByteOrder.LITTLE_ENDIAN));
+        }
+        if (filter != null) {
+            meta.setFilter(new XorFilter(new HeapMemory(filter, ByteOrder.LITTLE_ENDIAN)));
+        }
+    }
+
     private void writeObject(final ObjectOutputStream out) throws IOException {
         dataMemory = null;
         out.defaultWriteObject();
@@ -320,6 +472,15 @@ public class MphMap<K, V> implements Map<K, V>, Serializable {
     private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
         dataMemory = new HeapMemory(data, ByteOrder.nativeOrder());
+        if (offsets != null && select == null) {
+            memory = new HeapMemory(offsets, ByteOrder.nativeOrder());
+        } else if (TableConfig.OffsetStorage.INLINED.equals(meta.getConfig().getOffsetStorage())) {
+            memory = dataMemory;
+        }
+        attachHash();
+        cursors = ThreadLocal.withInitial(this::newCursor);
+        stats = new LookupStats();
+        registered = new AtomicBoolean();
     }
 
     public Set<Map.Entry<K, V>> entrySet() {
@@ -329,12 +490,45 @@ public class MphMap<K, V> implements Map<K, V>, Serializable {
         return new MphMapEntrySet(this);
     }
 
+    /**
+     * @return a spliterator over the entries in hash order, splitting by hash range
+     * @throws UnsupportedOperationException if keys are stored implicitly
+     */
+    public Spliterator<Map.Entry<K, V>> spliterator() {
+        return spliterator(scanner -> new AbstractMap.SimpleEntry<>(scanner.key(), scanner.value()));
+    }
+
+    private <T> Spliterator<T> spliterator(final TableScanner.Extractor<K, V, T> extractor) {
+        if (TableConfig.KeyStorage.IMPLICIT.equals(meta.getConfig().getKeyStorage())) {
+            throw new UnsupportedOperationException("can't iterate over MphMap with implicit keys");
+        }
+        return new TableSpliterator<>(meta, dataMemory, memory, select, extractor, 0, size());
+    }
+
+    public Stream<Map.Entry<K, V>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<Map.Entry<K, V>> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    // just the keys in hash order, skipping rather than decoding the values
+    public Stream<K> keyStream() {
+        return StreamSupport.stream(spliterator(TableScanner::key), false);
+    }
+
+    // just the values in hash order, skipping rather than decoding the keys
+    public Stream<V> valueStream() {
+        return StreamSupport.stream(spliterator(TableScanner::value), false);
+    }
+
     public Set<K> keySet() {
-        return entrySet().stream().map(Map.Entry::getKey).collect(Collectors.toSet());
+        return keyStream().collect(Collectors.toSet());
     }
 
     public Collection<V> values() {
-        return entrySet().stream().map(Map.Entry::getValue).collect(Collectors.toList());
+        return valueStream().collect(Collectors.toList());
     }
 
     public void clear() {
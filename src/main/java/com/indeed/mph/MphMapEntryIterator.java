@@ -1,33 +1,31 @@
 package com.indeed.mph;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.AbstractMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
- * An iterator over MphMap data, for use by the MphMapEntrySet.
+ * An iterator over MphMap data, for use by the MphMapEntrySet.  This
+ * is a single pass over the data in hash order.
  */
 public class MphMapEntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
-    private final MphMap<K, V> mphMap;
-    private long hash;
+    private final TableScanner<K, V> scanner;
     public MphMapEntryIterator(final MphMap<K, V> mphMap) {
-        this.mphMap = mphMap;
-        hash = 0;
+        scanner = mphMap.newScanner();
     }
     public boolean hasNext() {
-        return hash < mphMap.size();
+        return scanner.remaining() > 0;
     }
     public Map.Entry<K, V> next() {
         try {
-            final K extractedKey = mphMap.getKeyForHash(hash);
-            final V value = mphMap.get(extractedKey);
-            return new AbstractMap.SimpleEntry<>(extractedKey, value);
+            if (!scanner.advance()) {
+                throw new NoSuchElementException();
+            }
+            return new AbstractMap.SimpleEntry<>(scanner.key(), scanner.value());
         } catch (final IOException e) {
-            throw new RuntimeException("error reading from MphMap: " + hash, e);
-        } finally {
-            hash++;
+            throw new RuntimeException("error reading from MphMap: " + scanner.hash(), e);
         }
     }
     public void remove() {
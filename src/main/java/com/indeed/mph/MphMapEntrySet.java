@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
 
 /**
  * A wrapper around an MphMap implementing the set interface, for use by entrySet.
@@ -57,6 +58,9 @@ public class MphMapEntrySet<K, V> implements Set<Map.Entry<K, V>> {
     public Iterator<Map.Entry<K, V>> iterator() {
         return new MphMapEntryIterator<K, V>(mphMap);
     }
+    public Spliterator<Map.Entry<K, V>> spliterator() {
+        return mphMap.spliterator();
+    }
     public boolean add(final Map.Entry<K, V> e) {
         throw new UnsupportedOperationException("MphMaps are immutable");
     }
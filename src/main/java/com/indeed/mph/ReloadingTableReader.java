@@ -0,0 +1,473 @@
+package com.indeed.mph;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A reader which follows new versions of a table as they're
+ * published, opening (and optionally warming) each new version in the
+ * background, swapping it in atomically, and closing the old version
+ * once no lookups are still using it.
+ * <p>
+ * Example, for versions written to subdirectories of /data/table (the
+ * latest by name is served):
+ * <p>
+ * <code>
+ *   try (final ReloadingTableReader&lt;KeyClass, ValueClass&gt; reader =
+ *          ReloadingTableReader.&lt;KeyClass, ValueClass&gt;builder(
+ *              ReloadingTableReader.latestSubdirectory(new File("/data/table")))
+ *          .withPollMillis(10000)
+ *          .open()) {
+ *     ...reader.get(key)...
+ *   }
+ * </code>
+ * <p>
+ * Unlike {@link SharedTableReader}, which increments and decrements a
+ * shared reference count on every lookup, old versions are retired
+ * with an epoch (RCU) scheme: each reading thread publishes the epoch
+ * it entered in to its own slot, and a swap bumps the epoch and waits
+ * until every slot has left the previous epoch before closing the old
+ * reader.  A lookup therefore only reads shared state, and writes only
+ * to its thread's slot.
+ * <p>
+ * Lookups made while holding a {@link TableReader} from
+ * {@link #read(ReadFunction)} delay the retirement of that version,
+ * so should be short.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ReloadingTableReader<K, V> implements Closeable, MonitoredTable {
+    private static final Logger LOGGER = Logger.getLogger(ReloadingTableReader.class);
+    private static final long IDLE = Long.MAX_VALUE;
+    private static final long WARN_DRAIN_MILLIS = 10000;
+
+    private final VersionLocator locator;
+    private final Warmer<K, V> warmer;
+    private final Long maxDataHeapUsage;
+    private final ScheduledExecutorService poller;
+    private final List<Slot> slots = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Slot> slot = ThreadLocal.withInitial(this::newSlot);
+    private final Object swapLock = new Object();
+    private volatile Version<K, V> current;
+    private volatile long epoch;
+    private volatile boolean closed;
+    private volatile int failures;
+
+    private ReloadingTableReader(final Builder<K, V> builder) {
+        this.locator = builder.locator;
+        this.warmer = builder.warmer;
+        this.maxDataHeapUsage = builder.maxDataHeapUsage;
+        this.poller = builder.pollMillis > 0 ? Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "mph-reload-" + locator);
+                thread.setDaemon(true);
+                return thread;
+            }) : null;
+    }
+
+    public static <K, V> Builder<K, V> builder(@Nonnull final VersionLocator locator) {
+        return new Builder<>(locator);
+    }
+
+    /**
+     * Locates the current version of a table to serve.
+     */
+    public interface VersionLocator {
+        /**
+         * @return the table directory or meta-data file of the version
+         *   to serve, or null if there is none yet
+         * @throws IOException if the location can't be determined
+         */
+        @Nullable
+        File locate() throws IOException;
+    }
+
+    /**
+     * Prepares a newly opened version before it's swapped in, e.g.
+     * by pre-faulting its pages or replaying lookups.
+     */
+    public interface Warmer<K, V> {
+        void warm(@Nonnull TableReader<K, V> reader) throws IOException;
+    }
+
+    /**
+     * A lookup against whatever version is current when it starts.
+     */
+    public interface ReadFunction<K, V, T> {
+        T apply(@Nonnull TableReader<K, V> reader) throws IOException;
+    }
+
+    /**
+     * Serves the subdirectory of dir containing a table whose name is
+     * greatest, so versions should be named by e.g. a zero-padded
+     * timestamp.  Names beginning with "." or "_" or ending in ".tmp"
+     * are ignored, so versions can be written there before renaming.
+     *
+     * @param dir the parent directory of the versions
+     * @return a new locator
+     */
+    public static VersionLocator latestSubdirectory(@Nonnull final File dir) {
+        return new VersionLocator() {
+            @Override
+            public File locate() {
+                final File[] children = dir.listFiles();
+                File result = null;
+                if (children != null) {
+                    for (final File child : children) {
+                        final String name = child.getName();
+                        if (name.startsWith(".") || name.startsWith("_") || name.endsWith(".tmp") ||
+                            !new File(child, TableMeta.DEFAULT_META_PATH).isFile()) {
+                            continue;
+                        }
+                        if (result == null || name.compareTo(result.getName()) > 0) {
+                            result = child;
+                        }
+                    }
+                }
+                return result;
+            }
+
+            @Override
+            public String toString() {
+                return dir.getPath();
+            }
+        };
+    }
+
+    /**
+     * Serves the table whose path is the (trimmed) contents of
+     * pointer, relative to the pointer's directory if not absolute.
+     * The pointer should be replaced atomically, e.g. by renaming.
+     *
+     * @param pointer the version pointer file
+     * @return a new locator
+     */
+    public static VersionLocator pointerFile(@Nonnull final File pointer) {
+        return new VersionLocator() {
+            @Override
+            public File locate() throws IOException {
+                if (!pointer.exists()) {
+                    return null;
+                }
+                final String path = new String(Files.readAllBytes(pointer.toPath()), StandardCharsets.UTF_8).trim();
+                if (path.isEmpty()) {
+                    return null;
+                }
+                final File result = new File(path);
+                return result.isAbsolute() ? result : new File(pointer.getAbsoluteFile().getParentFile(), path);
+            }
+
+            @Override
+            public String toString() {
+                return pointer.getPath();
+            }
+        };
+    }
+
+    public static class Builder<K, V> {
+        private final VersionLocator locator;
+        private Warmer<K, V> warmer;
+        private Long maxDataHeapUsage;
+        private long pollMillis = 60000;
+
+        private Builder(@Nonnull final VersionLocator locator) {
+            this.locator = locator;
+        }
+
+        // how often to check for new versions, or 0 to only check on reload()
+        public Builder<K, V> withPollMillis(final long pollMillis) {
+            this.pollMillis = pollMillis;
+            return this;
+        }
+
+        public Builder<K, V> withWarmer(@Nullable final Warmer<K, V> warmer) {
+            this.warmer = warmer;
+            return this;
+        }
+
+        // see TableReader#open(File, Long)
+        public Builder<K, V> withMaxDataHeapUsage(@Nullable final Long maxDataHeapUsage) {
+            this.maxDataHeapUsage = maxDataHeapUsage;
+            return this;
+        }
+
+        /**
+         * Opens the current version, if any, and starts polling for
+         * new versions.
+         *
+         * @return a new reader
+         * @throws IOException if the current version can't be opened
+         */
+        public ReloadingTableReader<K, V> open() throws IOException {
+            final ReloadingTableReader<K, V> result = new ReloadingTableReader<>(this);
+            try {
+                result.reload();
+            } catch (final IOException e) {
+                result.close();
+                throw e;
+            }
+            if (result.poller != null) {
+                result.poller.scheduleWithFixedDelay(result::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+            }
+            TableMetricsRegistry.opened(result);
+            return result;
+        }
+    }
+
+    /**
+     * Checks for a new version, and if there is one opens, warms and
+     * swaps to it, closing the old version once it's no longer in use.
+     *
+     * @return true iff a new version was swapped in
+     * @throws IOException if the new version couldn't be opened or warmed
+     */
+    public boolean reload() throws IOException {
+        synchronized (swapLock) {
+            if (closed) {
+                throw new IOException("table has been closed!");
+            }
+            final File location = locator.locate();
+            if (location == null) {
+                return false;
+            }
+            final File metaPath = location.isDirectory() ? new File(location, TableMeta.DEFAULT_META_PATH) : location;
+            final Version<K, V> previous = current;
+            if (previous != null && previous.isSame(metaPath)) {
+                return false;
+            }
+            final TableReader<K, V> reader = TableReader.open(metaPath, maxDataHeapUsage);
+            // each version is reported as part of this reader rather than separately
+            reader.unregisterMetrics();
+            try {
+                if (warmer != null) {
+                    warmer.warm(reader);
+                }
+            } catch (final IOException | RuntimeException e) {
+                reader.close();
+                throw e;
+            }
+            swap(new Version<>(reader, metaPath));
+            LOGGER.info("swapped to " + metaPath + (previous == null ? "" : " from " + previous.metaPath));
+            return true;
+        }
+    }
+
+    private void poll() {
+        try {
+            reload();
+            failures = 0;
+        } catch (final IOException | RuntimeException e) {
+            ++failures;
+            LOGGER.error("couldn't reload table from " + locator + " (" + failures + " consecutive failures)", e);
+        }
+    }
+
+    // callers hold swapLock
+    private void swap(@Nullable final Version<K, V> next) throws IOException {
+        if (slot.get().depth > 0) {
+            // we'd wait for ourselves forever
+            throw new IllegalStateException("can't swap versions from within read()");
+        }
+        final Version<K, V> previous = current;
+        current = next;
+        final long retired = epoch + 1;
+        epoch = retired;
+        awaitReaders(retired);
+        if (previous != null) {
+            previous.reader.close();
+        }
+    }
+
+    // waits until every reading thread has left the epochs before retired
+    private void awaitReaders(final long retired) {
+        final long startMillis = System.currentTimeMillis();
+        long warnMillis = startMillis + WARN_DRAIN_MILLIS;
+        for (final Iterator<Slot> iter = slots.iterator(); iter.hasNext(); ) {
+            final Slot s = iter.next();
+            while (s.active < retired) {
+                if (!s.thread.isAlive()) {
+                    break;
+                }
+                if (System.currentTimeMillis() > warnMillis) {
+                    LOGGER.warn("still waiting for " + s.thread.getName() + " to finish reading " + locator +
+                                " after " + (System.currentTimeMillis() - startMillis) + " ms");
+                    warnMillis += WARN_DRAIN_MILLIS;
+                }
+                LockSupport.parkNanos(100000L);
+            }
+        }
+        // forget threads which have exited, they can't be reading
+        for (final Slot s : slots) {
+            if (!s.thread.isAlive()) {
+                slots.remove(s);
+            }
+        }
+    }
+
+    private Slot newSlot() {
+        final Slot result = new Slot(Thread.currentThread());
+        slots.add(result);
+        return result;
+    }
+
+    /**
+     * Applies fn to the current version.  The version is guaranteed
+     * to stay open until fn returns, but anything obtained from it
+     * which refers to its memory (slices, views, cursors, iterators)
+     * mustn't be used afterwards.
+     *
+     * @param fn  the lookup
+     * @param <T> result type
+     * @return the result of fn
+     * @throws IOException if no version is open, or from fn
+     */
+    public <T> T read(@Nonnull final ReadFunction<K, V, T> fn) throws IOException {
+        final Slot s = slot.get();
+        if (s.depth++ == 0) {
+            s.active = epoch;
+        }
+        try {
+            final Version<K, V> version = current;
+            if (version == null) {
+                throw new IOException(closed ? "table has been closed!" : "no version of " + locator + " available");
+            }
+            return fn.apply(version.reader);
+        } finally {
+            if (--s.depth == 0) {
+                s.active = IDLE;
+            }
+        }
+    }
+
+    public V get(@Nonnull final K key) throws IOException {
+        return read(reader -> reader.get(key));
+    }
+
+    public boolean containsKey(@Nonnull final K key) {
+        try {
+            return read(reader -> reader.containsKey(key));
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    public Map<K, V> getAll(@Nonnull final Iterable<K> keys) throws IOException {
+        return read(reader -> reader.getAll(keys));
+    }
+
+    // the meta-data path of the version being served, or null
+    @Nullable
+    public File getVersion() {
+        final Version<K, V> version = current;
+        return version == null ? null : version.metaPath;
+    }
+
+    // the number of swaps so far, including the initial open
+    public long getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public String getName() {
+        return locator.toString();
+    }
+
+    @Override
+    public long getTableSize() {
+        return readOrZero(TableReader::getTableSize);
+    }
+
+    @Override
+    public long getTimestamp() {
+        return readOrZero(TableReader::getTimestamp);
+    }
+
+    @Override
+    public TableReader.TableStats getStats() throws IOException {
+        final Version<K, V> version = current;
+        return version == null ? new TableReader.TableStats(0, 0, 0) : read(TableReader::getStats);
+    }
+
+    @Override
+    public long getMappedBytes() {
+        return readOrZero(TableReader::getMappedBytes);
+    }
+
+    @Override
+    public long getHeapBytes() {
+        return readOrZero(TableReader::getHeapBytes);
+    }
+
+    private long readOrZero(final ReadFunction<K, V, Long> fn) {
+        try {
+            return read(fn);
+        } catch (final IOException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Stops polling and closes the current version once no lookups
+     * are using it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+        synchronized (swapLock) {
+            if (!closed) {
+                closed = true;
+                swap(null);
+                TableMetricsRegistry.closed(this);
+            }
+        }
+    }
+
+    private static class Version<K, V> {
+        final TableReader<K, V> reader;
+        final File metaPath;
+        final long lastModified;
+
+        Version(final TableReader<K, V> reader, final File metaPath) {
+            this.reader = reader;
+            this.metaPath = metaPath;
+            this.lastModified = metaPath.lastModified();
+        }
+
+        boolean isSame(final File otherPath) {
+            return metaPath.getAbsoluteFile().equals(otherPath.getAbsoluteFile()) &&
+                lastModified == otherPath.lastModified();
+        }
+    }
+
+    // the reading state of a single thread, padded to its own cache line
+    private static class Slot {
+        long p0, p1, p2, p3, p4, p5, p6;
+        // the epoch the thread entered in, or IDLE
+        volatile long active = IDLE;
+        long q0, q1, q2, q3, q4, q5, q6;
+        // only accessed by the owning thread
+        int depth;
+        final Thread thread;
+
+        Slot(final Thread thread) {
+            this.thread = thread;
+        }
+    }
+}
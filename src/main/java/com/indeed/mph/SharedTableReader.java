@@ -2,34 +2,53 @@ package com.indeed.mph;
 
 import com.indeed.util.core.reference.AtomicSharedReference;
 import com.indeed.util.core.reference.SharedReference;
+import com.indeed.util.mmap.Memory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Thread-safe reference counting version of TableReader.
  *
  * @author alexs
  */
-public class SharedTableReader<K, V> implements Closeable {
+public class SharedTableReader<K, V> implements Closeable, MonitoredTable {
     private final AtomicSharedReference<TableReader<K, V>> reader;
+    private final String name;
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     public SharedTableReader(@Nonnull final TableReader<K, V> reader) {
         this.reader = AtomicSharedReference.create(reader);
+        this.name = reader.getName();
+        // reported as this shared reader rather than twice
+        reader.unregisterMetrics();
+        TableMetricsRegistry.opened(this);
     }
 
     @Override
     public void close() throws IOException {
         reader.unset();
+        if (closed.compareAndSet(false, true)) {
+            TableMetricsRegistry.closed(this);
+        }
     }
 
     public static <K, V> SharedTableReader<K, V> open(@Nonnull final File metaPath, @Nullable final File offsetsPath, @Nullable final File dataPath) throws IOException {
         return new SharedTableReader<>(TableReader.open(metaPath, offsetsPath, dataPath));
     }
 
+    // see TableReader#open(File, TableWarmup)
+    public static <K, V> SharedTableReader<K, V> open(@Nonnull final File metaPath, @Nullable final TableWarmup warmup) throws IOException {
+        return new SharedTableReader<>(TableReader.open(metaPath, warmup));
+    }
+
     public static <K, V> SharedTableReader<K, V> open(@Nonnull final File metaPath) throws IOException {
         return open(metaPath, null, null);
     }
@@ -50,16 +69,47 @@ public class SharedTableReader<K, V> implements Closeable {
 
     public TableReader.TableStats getStats() throws IOException {
         try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
-            return reader.get().getStats();
+            return reader == null ? new TableReader.TableStats(0, 0, 0) : reader.get().getStats();
         }
     }
 
-    public boolean containsKey(@Nonnull final K key) {
+    public CompletableFuture<Void> getWarmup() throws IOException {
+        try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
+            if (reader == null) {
+                throw new IOException("table has been closed!");
+            }
+            return reader.get().getWarmup();
+        }
+    }
+
+    public void setStatsLevel(@Nonnull final TableReader.StatsLevel level) throws IOException {
         try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
-            if (reader.get().getMeta().getConfig().getKeyValidator() == null) {
-                return reader.get().getOffset(key) >= 0;
+            if (reader != null) {
+                reader.get().setStatsLevel(level);
             }
-            return get(key) != null;
+        }
+    }
+
+    public void setKeySampler(@Nullable final HotKeySampler<? super K> sampler) throws IOException {
+        try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
+            if (reader != null) {
+                reader.get().setKeySampler(sampler);
+            }
+        }
+    }
+
+    public long warmKeys(@Nonnull final Collection<? extends K> keys) throws IOException {
+        try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
+            if (reader == null) {
+                throw new IOException("table has been closed!");
+            }
+            return reader.get().warmKeys(keys);
+        }
+    }
+
+    public boolean containsKey(@Nonnull final K key) {
+        try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
+            return reader.get().containsKey(key);
         } catch (final IOException e) {
             return false;
         }
@@ -75,9 +125,39 @@ public class SharedTableReader<K, V> implements Closeable {
         }
     }
 
+    public Memory getValueSlice(@Nonnull final K key) throws IOException {
+        try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
+            final TableReader<K, V> r = reader == null ? null : reader.get();
+            if (r == null) {
+                throw new IOException("table was already closed fetching: " + key);
+            }
+            return r.getValueSlice(key);
+        }
+    }
+
+    public LookupStatus[] getAll(@Nonnull final K[] keys, @Nonnull final V[] out) throws IOException {
+        try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
+            final TableReader<K, V> r = reader == null ? null : reader.get();
+            if (r == null) {
+                throw new IOException("table was already closed fetching " + keys.length + " keys");
+            }
+            return r.getAll(keys, out);
+        }
+    }
+
+    public Map<K, V> getAll(@Nonnull final Iterable<K> keys) throws IOException {
+        try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
+            final TableReader<K, V> r = reader == null ? null : reader.get();
+            if (r == null) {
+                throw new IOException("table was already closed fetching: " + keys);
+            }
+            return r.getAll(keys);
+        }
+    }
+
     public long size() {
         try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
-            return reader.get().getMeta().numEntries();
+            return reader == null ? 0L : reader.get().getMeta().numEntries();
         } catch (final IOException e) {
             return 0L;
         }
@@ -85,7 +165,7 @@ public class SharedTableReader<K, V> implements Closeable {
 
     public long getSizeInBytes() {
         try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
-            return reader.get().getSizeInBytes();
+            return reader == null ? 0L : reader.get().getSizeInBytes();
         } catch (final IOException e) {
             return 0L;
         }
@@ -93,7 +173,35 @@ public class SharedTableReader<K, V> implements Closeable {
 
     public long getTimestamp() {
         try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
-            return reader.get().getMeta().getTimestamp();
+            return reader == null ? 0L : reader.get().getMeta().getTimestamp();
+        } catch (final IOException e) {
+            return 0L;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getTableSize() {
+        return size();
+    }
+
+    @Override
+    public long getMappedBytes() {
+        try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
+            return reader == null ? 0L : reader.get().getMappedBytes();
+        } catch (final IOException e) {
+            return 0L;
+        }
+    }
+
+    @Override
+    public long getHeapBytes() {
+        try (final SharedReference<TableReader<K, V>> reader = getCopy()) {
+            return reader == null ? 0L : reader.get().getHeapBytes();
         } catch (final IOException e) {
             return 0L;
         }
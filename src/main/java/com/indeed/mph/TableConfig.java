@@ -26,8 +26,25 @@ import java.io.Serializable;
  *       - SELECTED: offsets are represented as a bit-vector of all bytes in the data
  *           file, and we use a Rank/Select algorithm to quickly map from hash bucket
  *           to corresponding starting offset
+ *       - ELIAS_FANO: offsets are Elias-Fano encoded in about 2 + log(average entry size)
+ *           bits each, with a pre-computed select index for constant-time access.
+ *           Since readers older than this storage type can't open such tables,
+ *           it's only chosen automatically if newOffsetFormats is set.
+ *       - BLOCK_DELTA: an absolute offset per block of hash buckets plus a bit-packed
+ *           delta per entry, so the offsets stay small however large the data is.
+ *           This is never chosen automatically since it depends on the entry sizes.
+ *       - INLINED: a slot per hash bucket at the start of the data file, holding either
+ *           the entry itself if it fits, or a tagged offset to it, so that lookups of
+ *           small entries (e.g. counts with implicit keys) touch a single cache line.
+ *           This is also never chosen automatically.
  *     In general, if you have many small entries SELECTED will be
  *     better, but INDEXED is better if individual entries are large.
+ *     ELIAS_FANO is usually smaller than either when entry sizes vary,
+ *     if all readers of the table are recent enough.
+ *
+ *   newOffsetFormats: If true, AUTOMATIC offsetStorage also considers
+ *     ELIAS_FANO, choosing it when it's the smallest.  Off by default,
+ *     so tables stay readable by readers older than that format.
  *
  *   keyStorage: EXPLICIT by default, but can be set to IMPLICIT
  *     (along with specifying a signatureWidth) to omit the keys from
@@ -54,6 +71,27 @@ import java.io.Serializable;
  *     determine which keys were duplicated on failure to build the
  *     hash function.
  *
+ *   hashStorage: HEAP by default, in which case the hash function is
+ *     deserialized onto the heap along with the meta-data.  MMAPPED
+ *     writes the bulk of the hash function to a separate file which
+ *     is mmapped by readers, making opening large tables O(1) and
+ *     sharing the hash function between processes via the page cache.
+ *
+ *   fingerprintWidth: If 8 or 16, stores a fingerprint of that many
+ *     bits for each key in a separate file indexed by hash bucket,
+ *     which is checked before reading the data so that most lookups
+ *     of missing keys never touch the data file.  The fingerprint
+ *     mixes the same spooky hash the hash function uses to choose the
+ *     bucket, so it isn't independent of the bucket: a missing key
+ *     passes with probability about 2^-width only insofar as the
+ *     mixed bits are uniform among keys mapping to the same bucket.
+ *     Off (0) by default.
+ *
+ *   keyFilter: If true, also writes an xor filter of the keys (about
+ *     10 bits per key) to a separate mmapped file, which is checked
+ *     before evaluating the hash function and rejects all but about
+ *     1/256 of missing keys.  Off by default.
+ *
  * @param <K> key type
  * @param <V> value type
  *
@@ -74,6 +112,10 @@ public class TableConfig<K, V> implements Serializable {
     private final long maxDataHeapUsage;
     private final long tempShardSize;
     private final boolean debugDuplicateKeys;
+    private final HashStorage hashStorage;
+    private final int fingerprintWidth;
+    private final boolean keyFilter;
+    private final boolean newOffsetFormats;
 
     TableConfig(@Nullable final SmartSerializer<? super K> keySerializer,
                 @Nullable final SmartSerializer<? super V> valueSerializer,
@@ -85,7 +127,11 @@ public class TableConfig<K, V> implements Serializable {
                 final long maxHeapUsage,
                 final long maxDataHeapUsage,
                 final long tempShardSize,
-                final boolean debugDuplicateKeys) {
+                final boolean debugDuplicateKeys,
+                final HashStorage hashStorage,
+                final int fingerprintWidth,
+                final boolean keyFilter,
+                final boolean newOffsetFormats) {
         this.keySerializer = keySerializer;
         this.valueSerializer = valueSerializer;
         this.keyValidator = keyValidator;
@@ -97,6 +143,10 @@ public class TableConfig<K, V> implements Serializable {
         this.maxDataHeapUsage = maxDataHeapUsage;
         this.tempShardSize = tempShardSize;
         this.debugDuplicateKeys = debugDuplicateKeys;
+        this.hashStorage = hashStorage;
+        this.fingerprintWidth = fingerprintWidth;
+        this.keyFilter = keyFilter;
+        this.newOffsetFormats = newOffsetFormats;
         final LinearDiophantineEquation valueSizeEq = valueSerializer == null ?
             LinearDiophantineEquation.constantValue(0L) :
             valueSerializer.size() == null ? LinearDiophantineEquation.multipleOf(1L) : valueSerializer.size();
@@ -108,7 +158,7 @@ public class TableConfig<K, V> implements Serializable {
     }
 
     public TableConfig() {
-        this(null, null, new EqualKeyValidator<>(), KeyStorage.EXPLICIT, OffsetStorage.AUTOMATIC, RangeChecking.NONE, 0, 0, 0, DEFAULT_SHARD_SIZE, false);
+        this(null, null, new EqualKeyValidator<>(), KeyStorage.EXPLICIT, OffsetStorage.AUTOMATIC, RangeChecking.NONE, 0, 0, 0, DEFAULT_SHARD_SIZE, false, HashStorage.HEAP, 0, false, false);
     }
 
     public SmartSerializer<? super K> getKeySerializer() {
@@ -155,6 +205,36 @@ public class TableConfig<K, V> implements Serializable {
         return debugDuplicateKeys;
     }
 
+    public HashStorage getHashStorage() {
+        // configs serialized before hashStorage existed deserialize as null
+        return hashStorage == null ? HashStorage.HEAP : hashStorage;
+    }
+
+    public boolean getKeyFilter() {
+        return keyFilter;
+    }
+
+    public boolean getNewOffsetFormats() {
+        return newOffsetFormats;
+    }
+
+    public int getFingerprintWidth() {
+        return fingerprintWidth;
+    }
+
+    // whether entries are written in hash order, so each entry directly follows that of the previous hash
+    public boolean isHashOrdered() {
+        switch (offsetStorage) {
+        case FIXED:
+        case SELECTED:
+        case ELIAS_FANO:
+        case BLOCK_DELTA:
+            return true;
+        default:
+            return false;
+        }
+    }
+
     public LinearDiophantineEquation getEntrySize() {
         return entrySizeEq;
     }
@@ -182,6 +262,11 @@ public class TableConfig<K, V> implements Serializable {
         }
         final long indexedSize = getIndexedOffsetSize(numEntries, dataSize);
         final long selectedSize = getSelectedOffsetSize(numEntries, dataSize);
+        // newer storage types are opt-in, so default tables stay readable by older readers
+        if (newOffsetFormats &&
+            getEliasFanoOffsetSize(numEntries, dataSize) < Math.min(indexedSize, selectedSize)) {
+            return OffsetStorage.ELIAS_FANO;
+        }
         return indexedSize <= selectedSize ? OffsetStorage.INDEXED : OffsetStorage.SELECTED;
     }
 
@@ -194,7 +279,22 @@ public class TableConfig<K, V> implements Serializable {
         return ((maxValue * 3L) / 64L);
     }
 
+    public long getEliasFanoOffsetSize(final long numEntries, final long dataSize) {
+        return EliasFanoSelect.sizeInBytes(numEntries, eliasFanoUniverse(numEntries, dataSize));
+    }
+
+    // Elias-Fano offsets are stored as the entry size equation
+    // solved for the nth offset, which is non-decreasing in n.
+
+    public long eliasFanoUniverse(final long numEntries, final long dataSize) {
+        return entrySizeEq.solveForNth(dataSize, numEntries) + 1;
+    }
+
     public int bytesPerOffset(final long numEntries, final long dataSize) {
+        if (OffsetStorage.INLINED.equals(offsetStorage)) {
+            // slots hold an unsigned offset shifted past the tag bit
+            return dataSize + 4 * numEntries < Integer.MAX_VALUE ? 4 : 8;
+        }
         return bytesPerLong(dataSize);
     }
 
@@ -218,6 +318,13 @@ public class TableConfig<K, V> implements Serializable {
                     keySerializer.read(in));
     }
 
+    // skips the next key without deserializing it, if keys are stored
+    public void skipKey(final DataInput in) throws IOException {
+        if (!TableConfig.KeyStorage.IMPLICIT.equals(keyStorage) && keySerializer != null) {
+            keySerializer.skip(in, 1);
+        }
+    }
+
     public V readValue(final DataInput in) throws IOException {
         return (V) ((valueSerializer == null) ? null : valueSerializer.read(in));
     }
@@ -232,47 +339,66 @@ public class TableConfig<K, V> implements Serializable {
     }
 
     public TableConfig<K, V> withKeySerializer(final SmartSerializer<? super K> serializer) {
-        return new TableConfig<K,V>(serializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys);
+        return new TableConfig<K,V>(serializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys, hashStorage, fingerprintWidth, keyFilter, newOffsetFormats);
     }
 
     public TableConfig<K, V> withValueSerializer(final SmartSerializer<? super V> serializer) {
-        return new TableConfig<K,V>(keySerializer, serializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys);
+        return new TableConfig<K,V>(keySerializer, serializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys, hashStorage, fingerprintWidth, keyFilter, newOffsetFormats);
     }
 
     public TableConfig<K, V> withKeyValidator(final KeyValidator<K, V> validator) {
-        return new TableConfig<K,V>(keySerializer, valueSerializer, validator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys);
+        return new TableConfig<K,V>(keySerializer, valueSerializer, validator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys, hashStorage, fingerprintWidth, keyFilter, newOffsetFormats);
     }
 
     public TableConfig<K, V> withKeyStorage(final KeyStorage storage) {
-        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, storage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys);
+        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, storage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys, hashStorage, fingerprintWidth, keyFilter, newOffsetFormats);
     }
 
     public TableConfig<K, V> withOffsetStorage(final OffsetStorage storage) {
-        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, storage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys);
+        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, storage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys, hashStorage, fingerprintWidth, keyFilter, newOffsetFormats);
     }
 
     public TableConfig<K, V> withRangeChecking(final RangeChecking rangeCheck) {
-        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeCheck, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys);
+        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeCheck, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys, hashStorage, fingerprintWidth, keyFilter, newOffsetFormats);
     }
 
     public TableConfig<K, V> withSignatureWidth(final int width) {
-        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, width, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys);
+        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, width, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys, hashStorage, fingerprintWidth, keyFilter, newOffsetFormats);
     }
 
     public TableConfig<K, V> withMaxHeapUsage(final long maxHeap) {
-        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeap, maxDataHeapUsage, tempShardSize, debugDuplicateKeys);
+        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeap, maxDataHeapUsage, tempShardSize, debugDuplicateKeys, hashStorage, fingerprintWidth, keyFilter, newOffsetFormats);
     }
 
     public TableConfig<K, V> withMaxDataHeapUsage(final long maxDataHeap) {
-        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeap, tempShardSize, debugDuplicateKeys);
+        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeap, tempShardSize, debugDuplicateKeys, hashStorage, fingerprintWidth, keyFilter, newOffsetFormats);
     }
 
     public TableConfig<K, V> withTempShardSize(final long shardSize) {
-        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, shardSize, debugDuplicateKeys);
+        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, shardSize, debugDuplicateKeys, hashStorage, fingerprintWidth, keyFilter, newOffsetFormats);
     }
 
     public TableConfig<K, V> withDebugDuplicateKeys(final boolean debugDupKeys) {
-        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDupKeys);
+        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDupKeys, hashStorage, fingerprintWidth, keyFilter, newOffsetFormats);
+    }
+
+    public TableConfig<K, V> withFingerprintWidth(final int width) {
+        if (width != 0 && width != 8 && width != 16) {
+            throw new IllegalArgumentException("fingerprint width must be 0, 8 or 16: " + width);
+        }
+        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys, hashStorage, width, keyFilter, newOffsetFormats);
+    }
+
+    public TableConfig<K, V> withKeyFilter(final boolean filter) {
+        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys, hashStorage, fingerprintWidth, filter, newOffsetFormats);
+    }
+
+    public TableConfig<K, V> withNewOffsetFormats(final boolean allow) {
+        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys, hashStorage, fingerprintWidth, keyFilter, allow);
+    }
+
+    public TableConfig<K, V> withHashStorage(final HashStorage storage) {
+        return new TableConfig<K,V>(keySerializer, valueSerializer, keyValidator, keyStorage, offsetStorage, rangeChecking, signatureWidth, maxHeapUsage, maxDataHeapUsage, tempShardSize, debugDuplicateKeys, storage, fingerprintWidth, keyFilter, newOffsetFormats);
     }
 
     public String toString() {
@@ -281,7 +407,9 @@ public class TableConfig<K, V> implements Serializable {
             " rangeChecking: " + rangeChecking +
             " validator: " + keyValidator + " signatureWidth: " + signatureWidth +
             " maxHeapUsage: " + maxHeapUsage + " maxDataHeapUsage: " + maxDataHeapUsage +
-            " entrySize: " + entrySizeEq + " debugDupKeys: " + debugDuplicateKeys + "]";
+            " entrySize: " + entrySizeEq + " debugDupKeys: " + debugDuplicateKeys +
+            " hashStorage: " + getHashStorage() + " fingerprintWidth: " + fingerprintWidth + " keyFilter: " + keyFilter +
+            " newOffsetFormats: " + newOffsetFormats + "]";
     }
 
     public enum KeyStorage {
@@ -293,9 +421,17 @@ public class TableConfig<K, V> implements Serializable {
         AUTOMATIC,              // choose optimal storage
         INDEXED,                // an indexed array of offsets per hash
         SELECTED,               // a rank-select lookup per hash
+        ELIAS_FANO,             // Elias-Fano encoded offsets per hash
+        BLOCK_DELTA,            // a base offset per block plus packed deltas per hash
+        INLINED,                // small entries inlined in a slot per hash
         FIXED                   // fixed size entries
     }
 
+    public enum HashStorage {
+        HEAP,                   // serialize the hash function with the meta-data (default)
+        MMAPPED                 // store the hash function arrays in a separate mmapped file
+    }
+
     public enum RangeChecking {
         MIN_AND_MAX,
         NONE,
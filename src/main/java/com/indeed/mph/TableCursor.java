@@ -0,0 +1,470 @@
+package com.indeed.mph;
+
+import com.indeed.mph.serializers.SmartStringSerializer;
+import com.indeed.util.mmap.Memory;
+import com.indeed.util.mmap.MemoryDataInput;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.sux4j.bits.Select;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+/**
+ * A reusable, seekable cursor over the data of a table, allowing a
+ * single thread to perform any number of lookups without allocating
+ * a new reader per call.  Cursors are not thread-safe, obtain one
+ * per thread from {@link TableReader#newCursor()} or
+ * {@link MphMap#newCursor()}.
+ * <p>
+ * Example:
+ * <p>
+ * <code>
+ *   final TableCursor&lt;KeyClass, ValueClass&gt; cursor = reader.newCursor();
+ *   for (final KeyClass key : keys) {
+ *     final ValueClass value = cursor.get(key);
+ *   }
+ * </code>
+ * <p>
+ * The cursor is only valid as long as the underlying reader is open.
+ * <p>
+ * With explicit keys and an {@link EqualKeyValidator}, stored keys
+ * are verified by comparing their serialized bytes to those of the
+ * probe key rather than deserializing them, and the probe key is
+ * serialized once for both hashing and comparison.  The key serializer is
+ * assumed to be deterministic, as all of the Smart serializers are.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class TableCursor<K, V> {
+    private final TableMeta<K, V> meta;
+    private final TableConfig<K, V> config;
+    private final Memory dataMemory;
+    private final Memory offsets;
+    private final Select select;
+    private final K minKey;
+    private final K maxKey;
+    private final MemoryDataInput in;
+    // whether stored keys are verified by comparing serialized bytes
+    private final boolean compareKeyBytes;
+    private final long[] triple = new long[3];
+    // the probe key as serialized for hashing by the last seek
+    private TableWriter.SerializerTransformationStrategy.KeyBuffer probe;
+    private long hash;
+    private long offset;
+    private long valueOffset;
+    private long valueLength;
+    // lookups until the next sampled flight recorder event, see TableEvents
+    int lookupsUntilEvent;
+
+    TableCursor(@Nonnull final TableMeta<K, V> meta,
+                @Nonnull final Memory dataMemory,
+                @Nullable final Memory offsets,
+                @Nullable final Select select,
+                @Nullable final K minKey,
+                @Nullable final K maxKey) {
+        this.meta = meta;
+        this.config = meta.getConfig();
+        this.dataMemory = dataMemory;
+        this.offsets = offsets;
+        this.select = select;
+        this.minKey = minKey;
+        this.maxKey = maxKey;
+        this.in = new MemoryDataInput(dataMemory);
+        this.compareKeyBytes = config.getKeyValidator() instanceof EqualKeyValidator &&
+            !TableConfig.KeyStorage.IMPLICIT.equals(config.getKeyStorage());
+        this.hash = -1;
+        this.offset = -1;
+        this.valueOffset = -1;
+        this.valueLength = -1;
+    }
+
+    /**
+     * Positions the cursor at the entry the key hashes to.  Returns
+     * false if the key is known not to be in the table, otherwise the
+     * entry at the cursor must still be validated against the key.
+     *
+     * @param key the key to look up
+     * @return true iff the cursor was positioned at an entry
+     */
+    public boolean seek(@Nonnull final K key) {
+        return seekHash(hashKey(key));
+    }
+
+    /**
+     * Positions the cursor at the entry for the given hash, with no
+     * validation other than range.
+     *
+     * @param hash the hash of the entry
+     * @return true iff the cursor was positioned at an entry
+     */
+    public boolean seekHash(final long hash) {
+        if (hash < 0 || hash >= meta.numEntries()) {
+            return clear();
+        }
+        final long offset = meta.getHashOffset(hash, offsets, select);
+        if (offset < 0) {
+            return clear();
+        }
+        this.hash = hash;
+        this.offset = offset;
+        in.seek(offset);
+        return true;
+    }
+
+    /**
+     * Looks up the value for key, returning null if not found.
+     *
+     * @param key the key to look up
+     * @return the validated value, or null
+     * @throws IOException if the stored entry can't be deserialized
+     */
+    public V get(@Nonnull final K key) throws IOException {
+        if (!seek(key)) {
+            return null;
+        }
+        return readValidated(key);
+    }
+
+    /**
+     * Looks up the values for many keys at once, storing the results
+     * in out (null for keys not found) and returning the status of
+     * each lookup.  All hashes and offsets are resolved first, in key
+     * order, and the data is then read in ascending offset order, so
+     * that reads of the same data page are adjacent and large batches
+     * against mmapped tables benefit from sequential readahead.  The
+     * hash function and offsets are still accessed in key order, and
+     * duplicate keys are read once each.
+     *
+     * @param keys the keys to look up
+     * @param out  array at least as long as keys to hold the values
+     * @return the status of each lookup, parallel to keys
+     * @throws IOException if a stored entry can't be deserialized
+     */
+    public LookupStatus[] getAll(@Nonnull final K[] keys, @Nonnull final V[] out) throws IOException {
+        if (out.length < keys.length) {
+            throw new IllegalArgumentException("output array too small: " + out.length + " < " + keys.length);
+        }
+        final LookupStatus[] result = new LookupStatus[keys.length];
+        final long[] hashes = new long[keys.length];
+        final long[] offsets = new long[keys.length];
+        final int[] order = new int[keys.length];
+        // the serialized keys as hashed, to compare with the stored ones
+        final KeyBytes probes = compareKeyBytes ? new KeyBytes() : null;
+        final int[] probeStarts = compareKeyBytes ? new int[keys.length + 1] : null;
+        int found = 0;
+        for (int i = 0; i < keys.length; ++i) {
+            final long hash = keys[i] == null ? -1 : hashKey(keys[i]);
+            final long offset = hash < 0 || hash >= meta.numEntries() ? -1 :
+                meta.getHashOffset(hash, this.offsets, select);
+            if (offset < 0) {
+                result[i] = LookupStatus.FILTERED;
+                out[i] = null;
+            } else {
+                hashes[i] = hash;
+                offsets[i] = offset;
+                order[found++] = i;
+                if (probes != null) {
+                    probes.write(probe.getStoredBytes(), 0, probe.getStoredSize());
+                }
+            }
+            if (probeStarts != null) {
+                probeStarts[i + 1] = probes.size();
+            }
+        }
+        IntArrays.quickSort(order, 0, found, new AbstractIntComparator() {
+                public int compare(final int a, final int b) {
+                    return Long.compare(offsets[a], offsets[b]);
+                }
+            });
+        final boolean validated = config.getKeyValidator() != null;
+        for (int j = 0; j < found; ++j) {
+            final int i = order[j];
+            hash = hashes[i];
+            offset = offsets[i];
+            in.seek(offset);
+            if (probes != null) {
+                final int start = probeStarts[i];
+                out[i] = matchesBytes(probes.buffer(), start, probeStarts[i + 1] - start) ? readValue() : null;
+            } else {
+                out[i] = readValidated(keys[i]);
+            }
+            result[i] = out[i] == null && validated ? LookupStatus.MISSING : LookupStatus.RETRIEVED;
+        }
+        return result;
+    }
+
+    /**
+     * Positions the cursor at the start of the serialized value for
+     * key without deserializing the value, returning its length in
+     * bytes, or -1 if the key is not found.  The key is validated as
+     * in {@link #get(Object)}, though the common cases of no validator
+     * or an {@link EqualKeyValidator} only need to read the key.  The
+     * value region is then available from {@link #getValueOffset()}
+     * and {@link #getValueLength()}.
+     *
+     * @param key the key to look up
+     * @return the length of the serialized value, or -1
+     * @throws IOException if the stored entry can't be deserialized
+     */
+    public long seekValue(@Nonnull final K key) throws IOException {
+        valueOffset = -1;
+        valueLength = -1;
+        if (!seek(key)) {
+            return -1;
+        }
+        if (compareKeyBytes && !matchesKeyBytes(key)) {
+            return -1;
+        }
+        final K extractedKey = compareKeyBytes ? key : readKey();
+        final long start = in.position();
+        final KeyValidator<K, V> validator = config.getKeyValidator();
+        if (validator instanceof EqualKeyValidator) {
+            if (extractedKey != null && !key.equals(extractedKey)) {
+                return -1;
+            }
+        } else if (validator != null) {
+            if (validator.validate(key, extractedKey, readValue()) == null) {
+                return -1;
+            }
+            in.seek(start);
+        }
+        valueOffset = start;
+        valueLength = readValueLength(start);
+        in.seek(start);
+        return valueLength;
+    }
+
+    /**
+     * Returns a view of the serialized value for key directly on the
+     * table data, or null if not found.  This is useful for proxying
+     * values without a decode/re-encode step, and deserializing the
+     * slice with the value serializer yields the same value as
+     * {@link #get(Object)}.  The slice is only valid as long as the
+     * underlying reader is open and must not be written to.
+     *
+     * @param key the key to look up
+     * @return the serialized value, or null
+     * @throws IOException if the stored entry can't be deserialized
+     */
+    @Nullable
+    public Memory getValueSlice(@Nonnull final K key) throws IOException {
+        if (seekValue(key) < 0) {
+            return null;
+        }
+        return dataMemory.slice(valueOffset, valueLength);
+    }
+
+    /**
+     * As {@link #getValueSlice(Object)}, for tables with a
+     * {@link SmartStringSerializer} value serializer, returning a view
+     * of the string which can be compared, hashed or forwarded without
+     * decoding it.
+     *
+     * @param key the key to look up
+     * @return a view of the value, valid only until the reader is closed, or null
+     * @throws IOException if the stored entry can't be deserialized
+     */
+    @Nullable
+    public Utf8View getValueView(@Nonnull final K key) throws IOException {
+        if (seekValue(key) < 0) {
+            return null;
+        }
+        return readValueView();
+    }
+
+    /**
+     * Checks whether key is in the table without deserializing the
+     * value, and with an EqualKeyValidator without deserializing the
+     * stored key either.  Other validators need the full entry.
+     *
+     * @param key the key to look up
+     * @return RETRIEVED if found, otherwise why not
+     * @throws IOException if the stored entry can't be deserialized
+     */
+    public LookupStatus contains(@Nonnull final K key) throws IOException {
+        if (!seek(key)) {
+            return LookupStatus.FILTERED;
+        }
+        final KeyValidator<K, V> validator = config.getKeyValidator();
+        if (compareKeyBytes) {
+            return matchesKeyBytes(key) ? LookupStatus.RETRIEVED : LookupStatus.MISSING;
+        } else if (validator == null || validator instanceof EqualKeyValidator) {
+            // nothing to compare with implicit keys
+            return LookupStatus.RETRIEVED;
+        }
+        return readValidated(key) != null ? LookupStatus.RETRIEVED : LookupStatus.MISSING;
+    }
+
+    /**
+     * Compares the serialized form of key to the stored key at the
+     * cursor, leaving the cursor at the value if they match.  Since
+     * serialized keys are self-delimiting, a matching prefix is a
+     * matching key.
+     *
+     * @param key the key to compare
+     * @return true iff the stored key has the same serialized bytes
+     * @throws IOException if the key can't be serialized
+     */
+    public boolean matchesKeyBytes(@Nonnull final K key) throws IOException {
+        // usually the bytes the last seek already serialized for hashing
+        final TableWriter.SerializerTransformationStrategy.KeyBuffer serialized =
+            probe != null && probe.holds(key) ? probe : meta.getTransform().serializeForLookup(key);
+        return matchesBytes(serialized.getStoredBytes(), 0, serialized.getStoredSize());
+    }
+
+    private boolean matchesBytes(final byte[] buf, final int off, final int length) {
+        final long start = in.position();
+        if (start + length > dataMemory.length()) {
+            return false;
+        }
+        final boolean littleEndian = ByteOrder.LITTLE_ENDIAN.equals(dataMemory.getOrder());
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            if (dataMemory.getLong(start + i) != KeyBytes.getLong(buf, off + i, littleEndian)) {
+                return false;
+            }
+        }
+        for (; i < length; ++i) {
+            if (dataMemory.getByte(start + i) != buf[off + i]) {
+                return false;
+            }
+        }
+        in.seek(start + length);
+        return true;
+    }
+
+    /**
+     * Reads the entry at the cursor and validates it against key,
+     * returning the value if it matches, or null.
+     *
+     * @param key the key which was used to position the cursor
+     * @return the validated value, or null
+     * @throws IOException if the stored entry can't be deserialized
+     */
+    public V readValidated(@Nonnull final K key) throws IOException {
+        if (compareKeyBytes) {
+            return matchesKeyBytes(key) ? readValue() : null;
+        }
+        final K extractedKey = readKey();
+        final V value = readValue();
+        final KeyValidator<K, V> validator = config.getKeyValidator();
+        return validator == null ? value : validator.validate(key, extractedKey, value);
+    }
+
+    // reads the next key at the cursor (null for implicit keys)
+    public K readKey() throws IOException {
+        return config.readKey(in);
+    }
+
+    // reads the next value at the cursor (null if values aren't stored)
+    public V readValue() throws IOException {
+        return config.readValue(in);
+    }
+
+    // reads the next key at the cursor as a view on the data, requires explicit SmartStringSerializer keys
+    public Utf8View readKeyView() throws IOException {
+        if (TableConfig.KeyStorage.IMPLICIT.equals(config.getKeyStorage())) {
+            throw new IllegalStateException("keys aren't stored in this table");
+        }
+        return readView(config.getKeySerializer());
+    }
+
+    // reads the next value at the cursor as a view on the data, requires a SmartStringSerializer value
+    public Utf8View readValueView() throws IOException {
+        return readView(config.getValueSerializer());
+    }
+
+    private Utf8View readView(final SmartSerializer<?> serializer) throws IOException {
+        if (!(serializer instanceof SmartStringSerializer)) {
+            throw new IllegalStateException("can't view non-string serializer: " + serializer);
+        }
+        final long start = in.position();
+        if (start >= dataMemory.length()) {
+            throw new IOException("no entry at " + start);
+        }
+        final Utf8View result = SmartStringSerializer.readView(dataMemory, start);
+        in.seek(start + SmartStringSerializer.serializedSize(result.byteLength()));
+        return result;
+    }
+
+    // the hash of the current entry, or -1 if not positioned
+    public long getHash() {
+        return hash;
+    }
+
+    // the data offset of the current entry, or -1 if not positioned
+    public long getOffset() {
+        return offset;
+    }
+
+    // the data offset of the last value found by seekValue, or -1
+    public long getValueOffset() {
+        return valueOffset;
+    }
+
+    // the serialized length of the last value found by seekValue, or -1
+    public long getValueLength() {
+        return valueLength;
+    }
+
+    // the underlying input, positioned wherever the last read left it
+    public MemoryDataInput getInput() {
+        return in;
+    }
+
+    private long hashKey(final K key) {
+        if ((minKey != null && ((Comparable) minKey).compareTo(key) > 0)
+            || (maxKey != null && ((Comparable) maxKey).compareTo(key) < 0)) {
+            return -1;
+        }
+        if (!compareKeyBytes) {
+            return meta.getFilteredHash(key);
+        }
+        // keep the serialized key to compare with the stored one
+        probe = meta.getTransform().serializeForLookup(key);
+        return meta.getFilteredHash(probe.getBits(), triple);
+    }
+
+    // Entries are stored in hash order for all but INDEXED offsets,
+    // so the value ends where the next entry begins.  Otherwise we
+    // have to let the serializer skip over it.
+    private long readValueLength(final long start) throws IOException {
+        if (config.getValueSerializer() == null) {
+            return 0;
+        }
+        if (config.isHashOrdered()) {
+            final long end = hash + 1 < meta.numEntries() ?
+                meta.getHashOffset(hash + 1, offsets, select) : dataMemory.length();
+            return end - start;
+        }
+        config.getValueSerializer().skip(in, 1);
+        return in.position() - start;
+    }
+
+    private boolean clear() {
+        hash = -1;
+        offset = -1;
+        return false;
+    }
+
+    // buffer for the serialized probe keys of a batch
+    private static class KeyBytes extends ByteArrayOutputStream {
+        byte[] buffer() {
+            return buf;
+        }
+
+        // the long at off, as it would be read from memory
+        static long getLong(final byte[] bytes, final int off, final boolean littleEndian) {
+            long result = 0;
+            for (int i = 0; i < 8; ++i) {
+                result = (result << 8) | (bytes[off + (littleEndian ? 7 - i : i)] & 0xFFL);
+            }
+            return result;
+        }
+    }
+}
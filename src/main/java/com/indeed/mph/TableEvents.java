@@ -0,0 +1,113 @@
+package com.indeed.mph;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nullable;
+
+/**
+ * Emits Java Flight Recorder events for sampled lookups, table opens
+ * and {@link TableWriter} phases, see {@link JfrTableEvents} for the
+ * event types.
+ * <p>
+ * The JFR classes are only loaded if available (they're missing from
+ * older Java 8 runtimes) and the system property com.indeed.mph.jfr
+ * isn't "false", and events are only created while a recording is
+ * running, so the cost on the lookup path otherwise is a single
+ * static read.  While recording, one in every
+ * com.indeed.mph.jfr.lookupSampleInterval (default 1024) lookups per
+ * cursor is timed and emitted.
+ * <p>
+ * Each begin method returns an opaque event, or null if nothing is to
+ * be recorded, to be passed to the matching commit method.
+ */
+final class TableEvents {
+    private static final Logger LOGGER = Logger.getLogger(TableEvents.class);
+    static final String JFR_PROPERTY = "com.indeed.mph.jfr";
+    static final String SAMPLE_PROPERTY = "com.indeed.mph.jfr.lookupSampleInterval";
+    static final int LOOKUP_SAMPLE_INTERVAL = Math.max(1, Integer.getInteger(SAMPLE_PROPERTY, 1024));
+
+    // whether any flight recording is running, maintained by JfrTableEvents
+    static volatile boolean recording;
+
+    static {
+        if (!"false".equalsIgnoreCase(System.getProperty(JFR_PROPERTY))) {
+            register(() -> {
+                    try {
+                        Class.forName("jdk.jfr.FlightRecorder");
+                    } catch (final ClassNotFoundException e) {
+                        throw new NoClassDefFoundError(e.getMessage());
+                    }
+                    JfrTableEvents.register();
+                });
+        }
+    }
+
+    // runs the registration, falling back to no events if it fails for
+    // any reason (e.g. a SecurityException) rather than failing class
+    // initialization and with it every open
+    static boolean register(final Runnable registration) {
+        try {
+            registration.run();
+            return true;
+        } catch (final RuntimeException | LinkageError e) {
+            recording = false;
+            LOGGER.debug("flight recorder events not available", e);
+            return false;
+        }
+    }
+
+    private TableEvents() {}
+
+    @Nullable
+    static Object beginLookup(final TableCursor<?, ?> cursor) {
+        if (!recording || --cursor.lookupsUntilEvent > 0) {
+            return null;
+        }
+        cursor.lookupsUntilEvent = LOOKUP_SAMPLE_INTERVAL;
+        return JfrTableEvents.beginLookup();
+    }
+
+    static void commitLookup(@Nullable final Object event,
+                             final MonitoredTable table,
+                             final TableCursor<?, ?> cursor,
+                             final LookupStatus status) {
+        if (event != null) {
+            final long bytesRead = status == LookupStatus.FILTERED ? 0 : cursor.getInput().position() - cursor.getOffset();
+            JfrTableEvents.commitLookup(event, table.getName(), cursor.getHash(), cursor.getOffset(), bytesRead, status);
+        }
+    }
+
+    @Nullable
+    static Object beginOpen() {
+        return recording ? JfrTableEvents.beginOpen() : null;
+    }
+
+    /**
+     * @param event     from beginOpen
+     * @param meta      the meta-data of the opened table
+     * @param dataBytes the size of the data
+     * @param onHeap    whether the data was copied onto the heap
+     * @param stepNanos the time to load the meta-data, map the files, copy the data to the heap, and build the reader
+     */
+    static void commitOpen(@Nullable final Object event,
+                           final TableMeta<?, ?> meta,
+                           final long dataBytes,
+                           final boolean onHeap,
+                           final long[] stepNanos) {
+        if (event != null) {
+            JfrTableEvents.commitOpen(event, String.valueOf(meta.getMetaPath()), meta.getConfig().getOffsetStorage().name(),
+                                      meta.numEntries(), dataBytes, onHeap, stepNanos);
+        }
+    }
+
+    @Nullable
+    static Object beginPhase() {
+        return recording ? JfrTableEvents.beginPhase() : null;
+    }
+
+    static void commitPhase(@Nullable final Object event, final String phase, final long entries, final long bytes) {
+        if (event != null) {
+            JfrTableEvents.commitPhase(event, phase, entries, bytes);
+        }
+    }
+}
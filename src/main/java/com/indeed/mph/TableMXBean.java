@@ -0,0 +1,47 @@
+package com.indeed.mph;
+
+/**
+ * The JMX attributes published for each open table by
+ * {@link JmxTableMetrics}.  Latencies are -1 unless the table records
+ * them (see {@link TableReader#setStatsLevel}).
+ */
+public interface TableMXBean {
+    String getName();
+
+    // TableReader, SharedTableReader or MphMap
+    String getType();
+
+    boolean isOpen();
+
+    long getTableSize();
+
+    long getTimestamp();
+
+    // when the table was opened, in millis since the epoch
+    long getOpenedTime();
+
+    long getFilteredCount();
+
+    long getMissingCount();
+
+    long getRetrievedCount();
+
+    long getLookupCount();
+
+    // lookups per second over the last one to two minutes (or since open),
+    // independent of when or how often it's read
+    double getLookupRate();
+
+    // the fraction of lookups which found their key
+    double getHitRatio();
+
+    long getLatencyP50Nanos();
+
+    long getLatencyP99Nanos();
+
+    long getLatencyP999Nanos();
+
+    long getMappedBytes();
+
+    long getHeapBytes();
+}
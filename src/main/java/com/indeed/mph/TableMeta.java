@@ -1,7 +1,12 @@
 package com.indeed.mph;
 
+import com.indeed.mph.serializers.SmartDictionarySerializer;
+import com.indeed.util.mmap.MMapBuffer;
 import com.indeed.util.mmap.Memory;
+import it.unimi.dsi.bits.BitVector;
+import it.unimi.dsi.sux4j.mph.AbstractHashFunction;
 import it.unimi.dsi.sux4j.mph.GOVMinimalPerfectHashFunction;
+import it.unimi.dsi.sux4j.mph.Hashes;
 import it.unimi.dsi.sux4j.bits.Select;
 import org.apache.log4j.Logger;
 
@@ -16,6 +21,11 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * All meta-information for a table, including configuration, paths,
@@ -33,6 +43,10 @@ public class TableMeta<K, V> implements Serializable {
     public static final String DEFAULT_META_PATH = "meta.bin";
     public static final String DEFAULT_OFFSETS_PATH = "offsets.bin";
     public static final String DEFAULT_DATA_PATH = "data.bin";
+    public static final String DEFAULT_HASH_PATH = "hash.bin";
+    public static final String DEFAULT_SELECT_PATH = "select.bin";
+    public static final String DEFAULT_FINGERPRINTS_PATH = "fingerprints.bin";
+    public static final String DEFAULT_FILTER_PATH = "filter.bin";
     private final TableConfig<K, V> config;
     private final GOVMinimalPerfectHashFunction<K> mph;
     private final Select selectOffsets;
@@ -45,6 +59,15 @@ public class TableMeta<K, V> implements Serializable {
     private File dataPath;
     private final byte[] minKey;
     private final byte[] maxKey;
+    private transient MMapGOVMinimalPerfectHashFunction<K> mappedMph;
+    private transient MMapBuffer fingerprintsBuffer;
+    private transient Memory fingerprints;
+    private transient XorFilter filter;
+    // derived from the fields above, final so they're safely published to
+    // every reader thread, and recomputed on deserialization by readResolve
+    private final transient TableWriter.SerializerTransformationStrategy<K> transform;
+    private final transient ThreadLocal<long[]> triples;
+    private final transient long globalSeed;
 
     public TableMeta(@Nonnull final TableConfig<K, V> config,
                      @Nonnull final GOVMinimalPerfectHashFunction<K> mph,
@@ -60,6 +83,31 @@ public class TableMeta<K, V> implements Serializable {
         this.dataSize = dataSize;
         this.bytesPerOffset = config.bytesPerOffset(numEntries(), dataSize);
         this.timestamp = System.currentTimeMillis();
+        this.transform = new TableWriter.SerializerTransformationStrategy<>((SmartSerializer<K>) config.getKeySerializer());
+        this.triples = ThreadLocal.withInitial(() -> new long[3]);
+        this.globalSeed = readGlobalSeed(mph);
+    }
+
+    // a deserialized copy, with the transient fields initialized
+    private TableMeta(@Nonnull final TableMeta<K, V> other) {
+        this.config = other.config;
+        this.mph = other.mph;
+        this.selectOffsets = other.selectOffsets;
+        this.minKey = other.minKey;
+        this.maxKey = other.maxKey;
+        this.dataSize = other.dataSize;
+        this.bytesPerOffset = other.bytesPerOffset;
+        this.timestamp = other.timestamp;
+        this.metaPath = other.metaPath;
+        this.offsetsPath = other.offsetsPath;
+        this.dataPath = other.dataPath;
+        this.transform = new TableWriter.SerializerTransformationStrategy<>((SmartSerializer<K>) config.getKeySerializer());
+        this.triples = ThreadLocal.withInitial(() -> new long[3]);
+        this.globalSeed = readGlobalSeed(mph);
+    }
+
+    private Object readResolve() {
+        return new TableMeta<>(this);
     }
 
     public TableMeta(@Nonnull final TableConfig<K, V> config,
@@ -80,6 +128,16 @@ public class TableMeta<K, V> implements Serializable {
             if (dataPath != null) {
                 result.dataPath = dataPath;
             }
+            if (TableConfig.HashStorage.MMAPPED.equals(result.getConfig().getHashStorage())) {
+                result.mappedMph = MMapGOVMinimalPerfectHashFunction.open(result.getMph(), result.getHashPath());
+            }
+            if (result.getConfig().getFingerprintWidth() > 0 && result.getFingerprintsPath().exists()) {
+                result.fingerprintsBuffer = new MMapBuffer(result.getFingerprintsPath(), FileChannel.MapMode.READ_ONLY, ByteOrder.LITTLE_ENDIAN);
+                result.fingerprints = result.fingerprintsBuffer.memory();
+            }
+            if (result.getConfig().getKeyFilter() && result.getFilterPath().exists()) {
+                result.filter = XorFilter.open(result.getFilterPath());
+            }
             return result;
         } catch (final ClassNotFoundException e) {
             throw new IOException("couldn't read TableMeta", e);
@@ -105,6 +163,22 @@ public class TableMeta<K, V> implements Serializable {
         return offsetsPath == null ? new File(metaPath.getParentFile(), DEFAULT_OFFSETS_PATH) : offsetsPath;
     }
 
+    public File getHashPath() {
+        return new File(metaPath.getParentFile(), DEFAULT_HASH_PATH);
+    }
+
+    public File getSelectPath() {
+        return new File(metaPath.getParentFile(), DEFAULT_SELECT_PATH);
+    }
+
+    public File getFingerprintsPath() {
+        return new File(metaPath.getParentFile(), DEFAULT_FINGERPRINTS_PATH);
+    }
+
+    public File getFilterPath() {
+        return new File(metaPath.getParentFile(), DEFAULT_FILTER_PATH);
+    }
+
     public File getDataPath() {
         return dataPath == null ? new File(metaPath.getParentFile(), DEFAULT_DATA_PATH) : dataPath;
     }
@@ -119,11 +193,73 @@ public class TableMeta<K, V> implements Serializable {
             return dataSize + config.getIndexedOffsetSize(numEntries(), dataSize);
         case SELECTED:
             return dataSize + config.getSelectedOffsetSize(numEntries(), dataSize);
+        case ELIAS_FANO:
+            return dataSize + config.getEliasFanoOffsetSize(numEntries(), dataSize);
+        case BLOCK_DELTA:
+            return dataSize + getOffsetsPath().length();
+        case INLINED:
+            // the slots and the entries not inlined in them
+            return getDataPath().length();
         default:
             return dataSize;
         }
     }
 
+    // the size of the hash function, fingerprints and filter files mmapped by this meta-data
+    public long getMappedBytes() {
+        return (mappedMph != null && mappedMph.isMapped() ? mappedMph.length() : 0) +
+            (fingerprintsBuffer != null ? fingerprints.length() : 0) +
+            (filter != null && filter.isMapped() ? filter.length() : 0);
+    }
+
+    // the hash function, fingerprints and filter memory mmapped by this meta-data
+    List<Memory> getMappedRegions() {
+        final List<Memory> result = new ArrayList<>();
+        if (mappedMph != null && mappedMph.isMapped()) {
+            result.add(mappedMph.getMemory());
+        }
+        if (fingerprintsBuffer != null) {
+            result.add(fingerprints);
+        }
+        if (filter != null && filter.isMapped()) {
+            result.add(filter.getMemory());
+        }
+        return result;
+    }
+
+    /**
+     * Estimates the heap used by the meta-data: the hash function
+     * (unless mmapped), any SELECTED offsets stored in the meta-data,
+     * dictionaries used by the serializers, and any of the hash
+     * function, fingerprints or filter copied onto the heap.
+     *
+     * @return the estimated heap bytes
+     */
+    public long getHeapBytes() {
+        long result = 0;
+        if (mappedMph == null) {
+            result += mph.numBits() / 8;
+        } else if (!mappedMph.isMapped()) {
+            result += mappedMph.length();
+        }
+        if (selectOffsets != null) {
+            result += selectOffsets.numBits() / 8;
+        }
+        if (fingerprints != null && fingerprintsBuffer == null) {
+            result += fingerprints.length();
+        }
+        if (filter != null && !filter.isMapped()) {
+            result += filter.length();
+        }
+        if (config.getKeySerializer() instanceof SmartDictionarySerializer) {
+            result += ((SmartDictionarySerializer) config.getKeySerializer()).getHeapBytes();
+        }
+        if (config.getValueSerializer() instanceof SmartDictionarySerializer) {
+            result += ((SmartDictionarySerializer) config.getValueSerializer()).getHeapBytes();
+        }
+        return result;
+    }
+
     public int getVersion() {
         return version;
     }
@@ -132,11 +268,49 @@ public class TableMeta<K, V> implements Serializable {
         return timestamp;
     }
 
+    // with MMAPPED hash storage this is only the skeleton, use getHashFunction for lookups
     @Nonnull
     public GOVMinimalPerfectHashFunction<K> getMph() {
         return mph;
     }
 
+    @Nonnull
+    public AbstractHashFunction<K> getHashFunction() {
+        return mappedMph != null ? mappedMph : mph;
+    }
+
+    // replaces the mmapped hash function, e.g. with a heap-based copy
+    void setMappedHashFunction(@Nullable final MMapGOVMinimalPerfectHashFunction<K> hashFunction) throws IOException {
+        if (mappedMph != null && mappedMph != hashFunction) {
+            mappedMph.close();
+        }
+        mappedMph = hashFunction;
+    }
+
+    // replaces the mmapped fingerprints, e.g. with a heap-based copy
+    void setFingerprints(@Nullable final Memory fingerprints) throws IOException {
+        if (fingerprintsBuffer != null) {
+            fingerprintsBuffer.close();
+            fingerprintsBuffer = null;
+        }
+        this.fingerprints = fingerprints;
+    }
+
+    // replaces the mmapped key filter, e.g. with a heap-based copy
+    void setFilter(@Nullable final XorFilter filter) throws IOException {
+        if (this.filter != null && this.filter != filter) {
+            this.filter.close();
+        }
+        this.filter = filter;
+    }
+
+    // releases the mmapped hash function, fingerprints and filter, if any
+    public void close() throws IOException {
+        setMappedHashFunction(null);
+        setFingerprints(null);
+        setFilter(null);
+    }
+
     @Nonnull
     public TableConfig<K, V> getConfig() {
         return config;
@@ -157,12 +331,116 @@ public class TableMeta<K, V> implements Serializable {
         return selectOffsets;
     }
 
+    // the key transformation the hash function was built with
+    TableWriter.SerializerTransformationStrategy<K> getTransform() {
+        return transform;
+    }
+
     public long getHash(@Nonnull final K key) {
-        return mph.getLong(key);
+        return mappedMph != null ? mappedMph.getLong(key) : mph.getLong(key);
+    }
+
+    /**
+     * Hashes a key which has already been run through the key
+     * transformation, storing the intermediate spooky hash in the
+     * caller-supplied triple so that no allocation is needed.
+     *
+     * @param bits   the transformed key, as produced by the serializer
+     * @param triple scratch space of length 3
+     * @return the hash bucket of the key, or -1 if not present
+     */
+    public long getHash(@Nonnull final BitVector bits, @Nonnull final long[] triple) {
+        Hashes.spooky4(bits, getGlobalSeed(), triple);
+        return getHashByTriple(triple);
+    }
+
+    private long getHashByTriple(final long[] triple) {
+        return mappedMph != null ? mappedMph.getLongByTriple(triple) : mph.getLongByTriple(triple);
+    }
+
+    /**
+     * As {@link #getHash(Object)}, also storing the spooky hash of
+     * the key in triple for use with {@link #getFingerprint(long[])}.
+     *
+     * @param key    the key to hash
+     * @param triple scratch space of length 3
+     * @return the hash bucket of the key, or -1 if not present
+     */
+    public long getHash(@Nonnull final K key, @Nonnull final long[] triple) {
+        return getHash(transform.toBitVector(key), triple);
+    }
+
+    /**
+     * As {@link #getHash(Object)}, but returns -1 without touching
+     * the data if the table has fingerprints and the key's doesn't
+     * match the one stored for its hash bucket.
+     *
+     * @param key the key to hash
+     * @return the hash bucket of the key, or -1 if known not present
+     */
+    public long getFilteredHash(@Nonnull final K key) {
+        if (fingerprints == null && filter == null) {
+            return getHash(key);
+        }
+        return getFilteredHash(transform.toBitVector(key), triples.get());
+    }
+
+    /**
+     * As {@link #getHash(BitVector, long[])}, but checking the key
+     * filter, if any, before evaluating the hash function, and the
+     * fingerprints, if any, after.
+     *
+     * @param bits   the transformed key, as produced by the serializer
+     * @param triple scratch space of length 3
+     * @return the hash bucket of the key, or -1 if known not present
+     */
+    public long getFilteredHash(@Nonnull final BitVector bits, @Nonnull final long[] triple) {
+        Hashes.spooky4(bits, getGlobalSeed(), triple);
+        if (filter != null && !filter.mayContain(getFilterHash(triple))) {
+            return -1;
+        }
+        final long hash = getHashByTriple(triple);
+        return hash >= 0 && matchesFingerprint(hash, triple) ? hash : -1;
+    }
+
+    // the key hash for the xor filter from a key's spooky hash
+    public static long getFilterHash(@Nonnull final long[] triple) {
+        return triple[1] ^ Long.rotateLeft(triple[2], 32);
+    }
+
+    // the fingerprint of a key from its spooky hash, mixing all three
+    // words since parts of each go into choosing the hash bucket
+    public int getFingerprint(@Nonnull final long[] triple) {
+        final int width = config.getFingerprintWidth();
+        return width == 0 ? 0 : (int) (((triple[0] ^ triple[1] ^ triple[2]) * 0x9E3779B97F4A7C15L) >>> (64 - width));
+    }
+
+    // true if there are no fingerprints or the stored one matches
+    public boolean matchesFingerprint(final long hash, @Nonnull final long[] triple) {
+        if (fingerprints == null) {
+            return true;
+        }
+        final int stored = config.getFingerprintWidth() == 8 ?
+            fingerprints.getByte(hash) & 0xFF : fingerprints.getShort(hash * 2) & 0xFFFF;
+        return stored == getFingerprint(triple);
+    }
+
+    private long getGlobalSeed() {
+        return globalSeed;
+    }
+
+    private static long readGlobalSeed(final GOVMinimalPerfectHashFunction<?> mph) {
+        try {
+            final Field field = GOVMinimalPerfectHashFunction.class.getDeclaredField("globalSeed");
+            field.setAccessible(true);
+            return field.getLong(mph);
+        } catch (final NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalStateException("can't access hash function seed", e);
+        }
     }
 
     public long getOffset(@Nonnull final K key, @Nullable final Memory offsets, @Nullable final Select select) {
-        final long hash = getHash(key);
+        final long hash = getFilteredHash(key);
         if (hash < 0) {
             return hash;
         }
@@ -188,6 +466,21 @@ public class TableMeta<K, V> implements Serializable {
             final long rawSelected = select == null ? selectOffsets.select(hash) : select.select(hash);
             final long selected = rawSelected < 0 ? 0 : rawSelected;
             return config.decompressOffset(selected, hash);
+        case ELIAS_FANO:
+            if (select == null) {
+                throw new IllegalArgumentException("elias-fano offsets with null select");
+            }
+            return config.getEntrySize().applyNth(select.select(hash), hash);
+        case BLOCK_DELTA:
+            if (offsets == null) {
+                throw new IllegalArgumentException("block delta offsets with null memory");
+            }
+            return getBlockDeltaOffset(hash, offsets);
+        case INLINED:
+            if (offsets == null) {
+                throw new IllegalArgumentException("inlined offsets with null memory");
+            }
+            return getInlinedOffset(hash, offsets);
         case FIXED:
             return config.decompressOffset(0L /* unused */, hash);
         default:
@@ -195,6 +488,52 @@ public class TableMeta<K, V> implements Serializable {
         }
     }
 
+    // Block delta offsets are laid out as two little-endian longs,
+    // log2(blockSize) and deltaBits, followed by the bit-packed deltas
+    // from the start of each block, padded by 8 bytes so that any
+    // delta can be read with a single unaligned long, followed by the
+    // absolute offset of each block.  The header is read on every
+    // lookup but is always in cache.
+
+    public static final int BLOCK_DELTA_HEADER_SIZE = 16;
+
+    public static long blockDeltaBasesStart(final long numEntries, final int deltaBits) {
+        return BLOCK_DELTA_HEADER_SIZE + ((numEntries * deltaBits + 7) >>> 3) + 8;
+    }
+
+    private long getBlockDeltaOffset(final long hash, @Nonnull final Memory offsets) {
+        final int blockShift = (int) offsets.getLong(0);
+        final int deltaBits = (int) offsets.getLong(8);
+        final long base = offsets.getLong(blockDeltaBasesStart(numEntries(), deltaBits) + 8L * (hash >>> blockShift));
+        if (deltaBits == 0) {
+            return base;
+        }
+        final long bit = hash * deltaBits;
+        final long delta = offsets.getLong(BLOCK_DELTA_HEADER_SIZE + (bit >>> 3)) >>> (bit & 7);
+        return base + (delta & (-1L >>> (64 - deltaBits)));
+    }
+
+    // Inlined slots are at the start of the data itself.  If the low
+    // bit of a slot's first byte is set, the entry follows in the rest
+    // of the slot, otherwise the slot is the entry's offset shifted
+    // left by one.  Offsets are little-endian whatever the native
+    // order, so that the tag bit is always in the first byte.
+
+    static final boolean NATIVE_BIG_ENDIAN = ByteOrder.BIG_ENDIAN.equals(ByteOrder.nativeOrder());
+
+    private long getInlinedOffset(final long hash, @Nonnull final Memory data) {
+        final long slot = hash * bytesPerOffset;
+        if ((data.getByte(slot) & 1) != 0) {
+            return slot + 1;
+        }
+        if (bytesPerOffset == 4) {
+            final int value = data.getInt(slot);
+            return ((NATIVE_BIG_ENDIAN ? Integer.reverseBytes(value) : value) & 0xFFFFFFFFL) >>> 1;
+        }
+        final long value = data.getLong(slot);
+        return (NATIVE_BIG_ENDIAN ? Long.reverseBytes(value) : value) >>> 1;
+    }
+
     private K maybeDeserializeKey(final byte[] bytes) {
         try {
             if (bytes != null) {
@@ -0,0 +1,33 @@
+package com.indeed.mph;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+
+/**
+ * Listener for table lifecycle events, for publishing metrics about
+ * the tables in a process.  Listeners are registered with
+ * {@link TableMetricsRegistry#addListener}, or discovered with
+ * {@link java.util.ServiceLoader} from
+ * META-INF/services/com.indeed.mph.TableMetrics, and by default
+ * include {@link JmxTableMetrics}.
+ * <p>
+ * Listeners are called synchronously from the thread opening, closing
+ * or writing a table, and should return quickly.  Tables are polled
+ * for values through their {@link MonitoredTable} view, so nothing is
+ * called on the lookup path.  Exceptions from listeners are logged
+ * and otherwise ignored.
+ */
+public interface TableMetrics {
+    // called when a TableReader, SharedTableReader or ReloadingTableReader is opened,
+    // or an MphMap is registered with MphMap#registerMetrics
+    default void opened(@Nonnull final MonitoredTable table) {
+    }
+
+    // called once when a table is closed, or an MphMap unregistered
+    default void closed(@Nonnull final MonitoredTable table) {
+    }
+
+    // called when TableWriter has finished writing a table to outputDir
+    default void written(@Nonnull final File outputDir, @Nonnull final TableMeta<?, ?> meta, final long elapsedMillis) {
+    }
+}
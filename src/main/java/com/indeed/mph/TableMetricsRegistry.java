@@ -0,0 +1,80 @@
+package com.indeed.mph;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The process-wide set of {@link TableMetrics} listeners.  Initially
+ * holds {@link JmxTableMetrics#INSTANCE} (unless the system property
+ * com.indeed.mph.jmx is "false") and any listeners found by
+ * {@link ServiceLoader}.
+ */
+public final class TableMetricsRegistry {
+    private static final Logger LOGGER = Logger.getLogger(TableMetricsRegistry.class);
+    public static final String JMX_PROPERTY = "com.indeed.mph.jmx";
+
+    private static final List<TableMetrics> LISTENERS = new CopyOnWriteArrayList<>();
+
+    static {
+        if (!"false".equalsIgnoreCase(System.getProperty(JMX_PROPERTY))) {
+            LISTENERS.add(JmxTableMetrics.INSTANCE);
+        }
+        try {
+            for (final TableMetrics listener : ServiceLoader.load(TableMetrics.class)) {
+                LISTENERS.add(listener);
+            }
+        } catch (final Throwable e) {
+            LOGGER.error("couldn't load TableMetrics services", e);
+        }
+    }
+
+    private TableMetricsRegistry() {}
+
+    public static void addListener(@Nonnull final TableMetrics listener) {
+        LISTENERS.add(listener);
+    }
+
+    // returns true if the listener was registered
+    public static boolean removeListener(@Nonnull final TableMetrics listener) {
+        return LISTENERS.remove(listener);
+    }
+
+    public static List<TableMetrics> getListeners() {
+        return LISTENERS;
+    }
+
+    static void opened(@Nonnull final MonitoredTable table) {
+        for (final TableMetrics listener : LISTENERS) {
+            try {
+                listener.opened(table);
+            } catch (final RuntimeException e) {
+                LOGGER.error("error publishing open of " + table.getName() + " to " + listener, e);
+            }
+        }
+    }
+
+    static void closed(@Nonnull final MonitoredTable table) {
+        for (final TableMetrics listener : LISTENERS) {
+            try {
+                listener.closed(table);
+            } catch (final RuntimeException e) {
+                LOGGER.error("error publishing close of " + table.getName() + " to " + listener, e);
+            }
+        }
+    }
+
+    static void written(@Nonnull final File outputDir, @Nonnull final TableMeta<?, ?> meta, final long elapsedMillis) {
+        for (final TableMetrics listener : LISTENERS) {
+            try {
+                listener.written(outputDir, meta, elapsedMillis);
+            } catch (final RuntimeException e) {
+                LOGGER.error("error publishing write of " + outputDir + " to " + listener, e);
+            }
+        }
+    }
+}
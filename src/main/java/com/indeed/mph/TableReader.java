@@ -20,11 +20,19 @@ import java.io.IOException;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Random;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Class to read from arbitrary mph tables.  Mph tables are
@@ -61,21 +69,28 @@ import java.util.concurrent.atomic.AtomicLong;
  *    --quiet: don't actually print the values
  *    --repeat n: repeat the read n times
  *    --threads n: duplicate all reads simultaneously among n threads
+ *    --warm n: pre-fault the table with n threads before reading
  *
  * @author alexs
  */
-public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
+public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>>, MonitoredTable {
     private final TableMeta<K, V> meta;
     private final MMapBuffer offsets;
+    private final MMapBuffer selectIndex;
     private final Memory memory;
     private final Select select;
     private MMapBuffer data;
     private Memory dataMemory;
     private final K minKey;
     private final K maxKey;
-    private final AtomicLong filteredCount = new AtomicLong(0L);
-    private final AtomicLong missingCount = new AtomicLong(0L);
-    private final AtomicLong retrievedCount = new AtomicLong(0L);
+    private final LookupStats stats = new LookupStats();
+    private final ThreadLocal<TableCursor<K, V>> cursors = ThreadLocal.withInitial(this::newCursor);
+    private volatile TableWarmup.Task warmup;
+    private volatile HotKeySampler<? super K> sampler;
+    // true while reported to TableMetricsRegistry, see unregisterMetrics
+    private final AtomicBoolean registered = new AtomicBoolean();
+    // the bytes read by warmKeys, published so the reads can't be optimized away
+    private volatile long warmKeysSink;
 
     public TableReader(@Nonnull final TableMeta<K, V> meta,
                        @Nonnull final byte[] rawData) {
@@ -83,8 +98,9 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
         dataMemory = new HeapMemory(rawData, ByteOrder.nativeOrder());
         data = null;
         offsets = null;
+        selectIndex = null;
         select = null;
-        memory = null;
+        memory = TableConfig.OffsetStorage.INLINED.equals(meta.getConfig().getOffsetStorage()) ? dataMemory : null;
         minKey = meta.getMinKey();
         maxKey = meta.getMaxKey();
     }
@@ -92,13 +108,34 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
     public TableReader(@Nonnull final TableMeta<K, V> meta,
                        @Nonnull final MMapBuffer data,
                        @Nullable final MMapBuffer offsets) {
+        this(meta, data, offsets, null);
+    }
+
+    /**
+     * @param meta        the table meta-data
+     * @param data        the mmapped raw data
+     * @param offsets     the mmapped offsets, if stored separately
+     * @param selectIndex the mmapped index for SELECTED offsets as
+     *                      written by {@link MMapSelect#writeTo}, or null to
+     *                      build the index on the heap
+     */
+    public TableReader(@Nonnull final TableMeta<K, V> meta,
+                       @Nonnull final MMapBuffer data,
+                       @Nullable final MMapBuffer offsets,
+                       @Nullable final MMapBuffer selectIndex) {
         this.meta = meta;
         this.data = data;
         this.dataMemory = data.memory();
         this.offsets = offsets;
+        this.selectIndex = selectIndex;
         if (offsets != null) {
             if (TableConfig.OffsetStorage.SELECTED.equals(meta.getConfig().getOffsetStorage())) {
-                select = new HintedBsearchSelect(new Rank9(new MMapBitVector(offsets)));
+                select = selectIndex != null ?
+                    new MMapSelect(offsets.memory(), selectIndex.memory()) :
+                    new HintedBsearchSelect(new Rank9(new MMapBitVector(offsets)));
+                memory = null;
+            } else if (TableConfig.OffsetStorage.ELIAS_FANO.equals(meta.getConfig().getOffsetStorage())) {
+                select = new EliasFanoSelect(offsets.memory());
                 memory = null;
             } else {
                 select = null;
@@ -106,7 +143,7 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
             }
         } else {
             select = null;
-            memory = null;
+            memory = TableConfig.OffsetStorage.INLINED.equals(meta.getConfig().getOffsetStorage()) ? dataMemory : null;
         }
         minKey = meta.getMinKey();
         maxKey = meta.getMaxKey();
@@ -114,10 +151,37 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
 
     @Override
     public void close() throws IOException {
+        final boolean wasOpen;
+        final TableWarmup.Task running;
+        synchronized (this) {
+            // mark closed first, so that no warmup can start after the cancel below
+            wasOpen = dataMemory != null;
+            dataMemory = null;
+            running = warmup;
+        }
+        if (running != null) {
+            // stop touching the memory before unmapping it
+            running.cancel();
+        }
         if (offsets != null) offsets.close();
+        if (selectIndex != null) selectIndex.close();
         if (data != null) data.close();
+        meta.close();
         data = null;
-        dataMemory = null;
+        if (wasOpen) {
+            unregisterMetrics();
+        }
+    }
+
+    /**
+     * Stops reporting this reader to {@link TableMetricsRegistry}, for
+     * wrappers like {@link SharedTableReader} which report themselves
+     * instead, so that each table's lookups are only reported once.
+     */
+    void unregisterMetrics() {
+        if (registered.compareAndSet(true, false)) {
+            TableMetricsRegistry.closed(this);
+        }
     }
 
     /**
@@ -139,23 +203,79 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
                                                 @Nullable final File offsetsPath,
                                                 @Nullable final File dataPath,
                                                 @Nullable final Long maxDataHeapUsage) throws IOException {
+        final Object event = TableEvents.beginOpen();
+        // load meta-data, map files, copy to heap, initialize reader
+        final long[] stepNanos = new long[4];
+        long stepStart = System.nanoTime();
         final TableMeta<K, V> meta = TableMeta.load(metaPath, offsetsPath, dataPath);
+        stepNanos[0] = System.nanoTime() - stepStart;
+        stepStart += stepNanos[0];
         final MMapBuffer data =
             new MMapBuffer(meta.getDataPath(), FileChannel.MapMode.READ_ONLY, ByteOrder.nativeOrder());
         final MMapBuffer offsets = TableConfig.OffsetStorage.INDEXED.equals(meta.getConfig().getOffsetStorage()) ||
+            TableConfig.OffsetStorage.ELIAS_FANO.equals(meta.getConfig().getOffsetStorage()) ||
+            TableConfig.OffsetStorage.BLOCK_DELTA.equals(meta.getConfig().getOffsetStorage()) ||
             (TableConfig.OffsetStorage.SELECTED.equals(meta.getConfig().getOffsetStorage()) && meta.getSelectOffsets() == null) ?
             new MMapBuffer(meta.getOffsetsPath(), FileChannel.MapMode.READ_ONLY, ByteOrder.nativeOrder()) :
             null;
+        // tables written before select.bin existed build the index at open
+        final MMapBuffer selectIndex = offsets != null && meta.getSelectPath().exists() &&
+            TableConfig.OffsetStorage.SELECTED.equals(meta.getConfig().getOffsetStorage()) ?
+            new MMapBuffer(meta.getSelectPath(), FileChannel.MapMode.READ_ONLY, ByteOrder.LITTLE_ENDIAN) :
+            null;
+        stepNanos[1] = System.nanoTime() - stepStart;
+        stepStart += stepNanos[1];
         final long maxDataHeap =
             maxDataHeapUsage != null ? maxDataHeapUsage : meta.getConfig().getMaxDataHeapUsage();
-        if (offsets == null && data.memory().length() < maxDataHeap) {
-            final byte[] rawData = new byte[(int) data.memory().length()];
+        final long dataBytes = data.memory().length();
+        final boolean onHeap = offsets == null && dataBytes < maxDataHeap;
+        final TableReader<K, V> result;
+        if (onHeap) {
+            final byte[] rawData = new byte[(int) dataBytes];
             data.memory().getBytes(0, rawData);
             data.close();
-            return new TableReader<>(meta, rawData);
+            stepNanos[2] = System.nanoTime() - stepStart;
+            stepStart += stepNanos[2];
+            result = new TableReader<>(meta, rawData);
         } else {
-            return new TableReader<>(meta, data, offsets);
+            result = new TableReader<>(meta, data, offsets, selectIndex);
+        }
+        stepNanos[3] = System.nanoTime() - stepStart;
+        TableEvents.commitOpen(event, meta, dataBytes, onHeap, stepNanos);
+        result.registered.set(true);
+        TableMetricsRegistry.opened(result);
+        return result;
+    }
+
+    /**
+     * As above, then pre-faults the mmapped files according to warmup,
+     * see {@link #warm(TableWarmup)}.
+     *
+     * @param metaPath          path to the table's meta-data, either the exact file or the containing directory
+     * @param offsetsPath       path to the raw offsets if different from the meta-data setting
+     * @param dataPath          path to the raw serialized data if different from the meta-data setting
+     * @param maxDataHeapUsage  if specified and positive, raw data less than this size will be
+     *                            stored directly in the heap instead of mmaped
+     * @param warmup            the warmup settings, or null for none
+     * @param <K> key type
+     * @param <V> value type
+     * @return a new TableReader on the data, warmed unless the warmup is async
+     * @throws IOException if unable to open any of the files, or deserialize the metadata
+     */
+    public static <K, V> TableReader<K, V> open(@Nonnull final File metaPath,
+                                                @Nullable final File offsetsPath,
+                                                @Nullable final File dataPath,
+                                                @Nullable final Long maxDataHeapUsage,
+                                                @Nullable final TableWarmup warmup) throws IOException {
+        final TableReader<K, V> result = open(metaPath, offsetsPath, dataPath, maxDataHeapUsage);
+        if (warmup != null) {
+            result.warm(warmup);
         }
+        return result;
+    }
+
+    public static <K, V> TableReader<K, V> open(@Nonnull final File metaPath, @Nullable final TableWarmup warmup) throws IOException {
+        return open(metaPath, null, null, null, warmup);
     }
 
     public static <K, V> TableReader<K, V> open(@Nonnull final File metaPath, @Nullable final File offsetsPath, @Nullable final File dataPath) throws IOException {
@@ -178,6 +298,139 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
         return open(new File(metaPath), maxDataHeapUsage);
     }
 
+    /**
+     * Pre-faults the pages of the mmapped files of this table (data,
+     * offsets, select index, and the hash function, fingerprints and
+     * key filter if mmapped), replacing any previous warmup.  Blocks
+     * until done unless the warmup is async.  Closing the reader
+     * cancels the warmup.
+     *
+     * @param settings the threads, I/O budget etc. to warm with
+     * @return a future completed when every page has been touched
+     */
+    public CompletableFuture<Void> warm(@Nonnull final TableWarmup settings) {
+        final TableWarmup.Task task;
+        synchronized (this) {
+            if (dataMemory == null) {
+                throw new IllegalStateException("table has been closed!");
+            }
+            final TableWarmup.Task previous = warmup;
+            if (previous != null) {
+                previous.cancel();
+            }
+            task = settings.start(getMappedRegions(), getName());
+            warmup = task;
+        }
+        // wait outside the lock, so close can cancel a synchronous warmup
+        if (!settings.isAsync()) {
+            task.await();
+        }
+        return task.getFuture();
+    }
+
+    // the future of the last warmup, already complete if there was none
+    public CompletableFuture<Void> getWarmup() {
+        final TableWarmup.Task task = warmup;
+        return task != null ? task.getFuture() : CompletableFuture.completedFuture(null);
+    }
+
+    // the fraction of the last warmup done so far, 1 if there was none
+    public double getWarmupProgress() {
+        final TableWarmup.Task task = warmup;
+        return task == null || task.getBytesTotal() == 0 ? 1.0 : (double) task.getBytesWarmed() / task.getBytesTotal();
+    }
+
+    /**
+     * Pre-faults only the pages needed to look up the given keys,
+     * e.g. the hot keys sampled from a previous version of the table
+     * by a {@link HotKeySampler}, which for large tables is much
+     * cheaper than {@link #warm(TableWarmup)}.  The entries are read
+     * in offset order.  Keys not in the table are skipped, as far as
+     * the key storage and validator can tell, as with
+     * {@link #containsKey}.
+     *
+     * @param keys the keys to warm
+     * @return the number of data pages touched
+     * @throws IOException if the table is closed or an entry can't be read
+     */
+    public long warmKeys(@Nonnull final Collection<? extends K> keys) throws IOException {
+        if (dataMemory == null) {
+            throw new IOException("table has been closed!");
+        }
+        // checking the keys faults in the hash function and offsets
+        // pages, and the stored keys, though not in offset order
+        final TableCursor<K, V> cursor = cursors.get();
+        final long[] found = new long[keys.size()];
+        int n = 0;
+        for (final K key : keys) {
+            if (LookupStatus.RETRIEVED.equals(cursor.contains(key))) {
+                found[n++] = cursor.getOffset();
+            }
+        }
+        Arrays.sort(found, 0, n);
+        final TableConfig<K, V> config = meta.getConfig();
+        final MemoryDataInput in = new MemoryDataInput(dataMemory);
+        long pages = 0;
+        long lastPage = -1;
+        long sink = 0;
+        for (int i = 0; i < n; ++i) {
+            in.seek(found[i]);
+            config.skipKey(in);
+            if (config.getValueSerializer() != null) {
+                config.getValueSerializer().skip(in, 1);
+            }
+            final long end = Math.min(in.position(), dataMemory.length());
+            for (long page = Math.max(found[i] / TableWarmup.PAGE_SIZE, lastPage + 1);
+                 page * TableWarmup.PAGE_SIZE < end; ++page) {
+                sink += dataMemory.getByte(Math.max(page * TableWarmup.PAGE_SIZE, found[i]));
+                lastPage = page;
+                ++pages;
+            }
+        }
+        warmKeysSink = sink;
+        return pages;
+    }
+
+    public HotKeySampler<? super K> getKeySampler() {
+        return sampler;
+    }
+
+    /**
+     * Samples the keys of subsequent lookups into sampler, or stops
+     * sampling if null.  See {@link HotKeySampler#asWarmer}.
+     *
+     * @param sampler the sampler to offer looked up keys to
+     */
+    public void setKeySampler(@Nullable final HotKeySampler<? super K> sampler) {
+        this.sampler = sampler;
+    }
+
+    // offers key to the sampler if it was found, so that warming
+    // with the sample doesn't fault in pages for missing keys
+    private boolean sample(final K key, final boolean found) {
+        final HotKeySampler<? super K> current = sampler;
+        if (found && current != null) {
+            current.offer(key);
+        }
+        return found;
+    }
+
+    // the mmapped memory of this table
+    List<Memory> getMappedRegions() {
+        final List<Memory> result = new ArrayList<>();
+        if (data != null) {
+            result.add(data.memory());
+        }
+        if (offsets != null) {
+            result.add(offsets.memory());
+        }
+        if (selectIndex != null) {
+            result.add(selectIndex.memory());
+        }
+        result.addAll(meta.getMappedRegions());
+        return result;
+    }
+
     public boolean isDiskBased() {
         return data != null || memory != null;
     }
@@ -191,15 +444,43 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
     }
 
     public TableStats getStats() {
-        return new TableStats(filteredCount.get(), missingCount.get(), retrievedCount.get());
+        return stats.snapshot();
+    }
+
+    public StatsLevel getStatsLevel() {
+        return stats.getLevel();
     }
 
+    /**
+     * Sets what is recorded for each lookup, COUNTS by default.  NONE
+     * removes all shared writes from the lookup path, and LATENCIES
+     * additionally times each lookup into a histogram.
+     *
+     * @param level the new stats level
+     */
+    public void setStatsLevel(@Nonnull final StatsLevel level) {
+        stats.setLevel(level);
+    }
+
+    /**
+     * Returns true iff key is in the table, without deserializing the
+     * value.  See {@link TableCursor#contains(Object)}.
+     *
+     * @param key the key to look up
+     * @return true iff found
+     */
     public boolean containsKey(@Nonnull final K key) {
         try {
             if (meta.getConfig().getKeyValidator() == null) {
-                return getOffset(key) >= 0;
+                return sample(key, getOffset(key) >= 0);
+            }
+            if (dataMemory == null) {
+                return false;
             }
-            return get(key) != null;
+            final long start = stats.start();
+            final LookupStatus status = cursors.get().contains(key);
+            stats.count(status, start);
+            return sample(key, LookupStatus.RETRIEVED.equals(status));
         } catch (final IOException e) {
             return false;
         }
@@ -209,27 +490,165 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
         if (dataMemory == null) {
             throw new IOException("table has been closed!");
         }
-        final long offset = getOffset(key);
-        if (offset < 0) {
-            filteredCount.incrementAndGet();
-            return null;
+        final long start = stats.start();
+        final TableCursor<K, V> cursor = cursors.get();
+        final Object event = TableEvents.beginLookup(cursor);
+        final V result;
+        final LookupStatus status;
+        if (!cursor.seek(key)) {
+            result = null;
+            status = LookupStatus.FILTERED;
+        } else {
+            result = cursor.readValidated(key);
+            status = result == null && meta.getConfig().getKeyValidator() != null ?
+                LookupStatus.MISSING : LookupStatus.RETRIEVED;
         }
-        final MemoryDataInput in = new MemoryDataInput(dataMemory);
-        in.seek(offset);
-        final TableConfig<K, V> config = meta.getConfig();
-        final K extractedKey = config.readKey(in);
-        final V value = config.readValue(in);
-        if (config.getKeyValidator() != null) {
-            final V result = config.getKeyValidator().validate(key, extractedKey, value);
-            if (result == null) {
-                missingCount.incrementAndGet();
-            } else {
-                retrievedCount.incrementAndGet();
+        stats.count(status, start);
+        TableEvents.commitLookup(event, this, cursor, status);
+        sample(key, LookupStatus.RETRIEVED.equals(status));
+        return result;
+    }
+
+    /**
+     * Returns the serialized value for key as a slice of the table
+     * data without deserializing it, or null if not found.  See
+     * {@link TableCursor#getValueSlice(Object)}.
+     *
+     * @param key the key to look up
+     * @return the serialized value, valid only until the table is closed, or null
+     * @throws IOException if the table is closed or the key can't be deserialized
+     */
+    public Memory getValueSlice(@Nonnull final K key) throws IOException {
+        if (dataMemory == null) {
+            throw new IOException("table has been closed!");
+        }
+        final long start = stats.start();
+        final TableCursor<K, V> cursor = cursors.get();
+        final Memory result = cursor.getValueSlice(key);
+        if (cursor.getOffset() < 0) {
+            stats.count(LookupStatus.FILTERED, start);
+        } else if (result == null) {
+            stats.count(LookupStatus.MISSING, start);
+        } else {
+            stats.count(LookupStatus.RETRIEVED, start);
+            sample(key, true);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the string value for key as a view on the table data
+     * without decoding it, or null if not found.  See
+     * {@link TableCursor#getValueView(Object)}.
+     *
+     * @param key the key to look up
+     * @return the value, valid only until the table is closed, or null
+     * @throws IOException if the table is closed or the key can't be deserialized
+     */
+    public Utf8View getValueView(@Nonnull final K key) throws IOException {
+        if (dataMemory == null) {
+            throw new IOException("table has been closed!");
+        }
+        final long start = stats.start();
+        final TableCursor<K, V> cursor = cursors.get();
+        final Utf8View result = cursor.getValueView(key);
+        if (cursor.getOffset() < 0) {
+            stats.count(LookupStatus.FILTERED, start);
+        } else if (result == null) {
+            stats.count(LookupStatus.MISSING, start);
+        } else {
+            stats.count(LookupStatus.RETRIEVED, start);
+            sample(key, true);
+        }
+        return result;
+    }
+
+    /**
+     * Looks up many keys at once, reading the data in offset order.
+     * See {@link TableCursor#getAll(Object[], Object[])}.
+     *
+     * @param keys the keys to look up
+     * @param out  array at least as long as keys to hold the values (null if not found)
+     * @return the status of each lookup, parallel to keys
+     * @throws IOException if the table is closed or an entry can't be deserialized
+     */
+    public LookupStatus[] getAll(@Nonnull final K[] keys, @Nonnull final V[] out) throws IOException {
+        if (dataMemory == null) {
+            throw new IOException("table has been closed!");
+        }
+        final LookupStatus[] result = cursors.get().getAll(keys, out);
+        stats.addAll(result);
+        for (int i = 0; i < keys.length; ++i) {
+            sample(keys[i], LookupStatus.RETRIEVED.equals(result[i]));
+        }
+        return result;
+    }
+
+    /**
+     * As above, returning a map of only the keys which were found.
+     *
+     * @param keys the keys to look up
+     * @return a map from each found key to its value
+     * @throws IOException if the table is closed or an entry can't be deserialized
+     */
+    public Map<K, V> getAll(@Nonnull final Iterable<K> keys) throws IOException {
+        final K[] keyArray = toArray(keys);
+        final V[] values = (V[]) new Object[keyArray.length];
+        return toMap(keyArray, values, getAll(keyArray, values));
+    }
+
+    static <K> K[] toArray(final Iterable<K> keys) {
+        final List<K> result = new ArrayList<>();
+        for (final K key : keys) {
+            result.add(key);
+        }
+        return (K[]) result.toArray();
+    }
+
+    static <K, V> Map<K, V> toMap(final K[] keys, final V[] values, final LookupStatus[] statuses) {
+        final Map<K, V> result = new HashMap<>();
+        for (int i = 0; i < keys.length; ++i) {
+            if (statuses[i] == LookupStatus.RETRIEVED) {
+                result.put(keys[i], values[i]);
             }
-            return result;
         }
-        retrievedCount.incrementAndGet();
-        return value;
+        return result;
+    }
+
+    /**
+     * Returns a new cursor for repeated lookups from a single thread
+     * without per-call allocation.  The cursor is only valid until
+     * this reader is closed.
+     *
+     * @return a new TableCursor on this table
+     * @throws IllegalStateException if the table has been closed
+     */
+    public TableCursor<K, V> newCursor() {
+        if (dataMemory == null) {
+            throw new IllegalStateException("table has been closed!");
+        }
+        return new TableCursor<>(meta, dataMemory, memory, select, minKey, maxKey);
+    }
+
+    Memory getDataMemory() {
+        return dataMemory;
+    }
+
+    Memory getOffsetsMemory() {
+        return memory;
+    }
+
+    Select getSelect() {
+        return select;
+    }
+
+    // the start time for a lookup to pass to countLookup, or 0 if not timing lookups
+    long startLookup() {
+        return stats.start();
+    }
+
+    void countLookup(final LookupStatus status, final long startNanos) {
+        stats.count(status, startNanos);
     }
 
     // no validation other than range, just get the value associated with the hash
@@ -262,7 +681,7 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
         if (in == null) {
             return null;
         }
-        meta.getConfig().readKey(in);
+        meta.getConfig().skipKey(in);
         return meta.getConfig().readValue(in);
     }
 
@@ -298,33 +717,170 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
         return meta.getTimestamp();
     }
 
+    @Override
+    public String getName() {
+        return String.valueOf(meta.getMetaPath());
+    }
+
+    @Override
+    public long getTableSize() {
+        return size();
+    }
+
+    @Override
+    public long getMappedBytes() {
+        if (dataMemory == null) {
+            return 0;
+        }
+        return (data != null ? data.memory().length() : 0) +
+            (offsets != null ? offsets.memory().length() : 0) +
+            (selectIndex != null ? selectIndex.memory().length() : 0) +
+            meta.getMappedBytes();
+    }
+
+    @Override
+    public long getHeapBytes() {
+        if (dataMemory == null) {
+            return 0;
+        }
+        return (data == null ? dataMemory.length() : 0) +
+            (select instanceof HintedBsearchSelect ? select.numBits() / 8 : 0) +
+            meta.getHeapBytes();
+    }
+
     public TableIterator iterator() {
         return new TableIterator();
     }
 
+    /**
+     * @return a new scanner over the whole table in hash order, see {@link TableScanner}
+     * @throws IllegalStateException if the table has been closed
+     */
+    public TableScanner<K, V> newScanner() {
+        return newScanner(0, meta.numEntries());
+    }
+
+    /**
+     * @param start the first hash to scan, inclusive
+     * @param end   the last hash to scan, exclusive
+     * @return a new scanner over the given range of hashes
+     * @throws IllegalStateException if the table has been closed
+     */
+    public TableScanner<K, V> newScanner(final long start, final long end) {
+        if (dataMemory == null) {
+            throw new IllegalStateException("table has been closed!");
+        }
+        return new TableScanner<>(meta, dataMemory, memory, select, start, end);
+    }
+
+    /**
+     * @param split a split of this table from {@link #getSplits(int)}
+     * @return a new scanner over just the hashes of the split
+     * @throws IllegalArgumentException if the split is from another version of the table
+     */
+    public TableScanner<K, V> newScanner(@Nonnull final TableSplit split) {
+        checkSplit(split);
+        return newScanner(split.getStart(), split.getEnd());
+    }
+
+    /**
+     * Divides the table into numSplits disjoint hash ranges for
+     * scanning by separate workers, balanced by bytes of data where
+     * possible.  See {@link TableSplit}.
+     *
+     * @param numSplits the number of splits to make
+     * @return the splits in hash order, some possibly empty
+     * @throws IllegalStateException if the table has been closed
+     */
+    public List<TableSplit> getSplits(final int numSplits) {
+        if (dataMemory == null) {
+            throw new IllegalStateException("table has been closed!");
+        }
+        return TableSplit.split(meta, memory, select, dataMemory.length(), numSplits);
+    }
+
+    // iterates over just the entries of split, see TableSplit
+    public TableIterator iterator(@Nonnull final TableSplit split) {
+        checkSplit(split);
+        return new TableIterator(split.getStart(), split.getEnd());
+    }
+
+    private void checkSplit(final TableSplit split) {
+        if (!split.isFor(meta)) {
+            throw new IllegalArgumentException("split is from a different table: " + split + " of " +
+                                               split.getTableSize() + " entries at " + split.getTableTimestamp());
+        }
+    }
+
+    /**
+     * @return a spliterator over the table in hash order, splitting by hash range
+     * @throws IllegalStateException if the table has been closed
+     */
+    @Override
+    public TableSpliterator<K, V, Pair<K, V>> spliterator() {
+        return spliterator(scanner -> new Pair<>(scanner.key(), scanner.value()));
+    }
+
+    /**
+     * @param extractor function to build a result from each entry
+     * @param <T> result type
+     * @return a spliterator over the results for each entry in hash order
+     * @throws IllegalStateException if the table has been closed
+     */
+    public <T> TableSpliterator<K, V, T> spliterator(@Nonnull final TableScanner.Extractor<K, V, T> extractor) {
+        return spliterator(extractor, 0, meta.numEntries());
+    }
+
+    private <T> TableSpliterator<K, V, T> spliterator(final TableScanner.Extractor<K, V, T> extractor,
+                                                      final long start,
+                                                      final long end) {
+        if (dataMemory == null) {
+            throw new IllegalStateException("table has been closed!");
+        }
+        return new TableSpliterator<>(meta, dataMemory, memory, select, extractor, start, end);
+    }
+
+    // just the keys in hash order, skipping rather than decoding the values
+    public Stream<K> keyStream() {
+        return StreamSupport.stream(spliterator(TableScanner::key), false);
+    }
+
+    // just the values in hash order, skipping rather than decoding the keys
+    public Stream<V> valueStream() {
+        return StreamSupport.stream(spliterator(TableScanner::value), false);
+    }
+
+    // the entries of the table in hash order, valid only until the table is closed
+    public Stream<Pair<K, V>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    // as above, scanning disjoint hash ranges in parallel
+    public Stream<Pair<K, V>> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    // iterates in hash order, scanning the data sequentially where possible (see TableSpliterator)
     public class TableIterator implements Iterator<Pair<K, V>> {
-        private final MemoryDataInput in;
-        private long hash;
+        private final TableSpliterator<K, V, Pair<K, V>> entries;
+        private final Consumer<Pair<K, V>> collector = entry -> next = entry;
+        private Pair<K, V> next;
         public TableIterator() {
-            in = new MemoryDataInput(dataMemory);
-            hash = 0;
+            this(0, meta.numEntries());
+        }
+        public TableIterator(final long start, final long end) {
+            entries = spliterator(scanner -> new Pair<>(scanner.key(), scanner.value()), start, end);
         }
         @Override
         public boolean hasNext() {
-            return hash < meta.numEntries();
+            return entries.estimateSize() > 0;
         }
         @Override
         public Pair<K, V> next() {
-            final long offset = meta.getHashOffset(hash++, memory, select);
-            try {
-                in.seek(offset);
-                final TableConfig<K, V> config = meta.getConfig();
-                final K extractedKey = config.readKey(in);
-                final V value = config.readValue(in);
-                return new Pair<>(extractedKey, value);
-            } catch (final IOException e) {
-                throw new RuntimeException("error reading from TableIterator: " + offset, e);
+            if (!entries.tryAdvance(collector)) {
+                throw new NoSuchElementException();
             }
+            return next;
         }
         @Override
         public void remove() {
@@ -332,14 +888,32 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
         }
     }
 
+    // what to record for each lookup, see setStatsLevel
+    public enum StatsLevel {
+        NONE,                   // nothing, for the hottest paths
+        COUNTS,                 // counts of each LookupStatus
+        LATENCIES,              // counts plus a histogram of lookup times
+    }
+
     public static class TableStats {
         public final long filteredCount;
         public final long missingCount;
         public final long retrievedCount;
+        // LatencyHistogram bucket counts, or null if latencies weren't recorded
+        public final long[] latencyCounts;
         public TableStats(final long filteredCount, final long missingCount, final long retrievedCount) {
+            this(filteredCount, missingCount, retrievedCount, null);
+        }
+        public TableStats(final long filteredCount, final long missingCount, final long retrievedCount,
+                          @Nullable final long[] latencyCounts) {
             this.filteredCount = filteredCount;
             this.missingCount = missingCount;
             this.retrievedCount = retrievedCount;
+            this.latencyCounts = latencyCounts;
+        }
+        // an upper bound on the lookup latency in nanoseconds at percentile (0 to 100), or -1 if not recorded
+        public long getLatencyPercentile(final double percentile) {
+            return latencyCounts == null ? -1 : LatencyHistogram.getPercentile(latencyCounts, percentile);
         }
         public String toString() {
             final long total = filteredCount + missingCount + retrievedCount;
@@ -348,7 +922,10 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
             }
             return "[filtered: " + filteredCount + " (" + (100.0 * filteredCount / total) +
                 "%) missing: " + missingCount + " (" + (100.0 * missingCount / total) +
-                "%) retrieved: " + retrievedCount + " (" + (100.0 * retrievedCount / total) +"%)]";
+                "%) retrieved: " + retrievedCount + " (" + (100.0 * retrievedCount / total) + "%)" +
+                (latencyCounts == null ? "" :
+                 " p50: " + getLatencyPercentile(50) + "ns p99: " + getLatencyPercentile(99) +
+                 "ns p99.9: " + getLatencyPercentile(99.9) + "ns") + "]";
         }
     }
 
@@ -363,6 +940,7 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
         boolean random = false;
         int repetitions = 1;
         int threads = 1;
+        int warmThreads = 0;
         int i = 0;
         parse_opts:
         for ( ; i < args.length && args[i].startsWith("-"); ++i) {
@@ -378,11 +956,12 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
             case "--get": keyStr = args[++i]; break;
             case "--repeat": repetitions = Integer.parseInt(args[++i]); break;
             case "--threads": threads = Integer.parseInt(args[++i]); break;
+            case "--warm": warmThreads = Integer.parseInt(args[++i]); break;
             default: throw new RuntimeException("unknown option: " + args[i]);
             }
         }
         if (args.length - i < 1) {
-            throw new RuntimeException("usage: TableReader [--dump|--info|--quiet|--time|--random|--repeat n|--threads n|--get k] <db> [<keys.txt>]");
+            throw new RuntimeException("usage: TableReader [--dump|--info|--quiet|--time|--random|--repeat n|--threads n|--warm n|--get k] <db> [<keys.txt>]");
         }
         final File tablePath = new File(args[i]);
         final String keyInput = keyStr != null || random || i + 1 >= args.length ? null : args[i + 1];
@@ -409,7 +988,8 @@ public class TableReader<K, V> implements Closeable, Iterable<Pair<K, V>> {
         final boolean printHash = onlyPrintHash;
         final boolean printOffset = onlyPrintOffset;
         final long startTime = System.currentTimeMillis();
-        try (final TableReader<Object, Object> reader = TableReader.<Object, Object>open(tablePath)) {
+        final TableWarmup warmup = warmThreads > 0 ? new TableWarmup().withThreads(warmThreads) : null;
+        try (final TableReader<Object, Object> reader = TableReader.<Object, Object>open(tablePath, warmup)) {
             final TableConfig<Object, Object> config = reader.getConfig();
             final Object defaultKey = keyStr != null ? config.getKeySerializer().parseFromString(keyStr) : null;
             for (int t = 0; t < threads; ++t) {
@@ -0,0 +1,253 @@
+package com.indeed.mph;
+
+import com.indeed.util.mmap.Memory;
+import com.indeed.util.mmap.MemoryDataInput;
+import it.unimi.dsi.sux4j.bits.Select;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * A cursor-style scan over a range of hashes of a table, in hash
+ * order, without allocating anything per entry.  Each call to
+ * {@link #advance()} moves to the next entry, whose key and value are
+ * only decoded on demand (at most once each, and otherwise skipped
+ * with {@link SmartSerializer#skip}), and whose raw bytes are
+ * available as offsets into the data, or from an input positioned at
+ * them for callers decoding into their own reusable objects.
+ * <p>
+ * Example:
+ * <p>
+ * <code>
+ *   final TableScanner&lt;KeyClass, ValueClass&gt; scanner = reader.newScanner();
+ *   while (scanner.advance()) {
+ *     process(scanner.hash(), scanner.key(), scanner.value());
+ *   }
+ * </code>
+ * <p>
+ * For the offset storage modes where data is written in hash order
+ * (see {@link TableConfig#isHashOrdered()}) the data is decoded
+ * sequentially, looking up offsets only at the start and then every
+ * {@link #VERIFY_INTERVAL} entries to check the scan is still in step
+ * with them, so a full scan is a single pass over the data file
+ * rather than an offset lookup (e.g. a select) per entry.
+ * <p>
+ * Scanners are not thread-safe, and are only valid as long as the
+ * underlying reader is open.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class TableScanner<K, V> {
+    // how often sequential scans check the data position against the offsets, must be a power of 2
+    public static final long VERIFY_INTERVAL = 4096;
+
+    private final TableMeta<K, V> meta;
+    private final TableConfig<K, V> config;
+    private final Memory dataMemory;
+    private final Memory offsets;
+    private final Select select;
+    private final MemoryDataInput in;
+    private final boolean sequential;
+    private final long end;
+    private long next;
+    private long hash;
+    private long entryOffset;
+    private long keyEnd;
+    private long valueEnd;
+    private boolean keyRead;
+    private boolean valueRead;
+    private K key;
+    private V value;
+
+    /**
+     * @param meta       the table meta-data
+     * @param dataMemory the table data
+     * @param offsets    the offsets memory, if any
+     * @param select     the offsets select, if any
+     * @param start      the first hash to visit, inclusive
+     * @param end        the last hash to visit, exclusive
+     */
+    TableScanner(@Nonnull final TableMeta<K, V> meta,
+                 @Nonnull final Memory dataMemory,
+                 @Nullable final Memory offsets,
+                 @Nullable final Select select,
+                 final long start,
+                 final long end) {
+        this.meta = meta;
+        this.config = meta.getConfig();
+        this.dataMemory = dataMemory;
+        this.offsets = offsets;
+        this.select = select;
+        this.in = new MemoryDataInput(dataMemory);
+        this.sequential = config.isHashOrdered();
+        this.end = Math.min(end, meta.numEntries());
+        this.next = Math.max(start, 0);
+        this.hash = -1;
+        this.entryOffset = -1;
+    }
+
+    /**
+     * Moves to the next entry.
+     *
+     * @return false if there are no more entries in the range
+     * @throws IOException if the data is out of step with the offsets, or can't be skipped
+     */
+    public boolean advance() throws IOException {
+        if (next >= end) {
+            hash = -1;
+            entryOffset = -1;
+            return false;
+        }
+        final long h = next++;
+        final long position;
+        if (sequential && entryOffset >= 0) {
+            position = valueEnd();
+            if ((h & (VERIFY_INTERVAL - 1)) == 0) {
+                final long expected = meta.getHashOffset(h, offsets, select);
+                if (expected != position) {
+                    throw new IOException("data out of hash order at hash " + h + ": expected offset " +
+                                          expected + " but scanned to " + position);
+                }
+            }
+        } else {
+            position = meta.getHashOffset(h, offsets, select);
+        }
+        hash = h;
+        entryOffset = position;
+        keyEnd = -1;
+        valueEnd = -1;
+        keyRead = false;
+        valueRead = false;
+        key = null;
+        value = null;
+        return true;
+    }
+
+    // the hash of the current entry, or -1 if not positioned
+    public long hash() {
+        return hash;
+    }
+
+    // the number of entries left after the current one
+    public long remaining() {
+        return end - next;
+    }
+
+    // the decoded key of the current entry (null for implicit keys)
+    public K key() throws IOException {
+        checkPositioned();
+        if (!keyRead) {
+            in.seek(entryOffset);
+            key = config.readKey(in);
+            keyEnd = in.position();
+            keyRead = true;
+        }
+        return key;
+    }
+
+    // the decoded value of the current entry (null if values aren't stored)
+    public V value() throws IOException {
+        checkPositioned();
+        if (!valueRead) {
+            in.seek(keyEnd());
+            value = config.readValue(in);
+            valueEnd = in.position();
+            valueRead = true;
+        }
+        return value;
+    }
+
+    // the table data, which the offsets below refer to
+    public Memory getData() {
+        return dataMemory;
+    }
+
+    // the data offset of the current entry, which is also that of its key
+    public long getKeyOffset() {
+        checkPositioned();
+        return entryOffset;
+    }
+
+    public long getKeyLength() throws IOException {
+        return keyEnd() - getKeyOffset();
+    }
+
+    public long getValueOffset() throws IOException {
+        return keyEnd();
+    }
+
+    public long getValueLength() throws IOException {
+        return valueEnd() - keyEnd();
+    }
+
+    // the raw serialized key, valid as long as the reader is open
+    public Memory getKeySlice() throws IOException {
+        return dataMemory.slice(getKeyOffset(), getKeyLength());
+    }
+
+    // the raw serialized value, valid as long as the reader is open
+    public Memory getValueSlice() throws IOException {
+        return dataMemory.slice(getValueOffset(), getValueLength());
+    }
+
+    /**
+     * @return the scanner's input positioned at the current value,
+     *   e.g. to deserialize it into a reused object.  Subsequent calls
+     *   to the scanner may move the input.
+     * @throws IOException if the key can't be skipped
+     */
+    public MemoryDataInput seekValue() throws IOException {
+        in.seek(keyEnd());
+        return in;
+    }
+
+    // as above, positioned at the current key
+    public MemoryDataInput seekKey() {
+        in.seek(getKeyOffset());
+        return in;
+    }
+
+    private long keyEnd() throws IOException {
+        checkPositioned();
+        if (keyEnd < 0) {
+            in.seek(entryOffset);
+            config.skipKey(in);
+            keyEnd = in.position();
+        }
+        return keyEnd;
+    }
+
+    private long valueEnd() throws IOException {
+        if (valueEnd < 0) {
+            final long start = keyEnd();
+            if (config.getValueSerializer() != null) {
+                in.seek(start);
+                config.getValueSerializer().skip(in, 1);
+                valueEnd = in.position();
+            } else {
+                valueEnd = start;
+            }
+        }
+        return valueEnd;
+    }
+
+    /**
+     * Builds a result from the current entry of a scanner, generally
+     * decoding only the parts it needs.
+     *
+     * @param <K> key type
+     * @param <V> value type
+     * @param <T> result type
+     */
+    public interface Extractor<K, V, T> {
+        T extract(TableScanner<K, V> scanner) throws IOException;
+    }
+
+    private void checkPositioned() {
+        if (entryOffset < 0) {
+            throw new IllegalStateException("scanner is not positioned at an entry");
+        }
+    }
+}
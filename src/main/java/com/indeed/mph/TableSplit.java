@@ -0,0 +1,185 @@
+package com.indeed.mph;
+
+import com.indeed.util.mmap.Memory;
+import it.unimi.dsi.sux4j.bits.Select;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A serializable descriptor of a contiguous range of hashes of a
+ * table, from {@link TableReader#getSplits(int)}, so that independent
+ * workers (threads, processes or machines) reading the same table can
+ * each scan a disjoint part of it with
+ * {@link TableReader#newScanner(TableSplit)} or
+ * {@link TableReader#iterator(TableSplit)}.
+ * <p>
+ * For the offset storage modes where data is written in hash order
+ * (see {@link TableConfig#isHashOrdered()}) the splits are balanced by
+ * bytes of data, and each covers the contiguous byte range
+ * [startOffset, endOffset) of the data file, so a worker only touches
+ * its own part of the file.  Otherwise the splits are balanced by
+ * number of entries and the byte range is unknown (-1).
+ * <p>
+ * Splits record the size and timestamp of the table they were made
+ * from, and are rejected by readers of any other version.
+ */
+public class TableSplit implements Serializable {
+    private static final long serialVersionUID = -2739158427319076411L;
+
+    private final int index;
+    private final int numSplits;
+    private final long start;
+    private final long end;
+    private final long startOffset;
+    private final long endOffset;
+    private final long tableSize;
+    private final long tableTimestamp;
+
+    public TableSplit(final int index,
+                      final int numSplits,
+                      final long start,
+                      final long end,
+                      final long startOffset,
+                      final long endOffset,
+                      final long tableSize,
+                      final long tableTimestamp) {
+        this.index = index;
+        this.numSplits = numSplits;
+        this.start = start;
+        this.end = end;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.tableSize = tableSize;
+        this.tableTimestamp = tableTimestamp;
+    }
+
+    /**
+     * Divides the hashes of a table into numSplits contiguous ranges,
+     * some of which may be empty if the table is small.
+     *
+     * @param meta       the table meta-data
+     * @param offsets    the offsets memory, if any
+     * @param select     the offsets select, if any
+     * @param dataLength the size of the table data
+     * @param numSplits  the number of splits to make
+     * @return the splits, in hash order
+     */
+    static List<TableSplit> split(@Nonnull final TableMeta<?, ?> meta,
+                                  @Nullable final Memory offsets,
+                                  @Nullable final Select select,
+                                  final long dataLength,
+                                  final int numSplits) {
+        if (numSplits <= 0) {
+            throw new IllegalArgumentException("numSplits must be positive: " + numSplits);
+        }
+        final long n = meta.numEntries();
+        final boolean byBytes = meta.getConfig().isHashOrdered();
+        final List<TableSplit> result = new ArrayList<>(numSplits);
+        long start = 0;
+        long startOffset = byBytes ? hashOffset(meta, offsets, select, 0, dataLength) : -1;
+        for (int i = 0; i < numSplits; ++i) {
+            long end;
+            if (i + 1 == numSplits) {
+                end = n;
+            } else if (byBytes) {
+                end = firstHashAtOrAfter(meta, offsets, select, dataLength,
+                                         startOffset(meta, offsets, select, dataLength, i + 1, numSplits), start);
+            } else {
+                end = n * (i + 1) / numSplits;
+            }
+            final long endOffset = byBytes ? hashOffset(meta, offsets, select, end, dataLength) : -1;
+            result.add(new TableSplit(i, numSplits, start, end, startOffset, endOffset, n, meta.getTimestamp()));
+            start = end;
+            startOffset = endOffset;
+        }
+        return result;
+    }
+
+    // the ideal first byte of the i-th of numSplits
+    private static long startOffset(final TableMeta<?, ?> meta, final Memory offsets, final Select select,
+                                    final long dataLength, final int i, final int numSplits) {
+        final long first = hashOffset(meta, offsets, select, 0, dataLength);
+        return first + (long) ((double) (dataLength - first) * i / numSplits);
+    }
+
+    // the smallest hash at or after lo whose entry starts at or after target
+    private static long firstHashAtOrAfter(final TableMeta<?, ?> meta, final Memory offsets, final Select select,
+                                           final long dataLength, final long target, long lo) {
+        long hi = meta.numEntries();
+        while (lo < hi) {
+            final long mid = (lo + hi) >>> 1;
+            if (hashOffset(meta, offsets, select, mid, dataLength) < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static long hashOffset(final TableMeta<?, ?> meta, final Memory offsets, final Select select,
+                                   final long hash, final long dataLength) {
+        return hash < meta.numEntries() ? meta.getHashOffset(hash, offsets, select) : dataLength;
+    }
+
+    // the position of this split among all splits of the table
+    public int getIndex() {
+        return index;
+    }
+
+    public int getNumSplits() {
+        return numSplits;
+    }
+
+    // the first hash of the split, inclusive
+    public long getStart() {
+        return start;
+    }
+
+    // the last hash of the split, exclusive
+    public long getEnd() {
+        return end;
+    }
+
+    public long size() {
+        return end - start;
+    }
+
+    // the data offset of the first entry, or -1 if the data isn't in hash order
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    // the data offset after the last entry, or -1 if the data isn't in hash order
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    // the number of bytes of data covered by this split, or -1 if unknown
+    public long getLength() {
+        return startOffset < 0 ? -1 : endOffset - startOffset;
+    }
+
+    public long getTableSize() {
+        return tableSize;
+    }
+
+    public long getTableTimestamp() {
+        return tableTimestamp;
+    }
+
+    // whether this split was made from the given version of a table
+    public boolean isFor(@Nonnull final TableMeta<?, ?> meta) {
+        return tableSize == meta.numEntries() && tableTimestamp == meta.getTimestamp();
+    }
+
+    @Override
+    public String toString() {
+        return "[TableSplit " + index + "/" + numSplits + " hashes: [" + start + ", " + end + ") bytes: [" +
+            startOffset + ", " + endOffset + ")]";
+    }
+}
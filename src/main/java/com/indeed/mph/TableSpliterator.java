@@ -0,0 +1,130 @@
+package com.indeed.mph;
+
+import com.indeed.util.mmap.Memory;
+import it.unimi.dsi.sux4j.bits.Select;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over the entries of a table in hash order, which
+ * splits by halving the remaining hash range, allowing full scans to
+ * be run in parallel with {@link TableReader#parallelStream()} or
+ * {@link MphMap#parallelStream()}.  For the offset storage modes
+ * where data is written in hash order (all but INDEXED and INLINED),
+ * each split corresponds to a contiguous range of the data.
+ * Each split is traversed with a {@link TableScanner}, so those
+ * modes are also decoded sequentially.
+ * <p>
+ * Like the iterators, this is only valid as long as the underlying
+ * reader is open.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ * @param <T> the type of the results extracted from each entry
+ */
+public class TableSpliterator<K, V, T> implements Spliterator<T> {
+    // don't bother splitting ranges smaller than this
+    private static final long MIN_SPLIT_SIZE = 1024;
+
+    private final TableMeta<K, V> meta;
+    private final Memory dataMemory;
+    private final Memory offsets;
+    private final Select select;
+    private final TableScanner.Extractor<K, V, ? extends T> extractor;
+    private final long end;
+    private long hash;
+    private TableScanner<K, V> scanner;
+
+    /**
+     * @param meta         the table meta-data
+     * @param dataMemory   the table data
+     * @param offsets      the offsets memory, if any
+     * @param select       the offsets select, if any
+     * @param extractor    function to build a result from each entry, e.g. a Pair or just the key
+     * @param start        the first hash to visit, inclusive
+     * @param end          the last hash to visit, exclusive
+     */
+    TableSpliterator(@Nonnull final TableMeta<K, V> meta,
+                     @Nonnull final Memory dataMemory,
+                     @Nullable final Memory offsets,
+                     @Nullable final Select select,
+                     @Nonnull final TableScanner.Extractor<K, V, ? extends T> extractor,
+                     final long start,
+                     final long end) {
+        this.meta = meta;
+        this.dataMemory = dataMemory;
+        this.offsets = offsets;
+        this.select = select;
+        this.extractor = extractor;
+        this.hash = Math.max(start, 0);
+        this.end = Math.min(end, meta.numEntries());
+    }
+
+    // the next hash to be visited
+    public long getStart() {
+        return hash;
+    }
+
+    // the hash after the last to be visited
+    public long getEnd() {
+        return end;
+    }
+
+    @Override
+    public boolean tryAdvance(@Nonnull final Consumer<? super T> action) {
+        if (hash >= end) {
+            return false;
+        }
+        action.accept(read());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(@Nonnull final Consumer<? super T> action) {
+        while (hash < end) {
+            action.accept(read());
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        final long remaining = end - hash;
+        if (remaining < 2 * MIN_SPLIT_SIZE) {
+            return null;
+        }
+        final long mid = hash + (remaining >>> 1);
+        final Spliterator<T> prefix =
+            new TableSpliterator<>(meta, dataMemory, offsets, select, extractor, hash, mid);
+        hash = mid;
+        scanner = null;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - hash;
+    }
+
+    @Override
+    public int characteristics() {
+        // not NONNULL, since implicit keys and missing values are extracted as null
+        return ORDERED | SIZED | SUBSIZED | IMMUTABLE;
+    }
+
+    private T read() {
+        if (scanner == null) {
+            scanner = new TableScanner<>(meta, dataMemory, offsets, select, hash, end);
+        }
+        try {
+            scanner.advance();
+            ++hash;
+            return extractor.extract(scanner);
+        } catch (final IOException e) {
+            throw new RuntimeException("error reading from TableSpliterator: " + hash, e);
+        }
+    }
+}
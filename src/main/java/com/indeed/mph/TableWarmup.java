@@ -0,0 +1,296 @@
+package com.indeed.mph;
+
+import com.indeed.util.mmap.Memory;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Settings to pre-fault the mmapped files of a table (data, offsets,
+ * select index, and the hash function, fingerprints and key filter if
+ * mmapped) when it's opened, so that the first lookups after a deploy
+ * don't each wait on a page fault.  Pages are touched by reading a
+ * byte from each, in parallel chunks, optionally limited to a number
+ * of bytes per second so as not to starve the I/O of a serving
+ * process.
+ * <p>
+ * Example:
+ * <p>
+ * <code>
+ *   final TableReader&lt;KeyClass, ValueClass&gt; reader = TableReader.open(
+ *       path, new TableWarmup().withThreads(4).withBytesPerSecond(200L &lt;&lt; 20).withAsync(true));
+ *   ...
+ *   reader.getWarmup().get();  // e.g. in a readiness check
+ * </code>
+ * <p>
+ * Like {@link TableConfig}, settings are immutable and each withX
+ * method returns a modified copy.
+ */
+public class TableWarmup {
+    private static final Logger LOGGER = Logger.getLogger(TableWarmup.class);
+    public static final long PAGE_SIZE = 4096;
+    public static final long DEFAULT_CHUNK_SIZE = 4L << 20;
+
+    private final int threads;
+    private final long bytesPerSecond;
+    private final long chunkSize;
+    private final boolean async;
+    private final ProgressListener listener;
+
+    public TableWarmup() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 0, DEFAULT_CHUNK_SIZE, false, null);
+    }
+
+    private TableWarmup(final int threads,
+                        final long bytesPerSecond,
+                        final long chunkSize,
+                        final boolean async,
+                        final ProgressListener listener) {
+        this.threads = threads;
+        this.bytesPerSecond = bytesPerSecond;
+        this.chunkSize = chunkSize;
+        this.async = async;
+        this.listener = listener;
+    }
+
+    /**
+     * Notified as chunks are warmed, from the warming threads.
+     */
+    public interface ProgressListener {
+        void progress(long bytesWarmed, long bytesTotal);
+    }
+
+    public TableWarmup withThreads(final int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        return new TableWarmup(threads, bytesPerSecond, chunkSize, async, listener);
+    }
+
+    // the maximum rate to touch pages at, across all threads, or 0 for no limit
+    public TableWarmup withBytesPerSecond(final long bytesPerSecond) {
+        return new TableWarmup(threads, Math.max(0, bytesPerSecond), chunkSize, async, listener);
+    }
+
+    // the unit of work of each thread, rounded up to a whole number of pages
+    public TableWarmup withChunkSize(final long chunkSize) {
+        final long pages = Math.max(1, (chunkSize + PAGE_SIZE - 1) / PAGE_SIZE);
+        return new TableWarmup(threads, bytesPerSecond, pages * PAGE_SIZE, async, listener);
+    }
+
+    // if true open returns immediately, and the warmup completes in the background
+    public TableWarmup withAsync(final boolean async) {
+        return new TableWarmup(threads, bytesPerSecond, chunkSize, async, listener);
+    }
+
+    public TableWarmup withProgressListener(@Nullable final ProgressListener listener) {
+        return new TableWarmup(threads, bytesPerSecond, chunkSize, async, listener);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    // warms each newly opened version of a ReloadingTableReader before it's swapped in
+    public <K, V> ReloadingTableReader.Warmer<K, V> asWarmer() {
+        final TableWarmup sync = withAsync(false);
+        return reader -> {
+            try {
+                reader.warm(sync).join();
+            } catch (final CompletionException e) {
+                throw new IOException("couldn't warm " + reader.getName(), e.getCause());
+            }
+        };
+    }
+
+    /**
+     * Starts warming the given regions in the background, see
+     * {@link Task#await()} to wait for completion.
+     *
+     * @param regions the memory to touch
+     * @param name    the table name, for logging
+     * @return the running warmup
+     */
+    Task start(@Nonnull final List<Memory> regions, @Nonnull final String name) {
+        final Task task = new Task(regions, name);
+        task.start();
+        return task;
+    }
+
+    /**
+     * A warmup in progress.  Its future completes normally once every
+     * page has been touched, or exceptionally if cancelled or a
+     * thread fails.
+     */
+    class Task {
+        private final List<Memory> regions;
+        private final String name;
+        private final long[] regionStarts;
+        private final long totalBytes;
+        private final long numChunks;
+        private final AtomicLong nextChunk = new AtomicLong();
+        private final AtomicLong bytesWarmed = new AtomicLong();
+        private final AtomicLong nextSlotNanos = new AtomicLong(System.nanoTime());
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final CountDownLatch finished;
+        private final AtomicInteger running;
+        private final List<Thread> workers = new ArrayList<>();
+        private final long startMillis = System.currentTimeMillis();
+        private volatile boolean cancelled;
+        // the bytes read, published so the reads can't be optimized away
+        private volatile long sink;
+
+        Task(final List<Memory> regions, final String name) {
+            this.regions = regions;
+            this.name = name;
+            this.regionStarts = new long[regions.size() + 1];
+            long total = 0;
+            for (int i = 0; i < regions.size(); ++i) {
+                regionStarts[i] = total;
+                total += regions.get(i).length();
+            }
+            regionStarts[regions.size()] = total;
+            this.totalBytes = total;
+            this.numChunks = (total + chunkSize - 1) / chunkSize;
+            this.finished = new CountDownLatch(numChunks == 0 ? 0 : (int) Math.min(threads, numChunks));
+            this.running = new AtomicInteger((int) finished.getCount());
+        }
+
+        private void start() {
+            if (numChunks == 0) {
+                future.complete(null);
+                return;
+            }
+            for (int i = 0; i < finished.getCount(); ++i) {
+                final Thread worker = new Thread(this::run, "mph-warmup-" + i + "-" + name);
+                worker.setDaemon(true);
+                workers.add(worker);
+            }
+            for (final Thread worker : workers) {
+                worker.start();
+            }
+        }
+
+        private void run() {
+            long sink = 0;
+            try {
+                for (long chunk = nextChunk.getAndIncrement(); chunk < numChunks && !cancelled;
+                     chunk = nextChunk.getAndIncrement()) {
+                    final long start = chunk * chunkSize;
+                    final long end = Math.min(start + chunkSize, totalBytes);
+                    throttle(end - start);
+                    if (cancelled) {
+                        break;
+                    }
+                    sink += touch(start, end);
+                    final long warmed = bytesWarmed.addAndGet(end - start);
+                    if (listener != null) {
+                        listener.progress(warmed, totalBytes);
+                    }
+                }
+            } catch (final RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            } finally {
+                this.sink += sink;
+                // complete before counting down, so the future is done once await returns
+                if (running.decrementAndGet() == 0) {
+                    complete();
+                }
+                finished.countDown();
+            }
+        }
+
+        // waits until this thread's share of the byte budget allows bytes more
+        private void throttle(final long bytes) {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            final long slot = nextSlotNanos.getAndAdd(bytes * 1000000000L / bytesPerSecond);
+            for (long wait = slot - System.nanoTime(); wait > 0 && !cancelled; wait = slot - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+
+        // reads a byte from each page in [start, end) of the concatenated regions
+        private long touch(final long start, final long end) {
+            long sink = 0;
+            for (int i = 0; i < regions.size(); ++i) {
+                final long from = Math.max(start, regionStarts[i]);
+                final long to = Math.min(end, regionStarts[i + 1]);
+                if (from >= to) {
+                    continue;
+                }
+                final Memory memory = regions.get(i);
+                for (long pos = from - regionStarts[i]; pos < to - regionStarts[i]; pos += PAGE_SIZE) {
+                    sink += memory.getByte(pos);
+                }
+            }
+            return sink;
+        }
+
+        private void complete() {
+            if (cancelled) {
+                future.completeExceptionally(new IllegalStateException("warmup of " + name + " was cancelled"));
+            } else if (future.complete(null)) {
+                LOGGER.info("warmed " + totalBytes + " bytes of " + name + " with " + workers.size() +
+                            " threads in " + (System.currentTimeMillis() - startMillis) + " ms");
+            }
+        }
+
+        CompletableFuture<Void> getFuture() {
+            return future;
+        }
+
+        long getBytesWarmed() {
+            return bytesWarmed.get();
+        }
+
+        long getBytesTotal() {
+            return totalBytes;
+        }
+
+        // waits for completion, without failing if cancelled
+        void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    finished.await();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // stops warming and waits for the threads to stop touching the memory, so it can be unmapped
+        void cancel() {
+            cancelled = true;
+            await();
+        }
+    }
+}
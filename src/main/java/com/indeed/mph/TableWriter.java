@@ -75,6 +75,9 @@ import java.util.Map;
  *   --rangeChecking: set to AUTOMATIC to enable tracking of min/max keys
  *   --maxHeapUsage: the limit beyond which offsets are mmapped instead of being stored in the heap
  *   --signatureWidth: bits per key to use in a bloom filter (required for IMPLICIT keyStorage)
+ *   --hashStorage: set to MMAPPED to store the hash function in a separate mmapped file
+ *   --fingerprintWidth: 8 or 16 to store per-key fingerprints for rejecting missing keys
+ *   --keyFilter: store an xor filter of the keys for rejecting missing keys
  * <p>
  * Serializers in the com.indeed.mph.serializers package can be
  * abbreviated with a leading ".", e.g. ".SmartStringSerializer".
@@ -90,6 +93,9 @@ import java.util.Map;
  */
 public class TableWriter {
     private static final Logger LOGGER = Logger.getLogger(TableWriter.class);
+    // candidate block sizes for BLOCK_DELTA offsets, from 16 to 4096 entries
+    private static final int MIN_DELTA_BLOCK_SHIFT = 4;
+    private static final int MAX_DELTA_BLOCK_SHIFT = 12;
     public static final int MAX_TEMP_SHARDS = 512;
 
     private TableWriter() {}
@@ -139,6 +145,7 @@ public class TableWriter {
         if (!config.isValid()) {
             throw new IOException("invalid table config: " + config);
         }
+        final long startMillis = System.currentTimeMillis();
         ensureOutputDirectory(outputDir);
         final TransformationStrategy transformationStrategy =
             new SerializerTransformationStrategy(config.getKeySerializer());
@@ -146,6 +153,7 @@ public class TableWriter {
         final List<K> minMaxKeys = new ArrayList<>();
         minMaxKeys.add(null);
         minMaxKeys.add(null);
+        final Object mphEvent = TableEvents.beginPhase();
         try {
             final boolean trackMinMaxKeys;
             switch (config.getRangeChecking()) {
@@ -177,8 +185,11 @@ public class TableWriter {
             }
             throw e;
         }
+        TableEvents.commitPhase(mphEvent, "buildMph", mph.size64(), mph.numBits() / 8);
         LOGGER.info("dataSize: " + dataSize + " numEntries: " + mph.size());
-        writeWithMinimalPerfectHashFunction(null, outputDir, config, entries, mph, minMaxKeys, dataSize);
+        final TableMeta<K, V> meta =
+            writeWithMinimalPerfectHashFunction(null, outputDir, config, entries, mph, minMaxKeys, dataSize);
+        TableMetricsRegistry.written(outputDir, meta, System.currentTimeMillis() - startMillis);
     }
 
     /**
@@ -255,7 +266,7 @@ public class TableWriter {
         }
     }
 
-    private static <K, V> void writeWithMinimalPerfectHashFunction(
+    private static <K, V> TableMeta<K, V> writeWithMinimalPerfectHashFunction(
             final File inputData,
             final File outputDir,
             final TableConfig origConfig,
@@ -289,14 +300,45 @@ public class TableWriter {
                 (config.getMaxHeapUsage() > 0 && select.numBits() / 8L > config.getMaxHeapUsage())) {
                 meta = new TableMeta(config, mph, null, minKey, maxKey, dataSize);
                 writeLongs(new File(outputDir, meta.DEFAULT_OFFSETS_PATH), select.bitVector().bits());
+                MMapSelect.writeTo(select.bitVector().bits(), select.bitVector().length(),
+                                   new File(outputDir, meta.DEFAULT_SELECT_PATH));
             } else {
                 meta = new TableMeta(config, mph, select, minKey, maxKey, dataSize);
             }
             break;
+        case ELIAS_FANO:
+            LOGGER.info("writing with elias-fano offset storage: " + config);
+            meta = new TableMeta(config, mph, null, minKey, maxKey, dataSize);
+            final File efSizes = writeToHashOffsets(outputDir, meta, entries, dataSize);
+            sizesToEliasFano(config, efSizes, dataSize, new File(outputDir, meta.DEFAULT_OFFSETS_PATH));
+            efSizes.delete();
+            break;
+        case BLOCK_DELTA:
+            LOGGER.info("writing with block delta offset storage: " + config);
+            meta = new TableMeta(config, mph, null, minKey, maxKey, dataSize);
+            final File blockSizes = writeToHashOffsets(outputDir, meta, entries, dataSize);
+            sizesToBlockDeltas(blockSizes, new File(outputDir, meta.DEFAULT_OFFSETS_PATH));
+            blockSizes.delete();
+            break;
+        case INLINED:
+            LOGGER.info("writing with inlined offset storage: " + config);
+            meta = new TableMeta(config, mph, null, minKey, maxKey, dataSize);
+            writeToInlinedOffsets(new File(outputDir, meta.DEFAULT_DATA_PATH), meta, entries, dataSize);
+            break;
         default:
             throw new IllegalArgumentException("unknown offset storage: " + config.getOffsetStorage());
         }
+        if (config.getFingerprintWidth() > 0) {
+            writeFingerprints(new File(outputDir, meta.DEFAULT_FINGERPRINTS_PATH), meta, entries);
+        }
+        if (config.getKeyFilter()) {
+            writeKeyFilter(new File(outputDir, meta.DEFAULT_FILTER_PATH), meta, entries);
+        }
+        if (TableConfig.HashStorage.MMAPPED.equals(config.getHashStorage())) {
+            MMapGOVMinimalPerfectHashFunction.writeTo(mph, new File(outputDir, meta.DEFAULT_HASH_PATH));
+        }
         meta.store(new File(outputDir, meta.DEFAULT_META_PATH));
+        return meta;
     }
 
     private static <K, V> byte[] maybeSerializeKey(final TableConfig<K, V> config, final K key) {
@@ -342,6 +384,7 @@ public class TableWriter {
         final List<DataOutput> outs = new ArrayList<>(numShards);
         final List<Integer> counts = new ArrayList<>(numShards);
         final long startMillis = System.currentTimeMillis();
+        final Object event = TableEvents.beginPhase();
         try {
             for (int i = 0; i < numShards; ++i) {
                 final File shard = File.createTempFile("tmpshard_" + i, ".bin", outputDir);
@@ -376,6 +419,7 @@ public class TableWriter {
                 }
             }
         }
+        TableEvents.commitPhase(event, "splitToShards", meta.numEntries(), dataSize);
         LOGGER.info("split " + numShards + " shards in " + (System.currentTimeMillis() - startMillis) + " ms");
         return shards;
     }
@@ -387,6 +431,7 @@ public class TableWriter {
             final MMapBuffer sizes,
             final MMapBuffer hashes) throws IOException {
         final long startMillis = System.currentTimeMillis();
+        final Object event = TableEvents.beginPhase();
         try (final DataOutputStream out = new DataOutputStream(new BufferedFileDataOutputStream(outputPath))) {
             final int numShards = shards.size();
             final long shardSize = Math.max(1L, (meta.numEntries() + numShards - 1) / numShards);
@@ -402,6 +447,7 @@ public class TableWriter {
             out.flush();
         }
         outputPath.setReadOnly();
+        TableEvents.commitPhase(event, "rewriteShardsInOrder", meta.numEntries(), outputPath.length());
         LOGGER.info("rewrote shards in " + (System.currentTimeMillis() - startMillis) + " ms");
     }
 
@@ -454,6 +500,7 @@ public class TableWriter {
         final BufferedFileDataOutputStream fileOut = new BufferedFileDataOutputStream(outputData);
         final CountingOutputStream countOut = new CountingOutputStream(fileOut);
         final long startMillis = System.currentTimeMillis();
+        final Object event = TableEvents.beginPhase();
         try (final MMapBuffer offsets = new MMapBuffer(outputOffsets, 0L, totalOffsetSize, FileChannel.MapMode.READ_WRITE, ByteOrder.nativeOrder());
              final LittleEndianDataOutputStream out = new LittleEndianDataOutputStream(countOut)) {
             for (final Pair<K, V> e : entries) {
@@ -476,14 +523,133 @@ public class TableWriter {
         }
         outputData.setReadOnly();
         outputOffsets.setReadOnly();
+        TableEvents.commitPhase(event, "writeToIndexedOffsets", numEntries, dataSize + totalOffsetSize);
         LOGGER.info("wrote " + numEntries + " offsets for " + dataSize + " bytes of data in " +
                     (System.currentTimeMillis() - startMillis) + " ms");
     }
 
+    private static <K, V> void writeFingerprints(
+            final File outputFingerprints,
+            final TableMeta<K, V> meta,
+            final Iterable<Pair<K, V>> entries) throws IOException {
+        final int bytesPerFingerprint = meta.getConfig().getFingerprintWidth() / 8;
+        final long totalSize = meta.numEntries() * bytesPerFingerprint;
+        final long[] triple = new long[3];
+        final Object event = TableEvents.beginPhase();
+        try (final MMapBuffer fingerprints = new MMapBuffer(outputFingerprints, 0L, totalSize, FileChannel.MapMode.READ_WRITE, ByteOrder.LITTLE_ENDIAN)) {
+            final DirectMemory memory = fingerprints.memory();
+            for (final Pair<K, V> e : entries) {
+                final long hash = meta.getHash(e.getFirst(), triple);
+                if (hash < 0) {
+                    throw new IOException("inconsistent mph, known key hashed to -1: " + e.getFirst());
+                }
+                final int fingerprint = meta.getFingerprint(triple);
+                if (bytesPerFingerprint == 1) {
+                    memory.putByte(hash, (byte) fingerprint);
+                } else {
+                    memory.putShort(hash * 2, (short) fingerprint);
+                }
+            }
+            fingerprints.sync(0L, totalSize);
+        }
+        outputFingerprints.setReadOnly();
+        TableEvents.commitPhase(event, "writeFingerprints", meta.numEntries(), totalSize);
+    }
+
+    private static <K, V> void writeKeyFilter(
+            final File outputFilter,
+            final TableMeta<K, V> meta,
+            final Iterable<Pair<K, V>> entries) throws IOException {
+        final long startMillis = System.currentTimeMillis();
+        final Object event = TableEvents.beginPhase();
+        if (meta.numEntries() > Integer.MAX_VALUE) {
+            throw new IOException("too many keys for a key filter: " + meta.numEntries());
+        }
+        final long[] keyHashes = new long[(int) meta.numEntries()];
+        final long[] triple = new long[3];
+        int i = 0;
+        for (final Pair<K, V> e : entries) {
+            meta.getHash(e.getFirst(), triple);
+            keyHashes[i++] = TableMeta.getFilterHash(triple);
+        }
+        XorFilter.writeTo(keyHashes, outputFilter);
+        TableEvents.commitPhase(event, "writeKeyFilter", meta.numEntries(), outputFilter.length());
+        LOGGER.info("wrote key filter of " + outputFilter.length() + " bytes in " +
+                    (System.currentTimeMillis() - startMillis) + " ms");
+    }
+
+    // Writes a slot per hash at the start of the data, as read by
+    // TableMeta, followed by the entries too large to inline.
+    private static <K, V> void writeToInlinedOffsets(
+            final File outputData,
+            final TableMeta<K, V> meta,
+            final Iterable<Pair<K, V>> entries,
+            final long dataSize) throws IOException {
+        final TableConfig<K, V> config = meta.getConfig();
+        final long numEntries = meta.numEntries();
+        final int slotSize = config.bytesPerOffset(numEntries, dataSize);
+        final long startMillis = System.currentTimeMillis();
+        final Object event = TableEvents.beginPhase();
+        long overflowSize = 0;
+        for (final Pair<K, V> e : entries) {
+            final long size = config.sizeOf(e.getFirst(), e.getSecond());
+            if (size >= slotSize) {
+                overflowSize += size;
+            }
+        }
+        final long totalSize = numEntries * slotSize + overflowSize;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final LittleEndianDataOutputStream out = new LittleEndianDataOutputStream(bytes);
+        long numInlined = 0;
+        try (final MMapBuffer data = new MMapBuffer(outputData, 0L, totalSize, FileChannel.MapMode.READ_WRITE, ByteOrder.nativeOrder())) {
+            final DirectMemory memory = data.memory();
+            long offset = numEntries * slotSize;
+            for (final Pair<K, V> e : entries) {
+                final long hash = meta.getHash(e.getFirst());
+                if (hash < 0) {
+                    throw new IOException("inconsistent mph, known key hashed to -1: " + e.getFirst());
+                }
+                bytes.reset();
+                config.write(e.getFirst(), e.getSecond(), out);
+                out.flush();
+                final byte[] entry = bytes.toByteArray();
+                // the file was sized by sizeOf, so inline by the same measure
+                final long size = config.sizeOf(e.getFirst(), e.getSecond());
+                if (entry.length != size) {
+                    throw new IOException("serializer sizeOf " + size + " doesn't match the " + entry.length +
+                                          " bytes written for key: " + e.getFirst());
+                }
+                final long slot = hash * slotSize;
+                if (size < slotSize) {
+                    memory.putByte(slot, (byte) 1);
+                    memory.putBytes(slot + 1, entry);
+                    ++numInlined;
+                } else {
+                    memory.putBytes(offset, entry);
+                    // little-endian, so the clear tag bit is in the first byte
+                    if (slotSize == 4) {
+                        final int value = (int) (offset << 1);
+                        memory.putInt(slot, TableMeta.NATIVE_BIG_ENDIAN ? Integer.reverseBytes(value) : value);
+                    } else {
+                        final long value = offset << 1;
+                        memory.putLong(slot, TableMeta.NATIVE_BIG_ENDIAN ? Long.reverseBytes(value) : value);
+                    }
+                    offset += entry.length;
+                }
+            }
+            data.sync(0L, totalSize);
+        }
+        outputData.setReadOnly();
+        TableEvents.commitPhase(event, "writeToInlinedOffsets", numEntries, totalSize);
+        LOGGER.info("wrote " + numEntries + " " + slotSize + "-byte slots with " + numInlined + " inlined entries in " +
+                    (System.currentTimeMillis() - startMillis) + " ms");
+    }
+
     private static <K, V> Select sizesToSelect(final TableConfig<K, V> config,
                                                final File tempSizes,
                                                final long dataSize) throws IOException {
         final long numEntries = tempSizes.length() / 4;
+        final Object event = TableEvents.beginPhase();
         try (final MMapBuffer sizes = new MMapBuffer(tempSizes, 0L, numEntries * 4, FileChannel.MapMode.READ_ONLY, ByteOrder.nativeOrder())) {
             final DirectMemory sizesMemory = sizes.memory();
             final long maxValue = config.compressOffset(dataSize, numEntries);
@@ -492,8 +658,107 @@ public class TableWriter {
                 final long value = config.compressOffset(offset, i);
                 bits.set(value);
             }
-            return new HintedBsearchSelect(new Rank9(bits));
+            final Select result = new HintedBsearchSelect(new Rank9(bits));
+            TableEvents.commitPhase(event, "sizesToSelect", numEntries, (bits.length() + result.numBits()) / 8);
+            return result;
+        }
+    }
+
+    private static <K, V> void sizesToEliasFano(final TableConfig<K, V> config,
+                                                final File tempSizes,
+                                                final long dataSize,
+                                                final File outputOffsets) throws IOException {
+        final long numEntries = tempSizes.length() / 4;
+        final long startMillis = System.currentTimeMillis();
+        final Object event = TableEvents.beginPhase();
+        try (final MMapBuffer sizes = new MMapBuffer(tempSizes, 0L, numEntries * 4, FileChannel.MapMode.READ_ONLY, ByteOrder.nativeOrder())) {
+            final DirectMemory sizesMemory = sizes.memory();
+            final LinearDiophantineEquation entrySize = config.getEntrySize();
+            // values are requested in order, so just accumulate the offset
+            final long[] next = new long[2];  // index, offset
+            EliasFanoSelect.writeTo(i -> {
+                    if (i < next[0]) {
+                        next[0] = 0;
+                        next[1] = 0;
+                    }
+                    for (; next[0] < i; ++next[0]) {
+                        next[1] += sizesMemory.getInt(next[0] * 4);
+                    }
+                    return entrySize.solveForNth(next[1], i);
+                }, numEntries, config.eliasFanoUniverse(numEntries, dataSize), outputOffsets);
+        }
+        TableEvents.commitPhase(event, "sizesToEliasFano", numEntries, outputOffsets.length());
+        LOGGER.info("wrote " + numEntries + " elias-fano offsets for " + dataSize + " bytes of data in " +
+                    (System.currentTimeMillis() - startMillis) + " ms");
+    }
+
+    // Writes offsets as in TableMeta#getBlockDeltaOffset, with the
+    // block size chosen to minimize the total size.
+    private static void sizesToBlockDeltas(final File tempSizes, final File outputOffsets) throws IOException {
+        final long numEntries = tempSizes.length() / 4;
+        final long startMillis = System.currentTimeMillis();
+        final Object event = TableEvents.beginPhase();
+        try (final MMapBuffer sizes = new MMapBuffer(tempSizes, 0L, numEntries * 4, FileChannel.MapMode.READ_ONLY, ByteOrder.nativeOrder())) {
+            final DirectMemory sizesMemory = sizes.memory();
+            final long[] maxDeltas = new long[MAX_DELTA_BLOCK_SHIFT + 1];
+            final long[] bases = new long[MAX_DELTA_BLOCK_SHIFT + 1];
+            for (long i = 0, offset = 0; i < numEntries; offset += sizesMemory.getInt(i * 4), ++i) {
+                for (int shift = MIN_DELTA_BLOCK_SHIFT; shift <= MAX_DELTA_BLOCK_SHIFT; ++shift) {
+                    if ((i & ((1L << shift) - 1)) == 0) {
+                        bases[shift] = offset;
+                    }
+                    maxDeltas[shift] = Math.max(maxDeltas[shift], offset - bases[shift]);
+                }
+            }
+            int blockShift = MIN_DELTA_BLOCK_SHIFT;
+            long bestSize = Long.MAX_VALUE;
+            for (int shift = MIN_DELTA_BLOCK_SHIFT; shift <= MAX_DELTA_BLOCK_SHIFT; ++shift) {
+                final int bits = 64 - Long.numberOfLeadingZeros(maxDeltas[shift]);
+                final long size = TableMeta.blockDeltaBasesStart(numEntries, bits) + 8L * ((numEntries + (1L << shift) - 1) >>> shift);
+                if (size < bestSize) {
+                    bestSize = size;
+                    blockShift = shift;
+                }
+            }
+            final int deltaBits = 64 - Long.numberOfLeadingZeros(maxDeltas[blockShift]);
+            if (deltaBits > 56) {
+                throw new IOException("block deltas too large to pack: " + maxDeltas[blockShift]);
+            }
+            try (final LittleEndianDataOutputStream out =
+                 new LittleEndianDataOutputStream(new BufferedFileDataOutputStream(outputOffsets))) {
+                out.writeLong(blockShift);
+                out.writeLong(deltaBits);
+                final long numBytes = (numEntries * deltaBits + 7) >>> 3;
+                final long[] blockBases = new long[(int) ((numEntries + (1L << blockShift) - 1) >>> blockShift)];
+                long pending = 0;
+                int pendingBits = 0;
+                long base = 0;
+                for (long i = 0, offset = 0; i < numEntries; offset += sizesMemory.getInt(i * 4), ++i) {
+                    if ((i & ((1L << blockShift) - 1)) == 0) {
+                        base = offset;
+                        blockBases[(int) (i >>> blockShift)] = base;
+                    }
+                    pending |= (offset - base) << pendingBits;
+                    pendingBits += deltaBits;
+                    for (; pendingBits >= 8; pendingBits -= 8, pending >>>= 8) {
+                        out.writeByte((int) pending);
+                    }
+                }
+                if (pendingBits > 0) {
+                    out.writeByte((int) pending);
+                }
+                out.write(new byte[8]);
+                for (final long blockBase : blockBases) {
+                    out.writeLong(blockBase);
+                }
+                out.flush();
+                LOGGER.info("wrote " + numEntries + " block delta offsets (" + numBytes + " bytes of " + deltaBits +
+                            "-bit deltas in blocks of " + (1L << blockShift) + ") in " +
+                            (System.currentTimeMillis() - startMillis) + " ms");
+            }
         }
+        outputOffsets.setReadOnly();
+        TableEvents.commitPhase(event, "sizesToBlockDeltas", numEntries, outputOffsets.length());
     }
 
     private static void writeLongs(final File outputFile, final long[] values) throws IOException {
@@ -557,13 +822,23 @@ public class TableWriter {
         return ByteBuffer.wrap(byteOutput.toByteArray());
     }
 
+    /**
+     * Presents keys to the hash function as the bits of their
+     * serialized form.  Keys are serialized into a reusable per-thread
+     * buffer and exposed as a word-level bit vector, so hashing
+     * neither allocates nor falls back to reading a bit at a time.
+     * The returned bit vector is only valid until the next call from
+     * the same thread, which is all the hash functions require.
+     */
     public static class SerializerTransformationStrategy<K> implements TransformationStrategy<K> {
         private static final long serialVersionUID = 8186081021441487460L;
 
         final SmartSerializer<K> serializer;
+        private final transient ThreadLocal<KeyBuffer> buffers;
 
         public SerializerTransformationStrategy(final SmartSerializer<K> serializer) {
             this.serializer = serializer;
+            this.buffers = ThreadLocal.withInitial(KeyBuffer::new);
         }
 
         @Override
@@ -571,9 +846,17 @@ public class TableWriter {
             return this;
         }
 
+        // From the serialized bytes rather than sizeOf, which needn't be
+        // exact.  The bytes are kept for the toBitVector(k) call which
+        // usually follows, so the key is only serialized once.
         @Override
         public long length(final K k) {
-            return toBytes(k).length * 8;
+            final long length = toBitVector(k).length();
+            final KeyBuffer buffer = buffers.get();
+            if (!buffer.busy) {
+                buffer.pending = k;
+            }
+            return length;
         }
 
         @Override
@@ -583,7 +866,50 @@ public class TableWriter {
 
         @Override
         public BitVector toBitVector(final K k) {
-            return new ByteArrayBitVector(toBytes(k));
+            final KeyBuffer buffer = buffers.get();
+            if (buffer.busy) {
+                // re-entrant call from within the serializer
+                return new ByteArrayBitVector(toBytes(k));
+            }
+            if (k != null && buffer.pending == k) {
+                buffer.pending = null;
+                return buffer.bits;
+            }
+            return serialize(buffer, k, false).bits;
+        }
+
+        /**
+         * Serializes a probe key once for both hashing and comparing
+         * against the stored keys, which are written little-endian and
+         * so differ in the byte order of any multi-byte values.  The
+         * result is per-thread, and only valid until the next key is
+         * serialized by the same thread.
+         *
+         * @param k the key to serialize
+         * @return the serialized key
+         */
+        KeyBuffer serializeForLookup(final K k) {
+            final KeyBuffer buffer = buffers.get();
+            // re-entrant calls from within the serializer get their own buffer
+            return serialize(buffer.busy ? new KeyBuffer() : buffer, k, true);
+        }
+
+        private KeyBuffer serialize(final KeyBuffer buffer, final K k, final boolean stored) {
+            buffer.pending = null;
+            buffer.key = stored ? k : null;
+            buffer.busy = true;
+            try {
+                buffer.bytes.reset();
+                buffer.storedBytes.reset();
+                buffer.out.storedToo = stored;
+                serializer.write(k, buffer.out);
+                buffer.bits.wrap(buffer.bytes.buffer(), buffer.bytes.size());
+                return buffer;
+            } catch (final IOException e) {
+                throw new RuntimeException("failed to serialize: " + k, e);
+            } finally {
+                buffer.busy = false;
+            }
         }
 
         private byte[] toBytes(final K k) {
@@ -598,27 +924,208 @@ public class TableWriter {
             return res;
         }
 
-        private static class ByteArrayBitVector extends AbstractBitVector {
-            final byte[] bytes;
+        // a new instance rather than assigning buffers in readObject, so it stays final
+        private Object readResolve() {
+            return new SerializerTransformationStrategy<>(serializer);
+        }
+
+        static class KeyBuffer {
+            final ExposedByteArrayOutputStream bytes = new ExposedByteArrayOutputStream();
+            final ExposedByteArrayOutputStream storedBytes = new ExposedByteArrayOutputStream();
+            final KeyOutput out = new KeyOutput(new DataOutputStream(bytes), new LittleEndianDataOutputStream(storedBytes));
+            final WordBitVector bits = new WordBitVector();
+            boolean busy;
+            // the key just serialized by length(), if any
+            Object pending;
+            // the key serialized by serializeForLookup, if the buffer still holds it
+            Object key;
 
-            ByteArrayBitVector(final byte[] bytes) {
-                this.bytes = bytes;
+            boolean holds(final Object k) {
+                return key != null && key == k;
             }
 
-            public boolean getBoolean(final int index) {
-                return ((bytes[index / 8] >>> (index % 8)) & 1) == 1;
+            BitVector getBits() {
+                return bits;
+            }
+
+            // the key as stored in the table, valid up to getStoredSize()
+            byte[] getStoredBytes() {
+                return storedBytes.buffer();
+            }
+
+            int getStoredSize() {
+                return storedBytes.size();
+            }
+        }
+
+        // Writes the key as hashed, and optionally also as stored in the
+        // table, so the serializer only runs once for both.
+        private static class KeyOutput implements DataOutput {
+            private final DataOutputStream hashed;
+            private final LittleEndianDataOutputStream stored;
+            boolean storedToo;
+
+            KeyOutput(final DataOutputStream hashed, final LittleEndianDataOutputStream stored) {
+                this.hashed = hashed;
+                this.stored = stored;
+            }
+
+            public void write(final int b) throws IOException {
+                hashed.write(b);
+                if (storedToo) {
+                    stored.write(b);
+                }
+            }
+
+            public void write(final byte[] b) throws IOException {
+                hashed.write(b);
+                if (storedToo) {
+                    stored.write(b);
+                }
+            }
+
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                hashed.write(b, off, len);
+                if (storedToo) {
+                    stored.write(b, off, len);
+                }
+            }
+
+            public void writeBoolean(final boolean v) throws IOException {
+                hashed.writeBoolean(v);
+                if (storedToo) {
+                    stored.writeBoolean(v);
+                }
+            }
+
+            public void writeByte(final int v) throws IOException {
+                hashed.writeByte(v);
+                if (storedToo) {
+                    stored.writeByte(v);
+                }
+            }
+
+            public void writeShort(final int v) throws IOException {
+                hashed.writeShort(v);
+                if (storedToo) {
+                    stored.writeShort(v);
+                }
+            }
+
+            public void writeChar(final int v) throws IOException {
+                hashed.writeChar(v);
+                if (storedToo) {
+                    stored.writeChar(v);
+                }
+            }
+
+            public void writeInt(final int v) throws IOException {
+                hashed.writeInt(v);
+                if (storedToo) {
+                    stored.writeInt(v);
+                }
+            }
+
+            public void writeLong(final long v) throws IOException {
+                hashed.writeLong(v);
+                if (storedToo) {
+                    stored.writeLong(v);
+                }
+            }
+
+            public void writeFloat(final float v) throws IOException {
+                hashed.writeFloat(v);
+                if (storedToo) {
+                    stored.writeFloat(v);
+                }
+            }
+
+            public void writeDouble(final double v) throws IOException {
+                hashed.writeDouble(v);
+                if (storedToo) {
+                    stored.writeDouble(v);
+                }
+            }
+
+            public void writeBytes(final String s) throws IOException {
+                hashed.writeBytes(s);
+                if (storedToo) {
+                    stored.writeBytes(s);
+                }
+            }
+
+            public void writeChars(final String s) throws IOException {
+                hashed.writeChars(s);
+                if (storedToo) {
+                    stored.writeChars(s);
+                }
+            }
+
+            public void writeUTF(final String s) throws IOException {
+                hashed.writeUTF(s);
+                if (storedToo) {
+                    stored.writeUTF(s);
+                }
+            }
+        }
+
+        private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+            byte[] buffer() {
+                return buf;
+            }
+        }
+
+        // Packs the bytes little-endian into words, which gives the
+        // same bit numbering as ByteArrayBitVector.
+        private static class WordBitVector extends AbstractBitVector {
+            private long[] words = new long[4];
+            private long length;
+
+            WordBitVector wrap(final byte[] bytes, final int size) {
+                final int numWords = (size + 7) / 8;
+                if (numWords > words.length) {
+                    words = new long[Math.max(numWords, words.length * 2)];
+                }
+                int i = 0;
+                for (int w = 0; w < numWords; ++w) {
+                    long word = 0;
+                    for (int shift = 0; shift < 64 && i < size; shift += 8) {
+                        word |= (bytes[i++] & 0xFFL) << shift;
+                    }
+                    words[w] = word;
+                }
+                length = size * 8L;
+                return this;
             }
 
             public boolean getBoolean(final long index) {
-                return getBoolean((int) index);
+                return ((words[(int) (index >>> 6)] >>> (index & 63)) & 1L) == 1L;
+            }
+
+            public long getLong(final long from, final long to) {
+                final int width = (int) (to - from);
+                if (width == 0) {
+                    return 0L;
+                }
+                final int word = (int) (from >>> 6);
+                final int bit = (int) (from & 63);
+                final long mask = width == 64 ? -1L : (1L << width) - 1;
+                if (bit + width <= 64) {
+                    return (words[word] >>> bit) & mask;
+                }
+                return ((words[word] >>> bit) | (words[word + 1] << (64 - bit))) & mask;
+            }
+
+            public long[] bits() {
+                return words;
             }
 
             public long length() {
-                return size64();
+                return length;
             }
 
             public long size64() {
-                return bytes.length * 8;
+                return length;
             }
         }
     }
@@ -893,6 +1400,12 @@ public class TableWriter {
                 config = config.withSignatureWidth(Integer.parseInt(args[++i])); break;
             case "--maxHeapUsage":
                 config = config.withMaxHeapUsage(Long.parseLong(args[++i])); break;
+            case "--hashStorage":
+                config = config.withHashStorage(TableConfig.HashStorage.valueOf(args[++i])); break;
+            case "--fingerprintWidth":
+                config = config.withFingerprintWidth(Integer.parseInt(args[++i])); break;
+            case "--keyFilter":
+                config = config.withKeyFilter(true); break;
             case "--separator":
                 separator = args[++i]; break;
             case "--replace":
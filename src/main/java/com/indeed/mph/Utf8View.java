@@ -0,0 +1,205 @@
+package com.indeed.mph;
+
+import com.google.common.base.Charsets;
+import com.indeed.util.mmap.HeapMemory;
+import com.indeed.util.mmap.Memory;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteOrder;
+
+/**
+ * A read-only view of UTF-8 encoded bytes, generally directly on the
+ * data of a table as returned by {@link TableCursor#readValueView()},
+ * which can be compared, hashed and forwarded without decoding.  The
+ * String is only materialized (and then cached) when needed for the
+ * CharSequence methods or toString.
+ * <p>
+ * Note equals, hashCode and compareTo are all on the raw bytes, so a
+ * view is never equal to a String (use {@link #contentEquals}), and
+ * ordering is by code point, which differs from String ordering only
+ * for supplementary characters.  Views on table data are only valid
+ * as long as the underlying reader is open.
+ */
+public class Utf8View implements CharSequence, Comparable<Utf8View> {
+    private final Memory memory;
+    private final long offset;
+    private final int length;
+    private String string;
+    private int hash;
+
+    public Utf8View(@Nonnull final Memory memory, final long offset, final int length) {
+        this.memory = memory;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static Utf8View of(@Nonnull final String s) {
+        final byte[] bytes = s.getBytes(Charsets.UTF_8);
+        final Utf8View result = new Utf8View(new HeapMemory(bytes, ByteOrder.nativeOrder()), 0, bytes.length);
+        result.string = s;
+        return result;
+    }
+
+    // the number of UTF-8 bytes
+    public int byteLength() {
+        return length;
+    }
+
+    public byte byteAt(final int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + " not in [0, " + length + ")");
+        }
+        return memory.getByte(offset + index);
+    }
+
+    // the raw bytes as a slice of the underlying memory, e.g. to forward without re-encoding
+    public Memory getMemory() {
+        return memory.slice(offset, length);
+    }
+
+    public byte[] getBytes() {
+        final byte[] bytes = new byte[length];
+        memory.getBytes(offset, bytes);
+        return bytes;
+    }
+
+    /**
+     * @param s the string to compare to
+     * @return true iff the UTF-8 encoding of s is the same as these bytes,
+     *   without encoding or decoding anything
+     */
+    public boolean contentEquals(@Nonnull final CharSequence s) {
+        if (string != null) {
+            return string.contentEquals(s);
+        }
+        int pos = 0;
+        final int n = s.length();
+        for (int i = 0; i < n; ++i) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                if (pos >= length || memory.getByte(offset + pos++) != (byte) c) {
+                    return false;
+                }
+                continue;
+            }
+            final int codePoint;
+            if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, s.charAt(++i));
+            } else if (Character.isSurrogate(c)) {
+                codePoint = '?';  // as String.getBytes replaces malformed input
+            } else {
+                codePoint = c;
+            }
+            final int size = encodedLength(codePoint);
+            if (pos + size > length) {
+                return false;
+            }
+            for (int j = 0; j < size; ++j) {
+                if (memory.getByte(offset + pos + j) != encodedByte(codePoint, size, j)) {
+                    return false;
+                }
+            }
+            pos += size;
+        }
+        return pos == length;
+    }
+
+    /**
+     * @param s a string
+     * @return the length of s encoded as UTF-8, without encoding it
+     */
+    public static int encodedLength(@Nonnull final CharSequence s) {
+        int result = 0;
+        final int n = s.length();
+        for (int i = 0; i < n; ++i) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                ++result;
+            } else if (c < 0x800) {
+                result += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                result += 4;
+                ++i;
+            } else if (Character.isSurrogate(c)) {
+                ++result;
+            } else {
+                result += 3;
+            }
+        }
+        return result;
+    }
+
+    private static int encodedLength(final int codePoint) {
+        return codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+    }
+
+    // the index-th byte of the size-byte encoding of codePoint
+    private static byte encodedByte(final int codePoint, final int size, final int index) {
+        final int shift = 6 * (size - 1 - index);
+        if (index > 0) {
+            return (byte) (0x80 | ((codePoint >>> shift) & 0x3F));
+        }
+        return (byte) (size == 1 ? codePoint : (0xF00 >>> size) | (codePoint >>> shift));
+    }
+
+    @Override
+    public int length() {
+        return toString().length();
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (string == null) {
+            string = new String(getBytes(), Charsets.UTF_8);
+        }
+        return string;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Utf8View)) {
+            return false;
+        }
+        final Utf8View other = (Utf8View) o;
+        return length == other.length && compareTo(other) == 0;
+    }
+
+    // FNV-1a over the bytes
+    @Override
+    public int hashCode() {
+        if (hash == 0) {
+            int h = 0x811C9DC5;
+            for (int i = 0; i < length; ++i) {
+                h = (h ^ (memory.getByte(offset + i) & 0xFF)) * 0x01000193;
+            }
+            hash = h == 0 ? 1 : h;
+        }
+        return hash;
+    }
+
+    @Override
+    public int compareTo(@Nonnull final Utf8View other) {
+        final int n = Math.min(length, other.length);
+        for (int i = 0; i < n; ++i) {
+            final int cmp = Integer.compare(memory.getByte(offset + i) & 0xFF,
+                                            other.memory.getByte(other.offset + i) & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, other.length);
+    }
+}
@@ -0,0 +1,203 @@
+package com.indeed.mph;
+
+import com.google.common.io.LittleEndianDataOutputStream;
+import com.indeed.util.io.BufferedFileDataOutputStream;
+import com.indeed.util.mmap.MMapBuffer;
+import com.indeed.util.mmap.Memory;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * An xor filter (Graf and Lemire, "Xor Filters: Faster and Smaller
+ * Than Bloom and Cuckoo Filters") over a set of 64-bit key hashes,
+ * with 8-bit fingerprints for a false positive rate of about 1/256
+ * using about 9.9 bits per key.  Queries read three bytes, and there
+ * are no false negatives.
+ * <p>
+ * The filter is a single file of little-endian longs followed by the
+ * fingerprints, intended to be mmapped and so shared between
+ * processes via the page cache:
+ * <p>
+ *   seed, blockLength, numKeys
+ *   fingerprints[3 * blockLength]
+ */
+public class XorFilter implements Closeable {
+    private static final int HEADER_SIZE = 3 * 8;
+    private static final int MAX_ATTEMPTS = 100;
+
+    private final MMapBuffer buffer;
+    private final Memory memory;
+    private final long seed;
+    private final int blockLength;
+    private final long numKeys;
+
+    public XorFilter(@Nonnull final Memory memory) {
+        this(null, memory);
+    }
+
+    private XorFilter(final MMapBuffer buffer, @Nonnull final Memory memory) {
+        this.buffer = buffer;
+        this.memory = memory;
+        this.seed = memory.getLong(0);
+        this.blockLength = (int) memory.getLong(8);
+        this.numKeys = memory.getLong(16);
+    }
+
+    public static XorFilter open(@Nonnull final File path) throws IOException {
+        final MMapBuffer buffer = new MMapBuffer(path, FileChannel.MapMode.READ_ONLY, ByteOrder.LITTLE_ENDIAN);
+        return new XorFilter(buffer, buffer.memory());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    public long numKeys() {
+        return numKeys;
+    }
+
+    // the size of the filter in bytes
+    public long length() {
+        return memory.length();
+    }
+
+    // true if the filter is mmapped rather than on the heap
+    public boolean isMapped() {
+        return buffer != null;
+    }
+
+    Memory getMemory() {
+        return memory;
+    }
+
+    /**
+     * @param keyHash the 64-bit hash of a key
+     * @return false if the key was definitely not in the filter
+     */
+    public boolean mayContain(final long keyHash) {
+        final long hash = mix(keyHash + seed);
+        final int h0 = reduce((int) hash, blockLength);
+        final int h1 = reduce((int) Long.rotateLeft(hash, 21), blockLength) + blockLength;
+        final int h2 = reduce((int) Long.rotateLeft(hash, 42), blockLength) + 2 * blockLength;
+        final int f = fingerprint(hash) ^ memory.getByte(HEADER_SIZE + h0) ^
+            memory.getByte(HEADER_SIZE + h1) ^ memory.getByte(HEADER_SIZE + h2);
+        return (f & 0xFF) == 0;
+    }
+
+    /**
+     * Builds a filter containing keyHashes and writes it to path.
+     * Duplicate hashes are allowed.
+     *
+     * @param keyHashes the 64-bit hashes of the keys, which may be reordered
+     * @param path      the file to write
+     * @throws IOException if unable to write the file, or to build the filter
+     */
+    public static void writeTo(@Nonnull final long[] keyHashes, @Nonnull final File path) throws IOException {
+        Arrays.sort(keyHashes);
+        int size = 0;
+        for (int i = 0; i < keyHashes.length; ++i) {
+            if (i == 0 || keyHashes[i] != keyHashes[i - 1]) {
+                keyHashes[size++] = keyHashes[i];
+            }
+        }
+        final int blockLength = (int) ((32 + 1.23 * size) / 3);
+        final int arrayLength = 3 * blockLength;
+        final long[] reverseOrder = new long[size];
+        final byte[] reverseH = new byte[size];
+        final int[] queue = new int[arrayLength];
+        long seed = 0x7A5F3C2B91E4D6L;
+        for (int attempt = 0; ; ++attempt) {
+            if (attempt >= MAX_ATTEMPTS) {
+                throw new IOException("couldn't build xor filter for " + size + " keys");
+            }
+            seed = mix(seed + attempt);
+            final long[] t2 = new long[arrayLength];
+            final int[] counts = new int[arrayLength];
+            for (int i = 0; i < size; ++i) {
+                final long hash = mix(keyHashes[i] + seed);
+                for (int j = 0; j < 3; ++j) {
+                    final int index = getIndex(hash, j, blockLength);
+                    t2[index] ^= hash;
+                    ++counts[index];
+                }
+            }
+            int queueSize = 0;
+            for (int i = 0; i < arrayLength; ++i) {
+                if (counts[i] == 1) {
+                    queue[queueSize++] = i;
+                }
+            }
+            // peel off positions with a single key until none are left
+            int stackSize = 0;
+            while (queueSize > 0) {
+                final int index = queue[--queueSize];
+                if (counts[index] != 1) {
+                    continue;
+                }
+                final long hash = t2[index];
+                for (int j = 0; j < 3; ++j) {
+                    final int other = getIndex(hash, j, blockLength);
+                    if (other == index) {
+                        reverseOrder[stackSize] = hash;
+                        reverseH[stackSize] = (byte) j;
+                    }
+                    t2[other] ^= hash;
+                    if (--counts[other] == 1) {
+                        queue[queueSize++] = other;
+                    }
+                }
+                ++stackSize;
+            }
+            if (stackSize == size) {
+                break;
+            }
+        }
+        final byte[] fingerprints = new byte[arrayLength];
+        for (int i = size - 1; i >= 0; --i) {
+            final long hash = reverseOrder[i];
+            final int h0 = getIndex(hash, 0, blockLength);
+            final int h1 = getIndex(hash, 1, blockLength);
+            final int h2 = getIndex(hash, 2, blockLength);
+            final int change = reverseH[i] == 0 ? h0 : reverseH[i] == 1 ? h1 : h2;
+            fingerprints[change] = (byte) (fingerprint(hash) ^ fingerprints[h0] ^ fingerprints[h1] ^ fingerprints[h2]);
+        }
+        try (final LittleEndianDataOutputStream out =
+             new LittleEndianDataOutputStream(new BufferedFileDataOutputStream(path))) {
+            out.writeLong(seed);
+            out.writeLong(blockLength);
+            out.writeLong(size);
+            out.write(fingerprints);
+            out.flush();
+        }
+        path.setReadOnly();
+    }
+
+    private static int getIndex(final long hash, final int index, final int blockLength) {
+        return reduce((int) Long.rotateLeft(hash, 21 * index), blockLength) + index * blockLength;
+    }
+
+    // maps a uniform 32-bit value to [0, n) without division
+    private static int reduce(final int hash, final int n) {
+        return (int) (((hash & 0xFFFFFFFFL) * n) >>> 32);
+    }
+
+    private static int fingerprint(final long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    // the murmur3 64-bit finalizer
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return x ^ (x >>> 33);
+    }
+}
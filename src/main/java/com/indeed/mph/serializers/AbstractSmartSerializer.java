@@ -15,12 +15,32 @@ import java.io.OutputStream;
 public abstract class AbstractSmartSerializer<T> extends AbstractParseable<T> implements SmartSerializer<T> {
     private static final long serialVersionUID = 5010196727600564999L;
 
+    // skips by the constant size if there is one, otherwise reads and
+    // discards, which variable-sized serializers should override
     public void skip(final DataInput in, final int n) throws IOException {
+        final LinearDiophantineEquation eq = size();
+        if (eq != null && eq.isConstant()) {
+            skipBytes(in, n * eq.getConstant());
+            return;
+        }
         for (int i = 0; i < n; ++i) {
             read(in);
         }
     }
 
+    // skips exactly numBytes from in, failing at EOF like a read would
+    public static void skipBytes(final DataInput in, long numBytes) throws IOException {
+        while (numBytes > 0) {
+            final int skipped = in.skipBytes((int) Math.min(numBytes, Integer.MAX_VALUE));
+            if (skipped > 0) {
+                numBytes -= skipped;
+            } else {
+                in.readByte();
+                --numBytes;
+            }
+        }
+    }
+
     public long sizeOf(final T t) throws IOException {
         final LinearDiophantineEquation eq = size();
         if (eq != null && eq.isConstant()) {
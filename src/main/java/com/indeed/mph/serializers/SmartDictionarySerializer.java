@@ -70,11 +70,46 @@ public class SmartDictionarySerializer extends AbstractSmartSerializer<String> {
         return words[n.intValue()];
     }
 
+    @Override
+    public void skip(final DataInput in, final int n) throws IOException {
+        serializer.skip(in, n);
+    }
+
     @Override
     public LinearDiophantineEquation size() {
         return serializer.size();
     }
 
+    // a rough estimate of the heap used by the dictionary, for monitoring
+    public long getHeapBytes() {
+        final String[] currentWords = words;
+        final Object2IntMap<String> currentDictionary = dictionary;
+        long result = 0;
+        if (currentWords != null) {
+            result += 16 + 8L * currentWords.length;
+            for (final String word : currentWords) {
+                result += stringBytes(word);
+            }
+        }
+        if (currentDictionary != null) {
+            // keys and values with the default load factor
+            result += 16L * currentDictionary.size();
+            if (currentWords == null) {
+                for (final String word : currentDictionary.keySet()) {
+                    result += stringBytes(word);
+                }
+            }
+        }
+        if (mphFunction != null) {
+            result += mphFunction.numBits() / 8;
+        }
+        return result;
+    }
+
+    private static long stringBytes(final String str) {
+        return str == null ? 0 : 40 + 2L * str.length();
+    }
+
     private long getIndex(final String str) throws IOException {
         if (mphFunction != null) {
             final long index = mphFunction.getLong(str);
@@ -1,7 +1,9 @@
 package com.indeed.mph.serializers;
 
 import com.indeed.mph.LinearDiophantineEquation;
+import com.indeed.mph.MMapGOVMinimalPerfectHashFunction;
 import com.indeed.mph.Parseable;
+import com.indeed.mph.TableConfig;
 import com.indeed.mph.TableMeta;
 import it.unimi.dsi.sux4j.mph.AbstractHashFunction;
 
@@ -10,6 +12,8 @@ import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 
+import static com.indeed.util.io.Files.loadFileAsByteArray;
+
 /**
  * An Integer serializer which compresses its values to a smaller
  * range using a pre-existing minimal perfect hash.  Conversion occurs
@@ -40,7 +44,7 @@ public class SmartHashSerializer extends SmartIntegerSerializer {
     }
 
     public SmartHashSerializer(final String metaPath, final Parseable<Long> parser, final boolean ignoreErrors) throws IOException {
-        this(TableMeta.load(new File(metaPath)).getMph(), parser, ignoreErrors);
+        this(loadHashFunction(metaPath), parser, ignoreErrors);
     }
 
     public SmartHashSerializer(final String metaPath, final Parseable<Long> parser) throws IOException {
@@ -51,6 +55,20 @@ public class SmartHashSerializer extends SmartIntegerSerializer {
         this(metaPath, null);
     }
 
+    // the table's hash function on the heap, so that nothing is left mmapped
+    private static AbstractHashFunction<Long> loadHashFunction(final String metaPath) throws IOException {
+        final TableMeta<Long, ?> meta = TableMeta.load(new File(metaPath));
+        try {
+            if (TableConfig.HashStorage.MMAPPED.equals(meta.getConfig().getHashStorage())) {
+                return MMapGOVMinimalPerfectHashFunction.fromBytes(
+                    meta.getMph(), loadFileAsByteArray(meta.getHashPath().getPath()));
+            }
+            return meta.getHashFunction();
+        } finally {
+            meta.close();
+        }
+    }
+
     @Override
     public Integer parseFromString(final String s) throws IOException {
         final Long value = parser == null ? Long.parseLong(s) : parser.parseFromString(s);
@@ -112,6 +112,14 @@ public class SmartListSerializer<T> extends AbstractSmartSerializer<List<T>> {
         return result;
     }
 
+    @Override
+    public void skip(final DataInput in, final int n) throws IOException {
+        for (int i = 0; i < n; ++i) {
+            final int length = (limit > 0 && limit < 256) ? (in.readByte() & 0xFF) : (int) readVLong(in);
+            serializer.skip(in, length);
+        }
+    }
+
     @Override
     public long sizeOf(final List<T> list) throws IOException {
         final int n = list.size();
@@ -45,4 +45,13 @@ public class SmartOptionalSerializer<T> extends AbstractSmartSerializer<Optional
                 ? Optional.of(serializer.read(in))
                 : Optional.empty();
     }
+
+    @Override
+    public void skip(final DataInput in, final int n) throws IOException {
+        for (int i = 0; i < n; ++i) {
+            if (PRESENCE == in.readByte()) {
+                serializer.skip(in, 1);
+            }
+        }
+    }
 }
@@ -36,6 +36,14 @@ public class SmartPairSerializer<U, V> extends AbstractSmartSerializer<Pair<U, V
         return new Pair<>(serializer1.read(in), serializer2.read(in));
     }
 
+    @Override
+    public void skip(final DataInput in, final int n) throws IOException {
+        for (int i = 0; i < n; ++i) {
+            serializer1.skip(in, 1);
+            serializer2.skip(in, 1);
+        }
+    }
+
     @Override
     public LinearDiophantineEquation size() {
         if (serializer1.size() == null) {
@@ -125,4 +125,21 @@ public class SmartSmallLongListSerializer extends AbstractSmartSerializer<List<L
         final int length = lengthSerializer.read(in).intValue();
         return readDataOnly(length, in);
     }
+
+    @Override
+    public void skip(final DataInput in, final int n) throws IOException {
+        for (int i = 0; i < n; ++i) {
+            final int length = lengthSerializer.read(in).intValue();
+            for (int count = 0; count < length; ) {
+                final byte value = in.readByte();
+                if ((value & TYPE_MASK) == MASK1) {
+                    count += 3;
+                } else if ((value & TYPE_MASK) == MASK2) {
+                    count += 2;
+                } else if ((value & TYPE_MASK) == MASK3) {
+                    ++count;
+                }
+            }
+        }
+    }
 }
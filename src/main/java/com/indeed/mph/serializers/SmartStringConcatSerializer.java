@@ -84,6 +84,14 @@ public class SmartStringConcatSerializer extends AbstractSmartSerializer<String>
         }
     }
 
+    @Override
+    public void skip(final DataInput in, final int n) throws IOException {
+        for (int i = 0; i < n; ++i) {
+            serializer1.skip(in, 1);
+            serializer2.skip(in, 1);
+        }
+    }
+
     @Override
     public LinearDiophantineEquation size() {
         if (serializer1.size() == null) {
@@ -3,6 +3,8 @@ package com.indeed.mph.serializers;
 import com.google.common.base.Charsets;
 import com.indeed.mph.LinearDiophantineEquation;
 import com.indeed.mph.SmartSerializer;
+import com.indeed.mph.Utf8View;
+import com.indeed.util.mmap.Memory;
 import com.indeed.util.serialization.LengthVIntSerializer;
 
 import javax.annotation.Nonnull;
@@ -38,10 +40,37 @@ public class SmartStringSerializer extends AbstractSmartSerializer<String> {
         return new String(bytes, Charsets.UTF_8);
     }
 
+    @Override
+    public void skip(final DataInput in, final int n) throws IOException {
+        for (int i = 0; i < n; ++i) {
+            skipBytes(in, lengthSerializer.read(in));
+        }
+    }
+
+    /**
+     * Returns a view of the string serialized at offset in memory,
+     * without copying or decoding it.
+     *
+     * @param memory the memory the string was written to, e.g. table data
+     * @param offset the offset of the serialized string
+     * @return a view of the UTF-8 bytes, valid as long as memory is
+     */
+    public static Utf8View readView(@Nonnull final Memory memory, final long offset) {
+        final int b = memory.getByte(offset) & 0xFF;
+        if (b < 0xFF) {
+            return new Utf8View(memory, offset + 1, b);
+        }
+        return new Utf8View(memory, offset + 5, memory.getInt(offset + 1));
+    }
+
+    // the serialized size of a string with the given UTF-8 length
+    public static int serializedSize(final int utf8Length) {
+        return utf8Length < 0xFF ? utf8Length + 1 : utf8Length + 5;
+    }
+
     @Override
     public long sizeOf(final String s) throws IOException {
-        final int len = s.getBytes(Charsets.UTF_8).length;
-        return len < 0xFF ? len + 1 : len + 5;
+        return serializedSize(Utf8View.encodedLength(s));
     }
 
     @Override
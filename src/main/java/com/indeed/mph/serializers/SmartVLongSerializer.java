@@ -24,6 +24,13 @@ public class SmartVLongSerializer extends AbstractSmartLongSerializer {
         return readVLong(in);
     }
 
+    @Override
+    public void skip(final DataInput in, final int n) throws IOException {
+        for (int i = 0; i < n; ++i) {
+            skipVLong(in);
+        }
+    }
+
     @Override
     public long sizeOf(final Long n) throws IOException {
         if ((n < 128) && (n >= -32)) {
@@ -202,4 +209,32 @@ public class SmartVLongSerializer extends AbstractSmartLongSerializer {
                 throw new RuntimeException("Internal error");
         }
     }
+
+    /**
+     * Skips a variable-length integer as read by {@link #readVLong},
+     * without decoding it.
+     *
+     * @param in input stream
+     * @throws java.io.IOException if unable to read from in
+     */
+    public static void skipVLong(final DataInput in) throws IOException {
+        final int firstByte = in.readByte();
+        if (firstByte >= -32) {
+            return;
+        }
+        final int group = (firstByte + 128) / 8;
+        if (group >= 7) {
+            AbstractSmartSerializer.skipBytes(in, 1);
+        } else if (group >= 3) {
+            AbstractSmartSerializer.skipBytes(in, 2);
+        } else if (group >= 1) {
+            AbstractSmartSerializer.skipBytes(in, 3);
+        } else {
+            final int len = firstByte + 129;
+            if (len < 4 || len > 8) {
+                throw new IOException("Corrupted VLong encoding");
+            }
+            AbstractSmartSerializer.skipBytes(in, len);
+        }
+    }
 }
@@ -0,0 +1,150 @@
+package com.indeed.mph;
+
+import com.indeed.mph.helpers.TableVersionHelpers;
+import com.indeed.mph.serializers.SmartLongSerializer;
+import com.indeed.mph.serializers.SmartStringSerializer;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestHotKeySampler {
+
+    File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("tmphotkeys", "", new File("."));
+        tmpDir.delete();
+        tmpDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    // writes a version where each key i < 20000 maps to a ~100 byte string
+    private File writeVersion(final String name, final long version) throws IOException {
+        final char[] padding = new char[100];
+        Arrays.fill(padding, 'x');
+        return TableVersionHelpers.writeVersion(tmpDir, name, new SmartStringSerializer(), 20000,
+                                                i -> version + ":" + i + new String(padding));
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        final HotKeySampler<Long> sampler = new HotKeySampler<>(10, 1);
+        for (long i = 0; i < 1000; ++i) {
+            sampler.offer(i % 3);
+        }
+        assertEquals(1000, sampler.getSampledCount());
+        assertEquals(new HashSet<>(Arrays.asList(0L, 1L, 2L)), new HashSet<>(sampler.getKeys()));
+        sampler.restart();
+        assertEquals(0, sampler.getSampledCount());
+        assertEquals(3, sampler.getKeys().size());
+        // a restarted sample is replaced by the new lookups
+        for (long i = 0; i < 10; ++i) {
+            sampler.offer(7L);
+        }
+        assertEquals(Collections.singletonList(7L), sampler.getKeys());
+        sampler.clear();
+        assertTrue(sampler.getKeys().isEmpty());
+
+        final HotKeySampler<Long> sparse = new HotKeySampler<>(1000, 16);
+        for (long i = 0; i < 16000; ++i) {
+            sparse.offer(i);
+        }
+        assertTrue(sparse.getSampledCount() > 500 && sparse.getSampledCount() < 1500);
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        final HotKeySampler<Long> sampler = new HotKeySampler<>(100, 1);
+        for (long i = 0; i < 50; ++i) {
+            sampler.offer(i * 1000);
+        }
+        final File file = new File(tmpDir, "hotkeys");
+        assertTrue(HotKeySampler.load(file, new SmartLongSerializer()).isEmpty());
+        sampler.save(file, new SmartLongSerializer());
+        assertEquals(sampler.getKeys(), HotKeySampler.<Long>load(file, new SmartLongSerializer()));
+    }
+
+    @Test
+    public void testWarmKeys() throws Exception {
+        final File table = writeVersion("table", 1);
+        try (final TableReader<Long, String> reader = TableReader.open(new File(table, TableMeta.DEFAULT_META_PATH), 0L)) {
+            final HotKeySampler<Long> sampler = new HotKeySampler<>(100, 1);
+            reader.setKeySampler(sampler);
+            assertEquals("1:5", reader.get(5L).substring(0, 3));
+            assertTrue(reader.containsKey(6L));
+            reader.getAll(Arrays.asList(7L, 100000L));
+            assertFalse(reader.containsKey(100001L));
+            assertNull(reader.get(100002L));
+            // only keys which were found are sampled
+            assertEquals(new HashSet<>(Arrays.asList(5L, 6L, 7L)), new HashSet<>(sampler.getKeys()));
+
+            assertEquals(0, reader.warmKeys(Collections.<Long>emptyList()));
+            // a ~100 byte entry spans one or two pages, missing keys none
+            final long pages = reader.warmKeys(sampler.getKeys());
+            assertTrue(pages >= 3 && pages <= 6);
+            final List<Long> missing = new ArrayList<>();
+            for (long i = 20000; i < 30000; ++i) {
+                missing.add(i);
+            }
+            assertEquals(0, reader.warmKeys(missing));
+            final long dataPages = new File(table, TableMeta.DEFAULT_DATA_PATH).length() / TableWarmup.PAGE_SIZE;
+            final List<Long> all = new ArrayList<>();
+            for (long i = 0; i < 20000; ++i) {
+                all.add(i);
+            }
+            final long allPages = reader.warmKeys(all);
+            assertTrue(allPages >= dataPages && allPages <= dataPages + 1);
+        }
+    }
+
+    @Test
+    public void testReloadingWarmer() throws Exception {
+        final File versions = new File(tmpDir, "versions");
+        versions.mkdirs();
+        final File hotKeys = new File(tmpDir, "hotkeys");
+        final HotKeySampler<Long> sampler = new HotKeySampler<>(100, 1);
+        final List<Long> persisted = Arrays.asList(1L, 2L, 3L);
+        final HotKeySampler<Long> previous = new HotKeySampler<>(100, 1);
+        persisted.forEach(previous::offer);
+        previous.save(hotKeys, new SmartLongSerializer());
+        writeVersion("versions/001", 1);
+        try (final ReloadingTableReader<Long, String> reader =
+             ReloadingTableReader.<Long, String>builder(ReloadingTableReader.latestSubdirectory(versions))
+             .withPollMillis(0)
+             .withWarmer(sampler.<String>asWarmer(hotKeys))
+             .open()) {
+            // nothing sampled yet, so the persisted sample was used and left alone
+            assertSame(sampler, reader.read(TableReader::getKeySampler));
+            assertEquals(persisted, HotKeySampler.<Long>load(hotKeys, new SmartLongSerializer()));
+            reader.get(42L);
+            reader.get(43L);
+            writeVersion("versions/002", 2);
+            assertTrue(reader.reload());
+            assertEquals("2:42", reader.get(42L).substring(0, 4));
+            assertSame(sampler, reader.read(TableReader::getKeySampler));
+            // the sample of the previous version was persisted for the next process
+            assertEquals(new HashSet<>(Arrays.asList(42L, 43L)),
+                         new HashSet<>(HotKeySampler.<Long>load(hotKeys, new SmartLongSerializer())));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.indeed.mph;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestLatencyHistogram {
+    @Test
+    public void testBuckets() {
+        for (int i = 0; i < LatencyHistogram.NUM_BUCKETS; ++i) {
+            final long upper = LatencyHistogram.bucketUpperBound(i);
+            assertEquals(i, LatencyHistogram.bucketIndex(upper));
+            if (i > 0) {
+                final long lower = LatencyHistogram.bucketUpperBound(i - 1) + 1;
+                assertEquals(i, LatencyHistogram.bucketIndex(lower));
+                // buckets are accurate to within 1/SUB_BUCKETS
+                assertTrue(upper - lower <= lower / LatencyHistogram.SUB_BUCKETS);
+            }
+        }
+        assertEquals(0, LatencyHistogram.bucketIndex(-5));
+        assertEquals(LatencyHistogram.NUM_BUCKETS - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, LatencyHistogram.getPercentile(histogram.getCounts(), 50));
+        for (long i = 1; i <= 1000; ++i) {
+            histogram.record(i * 1000);
+        }
+        final long[] counts = histogram.getCounts();
+        final long p50 = LatencyHistogram.getPercentile(counts, 50);
+        final long p99 = LatencyHistogram.getPercentile(counts, 99);
+        assertTrue(p50 >= 500000 && p50 <= 500000 * 9 / 8);
+        assertTrue(p99 >= 990000 && p99 <= 990000 * 9 / 8);
+        assertEquals(LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(1000)),
+                     LatencyHistogram.getPercentile(counts, 0));
+        assertEquals(LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(1000000)),
+                     LatencyHistogram.getPercentile(counts, 100));
+    }
+}
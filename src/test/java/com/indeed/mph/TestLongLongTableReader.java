@@ -0,0 +1,202 @@
+package com.indeed.mph;
+
+import com.indeed.mph.serializers.SmartIntegerSerializer;
+import com.indeed.mph.serializers.SmartLongSerializer;
+import com.indeed.mph.serializers.SmartStringSerializer;
+import com.indeed.mph.serializers.SmartVLongSerializer;
+import com.indeed.util.core.Pair;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestLongLongTableReader {
+
+    File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("tmplonglongreader", "", new File("."));
+        tmpDir.delete();
+        tmpDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    @Test
+    public void testLongToVLong() throws Exception {
+        final File table = new File(tmpDir, "vlong");
+        final TableConfig<Long, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartVLongSerializer());
+        final Random random = new Random(17);
+        final Set<Pair<Long, Long>> entries = new HashSet<>();
+        final Set<Long> keys = new HashSet<>();
+        while (keys.size() < 2000) {
+            final long key = random.nextLong();
+            if (keys.add(key)) {
+                entries.add(new Pair(key, key >> random.nextInt(64)));
+            }
+        }
+        TableWriter.write(table, config, entries);
+        try (final LongLongTableReader reader = LongLongTableReader.open(table)) {
+            for (final Pair<Long, Long> e : entries) {
+                assertEquals(e.getSecond().longValue(), reader.getLong(e.getFirst(), 0L));
+                assertTrue(reader.containsKey(e.getFirst()));
+                assertEquals(reader.getReader().getHash(e.getFirst()), reader.getHash(e.getFirst()));
+                assertEquals(((TableReader<Long, Long>) reader.getReader()).getOffset(e.getFirst()),
+                             reader.getOffset(e.getFirst()));
+            }
+            for (int i = 0; i < 2000; ++i) {
+                final long key = random.nextLong();
+                if (!keys.contains(key)) {
+                    assertEquals(-17L, reader.getLong(key, -17L));
+                    assertFalse(reader.containsKey(key));
+                }
+            }
+            assertEquals(2000, reader.getReader().getStats().retrievedCount);
+        }
+    }
+
+    @Test
+    public void testLongToInteger() throws Exception {
+        final File table = new File(tmpDir, "int");
+        final TableConfig<Long, Integer> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartIntegerSerializer())
+            .withRangeChecking(TableConfig.RangeChecking.MIN_AND_MAX);
+        final Set<Pair<Long, Integer>> entries = new HashSet<>();
+        for (long i = 100; i < 600; ++i) {
+            entries.add(new Pair(i, (int) -i));
+        }
+        TableWriter.write(table, config, entries);
+        try (final LongLongTableReader reader = LongLongTableReader.open(table)) {
+            for (long i = 0; i < 700; ++i) {
+                assertEquals(i >= 100 && i < 600 ? -i : 0L, reader.getLong(i, 0L));
+            }
+            assertEquals(200, reader.getReader().getStats().filteredCount);
+        }
+    }
+
+    @Test
+    public void testImplicitKeys() throws Exception {
+        final File table = new File(tmpDir, "implicit");
+        final TableConfig<Long, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartLongSerializer())
+            .withKeyStorage(TableConfig.KeyStorage.IMPLICIT)
+            .withSignatureWidth(16);
+        final Set<Pair<Long, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 500; ++i) {
+            entries.add(new Pair(i * 7, i));
+        }
+        TableWriter.write(table, config, entries);
+        try (final LongLongTableReader reader = LongLongTableReader.open(table)) {
+            for (long i = 0; i < 500; ++i) {
+                assertEquals(i, reader.getLong(i * 7, -1L));
+            }
+        }
+    }
+
+    @Test
+    public void testImplicitKeysDefaultValidatorReadsOnce() throws Exception {
+        final File table = new File(tmpDir, "implicitdefault");
+        final TableConfig<Long, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new CountingLongSerializer())
+            .withKeyStorage(TableConfig.KeyStorage.IMPLICIT)
+            .withSignatureWidth(16);
+        final Set<Pair<Long, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 500; ++i) {
+            entries.add(new Pair(i * 7, i));
+        }
+        TableWriter.write(table, config, entries);
+        try (final LongLongTableReader reader = LongLongTableReader.open(table)) {
+            CountingLongSerializer.READS.set(0);
+            for (long i = 0; i < 500; ++i) {
+                assertEquals(i, reader.getLong(i * 7, -1L));
+                assertTrue(reader.containsKey(i * 7));
+            }
+            // the default validator passes without decoding a boxed value
+            assertEquals(0, CountingLongSerializer.READS.get());
+        }
+    }
+
+    @Test
+    public void testImplicitKeysCustomValidator() throws Exception {
+        final File table = new File(tmpDir, "implicitcustom");
+        final TableConfig<Long, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new CountingLongSerializer())
+            .withKeyStorage(TableConfig.KeyStorage.IMPLICIT)
+            .withKeyValidator(new EvenValueValidator())
+            .withSignatureWidth(16);
+        final Set<Pair<Long, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 500; ++i) {
+            entries.add(new Pair(i * 7, i));
+        }
+        TableWriter.write(table, config, entries);
+        try (final LongLongTableReader reader = LongLongTableReader.open(table)) {
+            CountingLongSerializer.READS.set(0);
+            for (long i = 0; i < 500; ++i) {
+                assertEquals(i % 2 == 0 ? i : -1L, reader.getLong(i * 7, -1L));
+            }
+            assertEquals(500, CountingLongSerializer.READS.get());
+        }
+    }
+
+    public static class CountingLongSerializer extends SmartLongSerializer {
+        private static final long serialVersionUID = 1L;
+        static final AtomicInteger READS = new AtomicInteger();
+
+        @Override
+        public Long read(final DataInput in) throws IOException {
+            READS.incrementAndGet();
+            return super.read(in);
+        }
+    }
+
+    public static class EvenValueValidator implements KeyValidator<Long, Long> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Long validate(final Long inputKey, final Long extractedKey, final Long extractedValue) {
+            return extractedValue % 2 == 0 ? extractedValue : null;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedKeys() throws Exception {
+        final File table = new File(tmpDir, "strings");
+        final TableConfig<String, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartStringSerializer())
+            .withValueSerializer(new SmartLongSerializer());
+        final Set<Pair<String, Long>> entries = new HashSet<>();
+        entries.add(new Pair("foo", 1L));
+        TableWriter.write(table, config, entries);
+        try (final TableReader reader = TableReader.open(table)) {
+            new LongLongTableReader(reader);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.indeed.mph;
+
+import com.indeed.mph.serializers.SmartLongSerializer;
+import com.indeed.mph.serializers.SmartStringSerializer;
+import com.indeed.mph.serializers.SmartVLongSerializer;
+import com.indeed.util.core.Pair;
+import it.unimi.dsi.sux4j.mph.GOVMinimalPerfectHashFunction;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestMMapGOVMinimalPerfectHashFunction {
+
+    File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("tmpmmapgov", "", new File("."));
+        tmpDir.delete();
+        tmpDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    @Test
+    public void testMatchesOriginal() throws Exception {
+        for (final int signatureWidth : new int[] {0, 13, 64}) {
+            final List<String> keys = new ArrayList<>();
+            for (int i = 0; i < 5000; ++i) {
+                keys.add("key" + i);
+            }
+            final GOVMinimalPerfectHashFunction<String> mph = new GOVMinimalPerfectHashFunction.Builder<String>()
+                .transform(new TableWriter.SerializerTransformationStrategy<>(new SmartStringSerializer()))
+                .signed(signatureWidth)
+                .keys(keys)
+                .build();
+            final long[] expected = new long[10000];
+            for (int i = 0; i < expected.length; ++i) {
+                expected[i] = mph.getLong(i < keys.size() ? keys.get(i) : "nokey" + i);
+            }
+            final File path = new File(tmpDir, "hash" + signatureWidth + ".bin");
+            MMapGOVMinimalPerfectHashFunction.writeTo(mph, path);
+            final GOVMinimalPerfectHashFunction<String> skeleton = TestMphMap.roundTrip(mph);
+            try (final MMapGOVMinimalPerfectHashFunction<String> mapped =
+                 MMapGOVMinimalPerfectHashFunction.open(skeleton, path)) {
+                assertEquals(keys.size(), mapped.size64());
+                for (int i = 0; i < expected.length; ++i) {
+                    assertEquals(expected[i], mapped.getLong(i < keys.size() ? keys.get(i) : "nokey" + i));
+                }
+                final MMapGOVMinimalPerfectHashFunction<String> copy = TestMphMap.roundTrip(mapped);
+                for (int i = 0; i < keys.size(); ++i) {
+                    assertEquals(expected[i], copy.getLong(keys.get(i)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMMappedTable() throws Exception {
+        final File table = new File(tmpDir, "table");
+        final TableConfig<String, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartStringSerializer())
+            .withValueSerializer(new SmartVLongSerializer())
+            .withHashStorage(TableConfig.HashStorage.MMAPPED);
+        final Set<Pair<String, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 1000; ++i) {
+            entries.add(new Pair("key" + i, i));
+        }
+        TableWriter.write(table, config, entries);
+        assertTrue(new File(table, TableMeta.DEFAULT_HASH_PATH).exists());
+        try (final TableReader<String, Long> reader = TableReader.open(table)) {
+            assertEquals(TableConfig.HashStorage.MMAPPED, reader.getConfig().getHashStorage());
+            final Set<Long> hashes = new HashSet<>();
+            for (long i = 0; i < 1000; ++i) {
+                assertEquals(new Long(i), reader.get("key" + i));
+                hashes.add(reader.getHash("key" + i));
+                assertNull(reader.get("nokey" + i));
+            }
+            assertEquals(1000, hashes.size());
+        }
+        final MphMap<String, Long> map = TestMphMap.roundTrip(MphMap.<String, Long>load(table));
+        for (long i = 0; i < 1000; ++i) {
+            assertEquals(new Long(i), map.get("key" + i));
+        }
+    }
+
+    @Test
+    public void testMMappedImplicitLongTable() throws Exception {
+        final File table = new File(tmpDir, "implicit");
+        final TableConfig<Long, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartLongSerializer())
+            .withKeyStorage(TableConfig.KeyStorage.IMPLICIT)
+            .withSignatureWidth(32)
+            .withHashStorage(TableConfig.HashStorage.MMAPPED);
+        final Set<Pair<Long, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 1000; ++i) {
+            entries.add(new Pair(i * 11, -i));
+        }
+        TableWriter.write(table, config, entries);
+        try (final LongLongTableReader reader = LongLongTableReader.open(table)) {
+            for (long i = 0; i < 1000; ++i) {
+                assertEquals(-i, reader.getLong(i * 11, 1L));
+                assertFalse(reader.containsKey(i * 11 + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.indeed.mph;
+
+import com.indeed.mph.serializers.SmartStringSerializer;
+import com.indeed.util.core.Pair;
+import com.indeed.util.mmap.HeapMemory;
+import it.unimi.dsi.bits.LongArrayBitVector;
+import it.unimi.dsi.sux4j.bits.HintedBsearchSelect;
+import it.unimi.dsi.sux4j.bits.Rank9;
+import it.unimi.dsi.sux4j.bits.Select;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestMMapSelect {
+
+    File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("tmpmmapselect", "", new File("."));
+        tmpDir.delete();
+        tmpDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    @Test
+    public void testMatchesHintedBsearchSelect() throws Exception {
+        final Random random = new Random(3);
+        for (final double density : new double[] {0.001, 0.05, 0.5, 0.99}) {
+            final int length = 1 + random.nextInt(200000);
+            final LongArrayBitVector bits = LongArrayBitVector.ofLength(length);
+            for (int i = 0; i < length; ++i) {
+                if (random.nextDouble() < density) {
+                    bits.set(i);
+                }
+            }
+            final File path = new File(tmpDir, "select" + density + ".bin");
+            MMapSelect.writeTo(bits.bits(), length, path);
+            final Select expected = new HintedBsearchSelect(new Rank9(bits));
+            final Select actual = new MMapSelect(toMemory(bits.bits()), new HeapMemory(Files.readAllBytes(path.toPath()), ByteOrder.LITTLE_ENDIAN));
+            final long numOnes = bits.count();
+            assertEquals(numOnes, ((MMapSelect) actual).numOnes());
+            for (long rank = 0; rank < numOnes; ++rank) {
+                assertEquals(expected.select(rank), actual.select(rank));
+            }
+            assertEquals(-1, actual.select(numOnes));
+        }
+    }
+
+    @Test
+    public void testMMappedSelectedTable() throws Exception {
+        final File table = new File(tmpDir, "table");
+        final TableConfig<String, String> config =
+            new TableConfig()
+            .withKeySerializer(new SmartStringSerializer())
+            .withValueSerializer(new SmartStringSerializer())
+            .withOffsetStorage(TableConfig.OffsetStorage.SELECTED)
+            .withMaxHeapUsage(1);
+        final Set<Pair<String, String>> entries = new HashSet<>();
+        for (long i = 0; i < 3000; ++i) {
+            entries.add(new Pair("key" + i, "value" + (i * 7)));
+        }
+        TableWriter.write(table, config, entries);
+        assertTrue(new File(table, TableMeta.DEFAULT_SELECT_PATH).exists());
+        try (final TableReader<String, String> reader = TableReader.open(table)) {
+            assertTrue(reader.getSelect() instanceof MMapSelect);
+            for (long i = 0; i < 3000; ++i) {
+                assertEquals("value" + (i * 7), reader.get("key" + i));
+            }
+        }
+        // tables without the persisted index still open
+        new File(table, TableMeta.DEFAULT_SELECT_PATH).delete();
+        try (final TableReader<String, String> reader = TableReader.open(table)) {
+            assertTrue(reader.getSelect() instanceof HintedBsearchSelect);
+            for (long i = 0; i < 3000; ++i) {
+                assertEquals("value" + (i * 7), reader.get("key" + i));
+            }
+        }
+    }
+
+    private static HeapMemory toMemory(final long[] words) {
+        final ByteBuffer buf = ByteBuffer.allocate(words.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buf.asLongBuffer().put(words);
+        return new HeapMemory(buf.array(), ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void testBitVectorWordsIgnoreByteOrder() throws Exception {
+        final byte[] bytes = new byte[32];
+        new Random(7).nextBytes(bytes);
+        for (final ByteOrder order : new ByteOrder[] {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            final MMapBitVector bits = new MMapBitVector(new HeapMemory(bytes, order));
+            for (long i = 0; i < bits.length(); ++i) {
+                assertEquals(bits.getBoolean(i), ((bits.getWord(i / 64) >>> (i % 64)) & 1L) == 1L);
+            }
+            assertEquals(bits.getBoolean(70) ? 1L : 0L, bits.getLong(70, 71));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.indeed.mph;
+
+import com.indeed.mph.helpers.TableVersionHelpers;
+import com.indeed.mph.serializers.SmartVLongSerializer;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestReloadingTableReader {
+
+    File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("tmpreloading", "", new File("."));
+        tmpDir.delete();
+        tmpDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    // writes a version where each key i < 100 maps to i * i + version
+    private File writeVersion(final String name, final long version) throws IOException {
+        return TableVersionHelpers.writeVersion(tmpDir, name, new SmartVLongSerializer(), 100, i -> i * i + version);
+    }
+
+    private static boolean isClosed(final TableReader<Long, Long> reader) {
+        try {
+            reader.get(1L);
+            return false;
+        } catch (final IOException e) {
+            return true;
+        }
+    }
+
+    @Test
+    public void testLatestSubdirectory() throws Exception {
+        final File versions = new File(tmpDir, "versions");
+        versions.mkdirs();
+        final List<TableReader<Long, Long>> opened = new ArrayList<>();
+        try (final ReloadingTableReader<Long, Long> reader =
+             ReloadingTableReader.<Long, Long>builder(ReloadingTableReader.latestSubdirectory(versions))
+             .withPollMillis(0)
+             .withWarmer(opened::add)
+             .open()) {
+            assertNull(reader.getVersion());
+            try {
+                reader.get(1L);
+                fail("expected no version");
+            } catch (final IOException e) {
+                // expected
+            }
+            writeVersion("versions/0001", 1);
+            // in-progress versions are ignored
+            writeVersion("versions/0003.tmp", 3);
+            assertTrue(reader.reload());
+            assertFalse(reader.reload());
+            assertEquals(Long.valueOf(50), reader.get(7L));
+            writeVersion("versions/0002", 2);
+            assertTrue(reader.reload());
+            assertEquals(Long.valueOf(51), reader.get(7L));
+            assertTrue(reader.containsKey(99L));
+            assertEquals(100, reader.getTableSize());
+            assertEquals(2, opened.size());
+            assertTrue(isClosed(opened.get(0)));
+            assertFalse(isClosed(opened.get(1)));
+        }
+        assertTrue(isClosed(opened.get(1)));
+    }
+
+    @Test
+    public void testPointerFile() throws Exception {
+        writeVersion("v1", 1);
+        writeVersion("v2", 2);
+        final File pointer = new File(tmpDir, "CURRENT");
+        Files.write(pointer.toPath(), "v1\n".getBytes(StandardCharsets.UTF_8));
+        try (final ReloadingTableReader<Long, Long> reader =
+             ReloadingTableReader.<Long, Long>builder(ReloadingTableReader.pointerFile(pointer))
+             .withPollMillis(10)
+             .open()) {
+            assertEquals(Long.valueOf(5), reader.get(2L));
+            Files.write(pointer.toPath(), "v2".getBytes(StandardCharsets.UTF_8));
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (reader.getEpoch() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(Long.valueOf(6), reader.get(2L));
+            assertEquals(new File(new File(tmpDir, "v2"), TableMeta.DEFAULT_META_PATH).getAbsoluteFile(),
+                         reader.getVersion().getAbsoluteFile());
+        }
+    }
+
+    @Test
+    public void testRetireAfterReaders() throws Exception {
+        writeVersion("v1", 1);
+        writeVersion("v2", 2);
+        final File pointer = new File(tmpDir, "CURRENT");
+        Files.write(pointer.toPath(), "v1".getBytes(StandardCharsets.UTF_8));
+        final ExecutorService executor = Executors.newFixedThreadPool(5);
+        try (final ReloadingTableReader<Long, Long> reader =
+             ReloadingTableReader.<Long, Long>builder(ReloadingTableReader.pointerFile(pointer))
+             .withPollMillis(0)
+             .open()) {
+            // a slow read holds the old version open
+            final CountDownLatch entered = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final Future<Long> slow = executor.submit(() -> reader.read(r -> {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (final InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return r.get(3L);
+                }));
+            entered.await();
+            // while others keep reading through the swap
+            final AtomicBoolean done = new AtomicBoolean();
+            final List<Future<Integer>> busy = new ArrayList<>();
+            for (int t = 0; t < 3; ++t) {
+                busy.add(executor.submit(() -> {
+                        int n = 0;
+                        while (!done.get()) {
+                            final long value = reader.get(3L);
+                            assertTrue(value == 10 || value == 11);
+                            ++n;
+                        }
+                        return n;
+                    }));
+            }
+            Files.write(pointer.toPath(), "v2".getBytes(StandardCharsets.UTF_8));
+            final Future<Boolean> swapped = executor.submit(reader::reload);
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (reader.getEpoch() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(Long.valueOf(11), reader.get(3L));
+            // the swap can't complete until the slow read has finished with v1,
+            // which it can only read from if v1 hasn't been closed under it
+            assertFalse(swapped.isDone());
+            release.countDown();
+            assertEquals(Long.valueOf(10), slow.get(10, TimeUnit.SECONDS));
+            assertTrue(swapped.get(10, TimeUnit.SECONDS));
+            done.set(true);
+            for (final Future<Integer> f : busy) {
+                assertTrue(f.get(10, TimeUnit.SECONDS) > 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -23,9 +23,34 @@ public class TestTableConfig {
                      new TableConfig()
                      .withKeySerializer(new SmartVLongSerializer())
                      .chooseBestOffsetStorage(ONE_MILLION, 4 * ONE_MEGABYTE));
+        // ELIAS_FANO would be smaller, but isn't considered without newOffsetFormats
         assertEquals(TableConfig.OffsetStorage.INDEXED,
                      new TableConfig()
                      .withKeySerializer(new SmartVLongSerializer())
                      .chooseBestOffsetStorage(ONE_MILLION, ONE_GIGABYTE));
+        assertEquals(TableConfig.OffsetStorage.INDEXED,
+                     new TableConfig()
+                     .withKeySerializer(new SmartVLongSerializer())
+                     .chooseBestOffsetStorage(4, ONE_MEGABYTE));
+    }
+
+    @Test
+    public void testChooseNewOffsetFormats() throws Exception {
+        assertEquals(TableConfig.OffsetStorage.ELIAS_FANO,
+                     new TableConfig()
+                     .withKeySerializer(new SmartVLongSerializer())
+                     .withNewOffsetFormats(true)
+                     .chooseBestOffsetStorage(ONE_MILLION, ONE_GIGABYTE));
+        // still only chosen when it's the smallest
+        assertEquals(TableConfig.OffsetStorage.SELECTED,
+                     new TableConfig()
+                     .withKeySerializer(new SmartVLongSerializer())
+                     .withNewOffsetFormats(true)
+                     .chooseBestOffsetStorage(ONE_MILLION, 4 * ONE_MEGABYTE));
+        assertEquals(TableConfig.OffsetStorage.FIXED,
+                     new TableConfig()
+                     .withKeySerializer(new SmartLongSerializer())
+                     .withNewOffsetFormats(true)
+                     .chooseBestOffsetStorage(ONE_MILLION, 8 * ONE_MEGABYTE));
     }
 }
@@ -0,0 +1,455 @@
+package com.indeed.mph;
+
+import com.google.common.base.Strings;
+import com.indeed.mph.serializers.SmartLongSerializer;
+import com.indeed.mph.serializers.SmartStringSerializer;
+import com.indeed.mph.serializers.SmartVLongSerializer;
+import com.indeed.util.core.Pair;
+import com.indeed.util.mmap.Memory;
+import com.indeed.util.mmap.MemoryDataInput;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestTableCursor {
+
+    File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("tmptablecursor", "", new File("."));
+        tmpDir.delete();
+        tmpDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    @Test
+    public void testCursorLookups() throws Exception {
+        final File table = new File(tmpDir, "cursor");
+        final TableConfig<Long, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartVLongSerializer());
+        final Set<Pair<Long, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 100; ++i) {
+            entries.add(new Pair(i, i * i));
+        }
+        TableWriter.write(table, config, entries);
+        try (final TableReader<Long, Long> reader = TableReader.open(table)) {
+            final TableCursor<Long, Long> cursor = reader.newCursor();
+            for (int rep = 0; rep < 3; ++rep) {
+                for (long i = 0; i < 100; ++i) {
+                    assertEquals(new Long(i * i), cursor.get(i));
+                    assertEquals(reader.getHash(i), cursor.getHash());
+                    assertEquals(reader.getOffset(i), cursor.getOffset());
+                }
+                assertEquals(null, cursor.get(100L));
+                assertEquals(null, cursor.get(-1L));
+            }
+            for (long i = 0; i < 100; ++i) {
+                assertTrue(cursor.seekHash(reader.getHash(i)));
+                assertEquals(new Long(i), cursor.readKey());
+                assertEquals(new Long(i * i), cursor.readValue());
+            }
+            assertFalse(cursor.seekHash(-1));
+            assertFalse(cursor.seekHash(100));
+            assertEquals(-1, cursor.getHash());
+            assertEquals(-1, cursor.getOffset());
+        }
+    }
+
+    @Test
+    public void testThreadLocalCursors() throws Exception {
+        final File table = new File(tmpDir, "threads");
+        final TableConfig<String, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartStringSerializer())
+            .withValueSerializer(new SmartVLongSerializer());
+        final Set<Pair<String, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 1000; ++i) {
+            entries.add(new Pair("key" + i, i));
+        }
+        TableWriter.write(table, config, entries);
+        try (final TableReader<String, Long> reader = TableReader.open(table)) {
+            final Thread[] threads = new Thread[4];
+            final boolean[] ok = new boolean[threads.length];
+            for (int t = 0; t < threads.length; ++t) {
+                final int id = t;
+                threads[t] = new Thread() {
+                    public void run() {
+                        try {
+                            for (long i = 0; i < 1000; ++i) {
+                                if (!new Long(i).equals(reader.get("key" + i)) || reader.get("nokey" + i) != null) {
+                                    return;
+                                }
+                            }
+                            ok[id] = true;
+                        } catch (final Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (int t = 0; t < threads.length; ++t) {
+                threads[t].join();
+                assertTrue(ok[t]);
+            }
+            assertEquals(4000, reader.getStats().retrievedCount);
+            assertEquals(4000, reader.getStats().missingCount + reader.getStats().filteredCount);
+        }
+    }
+
+    @Test
+    public void testGetAll() throws Exception {
+        final File table = new File(tmpDir, "getall");
+        final TableConfig<String, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartStringSerializer())
+            .withValueSerializer(new SmartVLongSerializer())
+            .withRangeChecking(TableConfig.RangeChecking.MIN_AND_MAX);
+        final Set<Pair<String, Long>> entries = new HashSet<>();
+        for (long i = 100; i < 600; ++i) {
+            entries.add(new Pair("key" + i, i));
+        }
+        TableWriter.write(table, config, entries);
+        final List<String> keys = new ArrayList<>();
+        for (long i = 0; i < 700; ++i) {
+            keys.add("key" + i);
+        }
+        Collections.shuffle(keys, new Random(42));
+        try (final TableReader<String, Long> reader = TableReader.open(table)) {
+            final String[] keyArray = keys.toArray(new String[keys.size()]);
+            final Long[] values = new Long[keyArray.length];
+            final LookupStatus[] statuses = reader.getAll(keyArray, values);
+            for (int i = 0; i < keyArray.length; ++i) {
+                assertEquals(reader.get(keyArray[i]), values[i]);
+                assertEquals(values[i] == null, statuses[i] != LookupStatus.RETRIEVED);
+            }
+            final Map<String, Long> found = reader.getAll(keys);
+            assertEquals(500, found.size());
+            for (final Pair<String, Long> e : entries) {
+                assertEquals(e.getSecond(), found.get(e.getFirst()));
+            }
+            assertEquals(1500, reader.getStats().retrievedCount);
+            assertEquals(600, reader.getStats().missingCount + reader.getStats().filteredCount);
+        }
+        try (final SharedTableReader<String, Long> reader = SharedTableReader.open(table)) {
+            assertEquals(500, reader.getAll(keys).size());
+        }
+        assertEquals(500, MphMap.<String, Long>load(table).getAll(keys).size());
+    }
+
+    @Test
+    public void testValueSlice() throws Exception {
+        final TableConfig.OffsetStorage[] storages = {
+            TableConfig.OffsetStorage.INDEXED, TableConfig.OffsetStorage.SELECTED, TableConfig.OffsetStorage.AUTOMATIC,
+        };
+        for (final TableConfig.OffsetStorage storage : storages) {
+            final File table = new File(tmpDir, "slice" + storage);
+            final TableConfig<Long, String> config =
+                new TableConfig()
+                .withKeySerializer(new SmartLongSerializer())
+                .withValueSerializer(new SmartStringSerializer())
+                .withOffsetStorage(storage);
+            final Set<Pair<Long, String>> entries = new HashSet<>();
+            for (long i = 0; i < 300; ++i) {
+                entries.add(new Pair(i, "value" + (i * i)));
+            }
+            TableWriter.write(table, config, entries);
+            try (final TableReader<Long, String> reader = TableReader.open(table)) {
+                for (long i = 0; i < 300; ++i) {
+                    final Memory slice = reader.getValueSlice(i);
+                    final MemoryDataInput in = new MemoryDataInput(slice);
+                    assertEquals("value" + (i * i), config.getValueSerializer().read(in));
+                    assertEquals(slice.length(), in.position());
+                }
+                assertNull(reader.getValueSlice(300L));
+                assertEquals(300, reader.getStats().retrievedCount);
+            }
+        }
+    }
+
+    @Test
+    public void testValueView() throws Exception {
+        final File table = new File(tmpDir, "view");
+        final TableConfig<String, String> config =
+            new TableConfig()
+            .withKeySerializer(new SmartStringSerializer())
+            .withValueSerializer(new SmartStringSerializer());
+        final Set<Pair<String, String>> entries = new HashSet<>();
+        for (long i = 0; i < 300; ++i) {
+            entries.add(new Pair("key" + i, i % 10 == 0 ? Strings.repeat("\u00e9\ud83d\ude00", (int) i) : "value" + i));
+        }
+        TableWriter.write(table, config, entries);
+        try (final TableReader<String, String> reader = TableReader.open(table)) {
+            final TableCursor<String, String> cursor = reader.newCursor();
+            for (final Pair<String, String> entry : entries) {
+                final Utf8View view = reader.getValueView(entry.getFirst());
+                assertTrue(view.contentEquals(entry.getSecond()));
+                assertEquals(Utf8View.of(entry.getSecond()), view);
+                assertEquals(entry.getSecond(), view.toString());
+                assertTrue(cursor.seek(entry.getFirst()));
+                assertTrue(cursor.readKeyView().contentEquals(entry.getFirst()));
+                assertEquals(view, cursor.readValueView());
+            }
+            assertNull(reader.getValueView("nokey"));
+            assertEquals(300, reader.getStats().retrievedCount);
+        }
+    }
+
+    @Test
+    public void testScanner() throws Exception {
+        final TableConfig.OffsetStorage[] storages = {
+            TableConfig.OffsetStorage.INDEXED, TableConfig.OffsetStorage.SELECTED,
+        };
+        final Map<String, String> entries = new HashMap<>();
+        for (long i = 0; i < 5000; ++i) {
+            entries.put("key" + i, "value" + (i * i));
+        }
+        for (final TableConfig.OffsetStorage storage : storages) {
+            final File table = new File(tmpDir, "scan" + storage);
+            final TableConfig<String, String> config =
+                new TableConfig()
+                .withKeySerializer(new SmartStringSerializer())
+                .withValueSerializer(new SmartStringSerializer())
+                .withOffsetStorage(storage);
+            TableWriter.write(table, config, entries.entrySet().stream()
+                              .map(e -> new Pair<>(e.getKey(), e.getValue())).collect(Collectors.toList()));
+            try (final TableReader<String, String> reader = TableReader.open(table)) {
+                final TableScanner<String, String> scanner = reader.newScanner();
+                final Map<String, String> scanned = new HashMap<>();
+                for (long hash = 0; scanner.advance(); ++hash) {
+                    assertEquals(hash, scanner.hash());
+                    // alternate between decoding and skipping the key
+                    if (hash % 2 == 0) {
+                        assertEquals(hash, reader.getHash(scanner.key()));
+                    }
+                    final String value = scanner.value();
+                    assertEquals(value, config.getValueSerializer().read(new MemoryDataInput(scanner.getValueSlice())));
+                    assertEquals(value, config.getValueSerializer().read(scanner.seekValue()));
+                    scanned.put((String) config.getKeySerializer().read(new MemoryDataInput(scanner.getKeySlice())), value);
+                    assertEquals(reader.getHashOffset(hash), scanner.getKeyOffset());
+                }
+                assertEquals(-1, scanner.hash());
+                assertEquals(entries, scanned);
+                assertEquals(entries.keySet(), reader.keyStream().collect(Collectors.toSet()));
+                assertEquals(new HashSet<>(entries.values()), reader.valueStream().parallel().collect(Collectors.toSet()));
+                final TableScanner<String, String> range = reader.newScanner(100, 200);
+                for (long hash = 100; hash < 200; ++hash) {
+                    assertTrue(range.advance());
+                    assertEquals(reader.getForHash(hash), range.value());
+                }
+                assertFalse(range.advance());
+            }
+            final MphMap<String, String> map = MphMap.load(table);
+            assertEquals(entries, new HashMap<>(map));
+            assertEquals(entries.keySet(), map.keySet());
+            assertEquals(entries.size(), map.values().size());
+        }
+    }
+
+    @Test
+    public void testFixedValueSlice() throws Exception {
+        final File table = new File(tmpDir, "fixedslice");
+        final TableConfig<Long, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartLongSerializer())
+            .withKeyStorage(TableConfig.KeyStorage.IMPLICIT);
+        final Set<Pair<Long, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 100; ++i) {
+            entries.add(new Pair(i, i * 3));
+        }
+        TableWriter.write(table, config, entries);
+        try (final TableReader<Long, Long> reader = TableReader.open(table)) {
+            assertEquals(TableConfig.OffsetStorage.FIXED, reader.getConfig().getOffsetStorage());
+            final TableCursor<Long, Long> cursor = reader.newCursor();
+            for (long i = 0; i < 100; ++i) {
+                assertEquals(8, cursor.seekValue(i));
+                assertEquals(cursor.getOffset(), cursor.getValueOffset());
+                assertEquals(new Long(i * 3), cursor.readValue());
+            }
+        }
+    }
+
+    @Test
+    public void testContains() throws Exception {
+        final File table = new File(tmpDir, "contains");
+        final TableConfig<String, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartStringSerializer())
+            .withValueSerializer(new SmartVLongSerializer());
+        final Set<Pair<String, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 500; ++i) {
+            // include keys longer than a word to compare in chunks
+            entries.add(new Pair((i % 2 == 0 ? "key" : "a rather longer key ") + i, i));
+        }
+        TableWriter.write(table, config, entries);
+        try (final TableReader<String, Long> reader = TableReader.open(table)) {
+            final TableCursor<String, Long> cursor = reader.newCursor();
+            for (final Pair<String, Long> e : entries) {
+                assertEquals(LookupStatus.RETRIEVED, cursor.contains(e.getFirst()));
+                assertTrue(reader.containsKey(e.getFirst()));
+                assertTrue(cursor.seek(e.getFirst()));
+                assertTrue(cursor.matchesKeyBytes(e.getFirst()));
+                assertEquals(e.getSecond(), cursor.readValue());
+            }
+            for (long i = 0; i < 500; ++i) {
+                assertFalse(reader.containsKey("nokey" + i));
+                assertFalse(reader.containsKey("a rather longer key " + (i * 2)));
+                assertNotEquals(LookupStatus.RETRIEVED, cursor.contains("key" + (i * 2 + 1)));
+            }
+            assertEquals(500, reader.getStats().retrievedCount);
+            assertEquals(1000, reader.getStats().filteredCount + reader.getStats().missingCount);
+        }
+    }
+
+    @Test
+    public void testStatsLevels() throws Exception {
+        final File table = new File(tmpDir, "stats");
+        final TableConfig<Long, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartVLongSerializer());
+        final Set<Pair<Long, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 100; ++i) {
+            entries.add(new Pair(i, i * i));
+        }
+        TableWriter.write(table, config, entries);
+        try (final TableReader<Long, Long> reader = TableReader.open(table)) {
+            assertEquals(TableReader.StatsLevel.COUNTS, reader.getStatsLevel());
+            reader.setStatsLevel(TableReader.StatsLevel.NONE);
+            for (long i = 0; i < 200; ++i) {
+                reader.get(i);
+            }
+            assertEquals(0, reader.getStats().retrievedCount);
+            assertEquals(0, reader.getStats().filteredCount + reader.getStats().missingCount);
+            assertNull(reader.getStats().latencyCounts);
+            assertEquals(-1, reader.getStats().getLatencyPercentile(50));
+            reader.setStatsLevel(TableReader.StatsLevel.LATENCIES);
+            for (long i = 0; i < 200; ++i) {
+                assertEquals(i < 100 ? Long.valueOf(i * i) : null, reader.get(i));
+            }
+            final TableReader.TableStats stats = reader.getStats();
+            assertEquals(100, stats.retrievedCount);
+            assertEquals(100, stats.filteredCount + stats.missingCount);
+            long timed = 0;
+            for (final long count : stats.latencyCounts) {
+                timed += count;
+            }
+            assertEquals(200, timed);
+            assertTrue(stats.getLatencyPercentile(50) <= stats.getLatencyPercentile(99));
+            reader.setStatsLevel(TableReader.StatsLevel.COUNTS);
+            reader.get(0L);
+            assertEquals(101, reader.getStats().retrievedCount);
+        }
+    }
+
+    @Test
+    public void testContainsKeysOnly() throws Exception {
+        final File table = new File(tmpDir, "keysonly");
+        final TableConfig<String, Void> config =
+            new TableConfig()
+            .withKeySerializer(new SmartStringSerializer());
+        final Set<Pair<String, Void>> entries = new HashSet<>();
+        for (long i = 0; i < 100; ++i) {
+            entries.add(new Pair("key" + i, null));
+        }
+        TableWriter.write(table, config, entries);
+        try (final TableReader<String, Void> reader = TableReader.open(table)) {
+            for (long i = 0; i < 100; ++i) {
+                assertTrue(reader.containsKey("key" + i));
+                assertFalse(reader.containsKey("nokey" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testMphMapCursor() throws Exception {
+        final TableConfig<Long, Long> config = new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartLongSerializer());
+        final Map<Long, Long> entries = new HashMap<>();
+        for (long i = 0; i < 20; ++i) {
+            entries.put(i, i * i);
+        }
+        final MphMap<Long, Long> map = MphMap.fromMap(config, entries);
+        final TableCursor<Long, Long> cursor = map.newCursor();
+        for (long i = 0; i < 20; ++i) {
+            assertEquals(new Long(i * i), cursor.get(i));
+        }
+        assertEquals(null, cursor.get(21L));
+    }
+
+    public static class CountingLongSerializer extends SmartLongSerializer {
+        private static final long serialVersionUID = 1L;
+        static final AtomicInteger WRITES = new AtomicInteger();
+
+        @Override
+        public void write(@Nonnull final Long n, final DataOutput out) throws IOException {
+            WRITES.incrementAndGet();
+            super.write(n, out);
+        }
+    }
+
+    @Test
+    public void testProbeKeysSerializedOnce() throws Exception {
+        final File table = new File(tmpDir, "once");
+        final TableConfig<Long, Long> config =
+            new TableConfig()
+            .withKeySerializer(new CountingLongSerializer())
+            .withValueSerializer(new SmartLongSerializer());
+        final Set<Pair<Long, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 100; ++i) {
+            entries.add(new Pair(i << 40 | i, i));
+        }
+        TableWriter.write(table, config, entries);
+        try (final TableReader<Long, Long> reader = TableReader.open(table)) {
+            final TableCursor<Long, Long> cursor = reader.newCursor();
+            final Long[] keys = new Long[100];
+            CountingLongSerializer.WRITES.set(0);
+            for (long i = 0; i < 100; ++i) {
+                // byte-wise comparison of a stored key written little-endian
+                assertEquals(Long.valueOf(i), cursor.get(i << 40 | i));
+                assertEquals(LookupStatus.RETRIEVED, cursor.contains(i << 40 | i));
+                assertEquals(8, cursor.getValueSlice(i << 40 | i).length());
+                keys[(int) i] = i << 40 | i;
+            }
+            assertEquals(300, CountingLongSerializer.WRITES.get());
+            CountingLongSerializer.WRITES.set(0);
+            final Long[] values = new Long[100];
+            cursor.getAll(keys, values);
+            for (long i = 0; i < 100; ++i) {
+                assertEquals(Long.valueOf(i), values[(int) i]);
+            }
+            assertEquals(100, CountingLongSerializer.WRITES.get());
+        }
+    }
+}
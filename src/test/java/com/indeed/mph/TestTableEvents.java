@@ -0,0 +1,104 @@
+package com.indeed.mph;
+
+import com.indeed.mph.serializers.SmartLongSerializer;
+import com.indeed.util.core.Pair;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestTableEvents {
+
+    File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("tmptableevents", "", new File("."));
+        tmpDir.delete();
+        tmpDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        final File table = new File(tmpDir, "table");
+        final TableConfig<Long, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartLongSerializer())
+            .withOffsetStorage(TableConfig.OffsetStorage.SELECTED);
+        final Set<Pair<Long, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 1000; ++i) {
+            entries.add(new Pair(i, i * i));
+        }
+        // nothing is recorded outside a recording
+        TableWriter.write(table, config, entries);
+        final File output = new File(tmpDir, "events.jfr");
+        try (final Recording recording = new Recording()) {
+            recording.enable("com.indeed.mph.Lookup");
+            recording.enable("com.indeed.mph.Open");
+            recording.enable("com.indeed.mph.WritePhase");
+            recording.start();
+            TableWriter.write(new File(tmpDir, "table2"), config, entries);
+            try (final TableReader<Long, Long> reader = TableReader.open(table)) {
+                for (int i = 0; i < 3 * TableEvents.LOOKUP_SAMPLE_INTERVAL; ++i) {
+                    assertEquals(Long.valueOf((i % 1000) * (i % 1000)), reader.get((long) (i % 1000)));
+                }
+            }
+            recording.stop();
+            recording.dump(output.toPath());
+        }
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(output.toPath());
+        final Map<String, Integer> counts = new HashMap<>();
+        final Set<String> phases = new HashSet<>();
+        for (final RecordedEvent event : events) {
+            final String name = event.getEventType().getName();
+            counts.merge(name, 1, Integer::sum);
+            if ("com.indeed.mph.WritePhase".equals(name)) {
+                phases.add(event.getString("phase"));
+            } else if ("com.indeed.mph.Lookup".equals(name)) {
+                assertEquals("RETRIEVED", event.getString("status"));
+                assertEquals(16, event.getLong("bytesRead"));
+                assertTrue(event.getLong("hash") >= 0 && event.getLong("hash") < 1000);
+            } else if ("com.indeed.mph.Open".equals(name)) {
+                assertEquals(1000, event.getLong("entries"));
+                assertEquals("SELECTED", event.getString("offsetStorage"));
+            }
+        }
+        assertEquals(Integer.valueOf(3), counts.get("com.indeed.mph.Lookup"));
+        assertEquals(Integer.valueOf(1), counts.get("com.indeed.mph.Open"));
+        assertTrue(phases.contains("buildMph"));
+        assertTrue(phases.contains("splitToShards"));
+        assertTrue(phases.contains("rewriteShardsInOrder"));
+        assertTrue(phases.contains("sizesToSelect"));
+    }
+
+    @Test
+    public void testRegistrationFailure() throws Exception {
+        assertFalse(TableEvents.register(() -> {
+                    throw new SecurityException("no FlightRecorderPermission");
+                }));
+        assertFalse(TableEvents.register(() -> {
+                    throw new NoClassDefFoundError("jdk/jfr/FlightRecorder");
+                }));
+        assertTrue(TableEvents.register(() -> { }));
+    }
+}
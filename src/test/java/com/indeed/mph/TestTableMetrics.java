@@ -0,0 +1,178 @@
+package com.indeed.mph;
+
+import com.indeed.mph.serializers.SmartLongSerializer;
+import com.indeed.util.core.Pair;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestTableMetrics {
+
+    File tmpDir;
+    final List<String> events = new ArrayList<>();
+    final TableMetrics listener = new TableMetrics() {
+            @Override
+            public void opened(@Nonnull final MonitoredTable table) {
+                events.add("opened " + table.getClass().getSimpleName());
+            }
+            @Override
+            public void closed(@Nonnull final MonitoredTable table) {
+                events.add("closed " + table.getClass().getSimpleName());
+            }
+            @Override
+            public void written(@Nonnull final File outputDir, @Nonnull final TableMeta<?, ?> meta, final long elapsedMillis) {
+                events.add("written " + meta.numEntries());
+            }
+        };
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("tmptablemetrics", "", new File("."));
+        tmpDir.delete();
+        tmpDir.mkdirs();
+        TableMetricsRegistry.addListener(listener);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TableMetricsRegistry.removeListener(listener);
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private File writeTable() throws Exception {
+        final File table = new File(tmpDir, "table");
+        final TableConfig<Long, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartLongSerializer());
+        final Set<Pair<Long, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 100; ++i) {
+            entries.add(new Pair(i, i * i));
+        }
+        TableWriter.write(table, config, entries);
+        return table;
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        final File table = writeTable();
+        assertEquals("written 100", events.get(0));
+        events.clear();
+        final TableReader<Long, Long> reader = TableReader.open(table);
+        assertEquals(100, reader.getTableSize());
+        assertTrue(reader.getMappedBytes() + reader.getHeapBytes() >= reader.getMeta().getSizeInBytes() - 100 * 8);
+        assertTrue(reader.getHeapBytes() > 0);
+        try (final SharedTableReader<Long, Long> shared = new SharedTableReader<>(reader)) {
+            assertEquals(Long.valueOf(4), shared.get(2L));
+            assertEquals(1, shared.getStats().retrievedCount);
+            assertEquals(reader.getHeapBytes(), shared.getHeapBytes());
+        }
+        // closing the shared reader closed the reader, which doesn't report again
+        reader.close();
+        final MphMap<Long, Long> map = MphMap.<Long, Long>load(table).registerMetrics();
+        assertEquals(Long.valueOf(9), map.get(3L));
+        assertTrue(map.containsKey(4L));
+        assertEquals(2, map.getStats().retrievedCount);
+        assertTrue(map.getHeapBytes() >= new File(table, TableMeta.DEFAULT_DATA_PATH).length());
+        assertEquals(0, map.getMappedBytes());
+        map.unregisterMetrics();
+        map.unregisterMetrics();
+        // maps are only reported when asked
+        MphMap.load(table);
+        final List<String> expected = new ArrayList<>();
+        expected.add("opened TableReader");
+        // wrapping the reader moves its registration to the shared reader
+        expected.add("closed TableReader");
+        expected.add("opened SharedTableReader");
+        expected.add("closed SharedTableReader");
+        expected.add("opened MphMap");
+        expected.add("closed MphMap");
+        assertEquals(expected, events);
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        final File table = writeTable();
+        final MBeanServer server = MBeanServerFactory.newMBeanServer();
+        final JmxTableMetrics jmx = new JmxTableMetrics(server);
+        TableMetricsRegistry.addListener(jmx);
+        try {
+            final ObjectName name;
+            try (final TableReader<Long, Long> reader = TableReader.open(table)) {
+                reader.setStatsLevel(TableReader.StatsLevel.LATENCIES);
+                for (long i = 0; i < 200; ++i) {
+                    reader.get(i);
+                }
+                final Set<ObjectName> names = server.queryNames(new ObjectName(JmxTableMetrics.DOMAIN + ":type=TableReader,*"), null);
+                assertEquals(1, names.size());
+                name = names.iterator().next();
+                assertEquals(100L, server.getAttribute(name, "RetrievedCount"));
+                assertEquals(200L, server.getAttribute(name, "LookupCount"));
+                assertEquals(0.5, (Double) server.getAttribute(name, "HitRatio"), 1e-9);
+                assertEquals(100L, server.getAttribute(name, "TableSize"));
+                assertTrue((Long) server.getAttribute(name, "LatencyP99Nanos") >= 0);
+                assertTrue((Long) server.getAttribute(name, "HeapBytes") > 0);
+            }
+            assertFalse(server.isRegistered(name));
+            // a shared reader is registered once, not also as the reader it wraps
+            try (final SharedTableReader<Long, Long> shared = SharedTableReader.open(table)) {
+                assertEquals(1, server.queryNames(new ObjectName(JmxTableMetrics.DOMAIN + ":*"), null).size());
+                assertEquals(1, server.queryNames(new ObjectName(JmxTableMetrics.DOMAIN + ":type=SharedTableReader,*"), null).size());
+            }
+            assertEquals(0, server.queryNames(new ObjectName(JmxTableMetrics.DOMAIN + ":*"), null).size());
+        } finally {
+            TableMetricsRegistry.removeListener(jmx);
+        }
+    }
+
+    @Test
+    public void testClosedSharedReader() throws Exception {
+        final SharedTableReader<Long, Long> shared = SharedTableReader.open(writeTable());
+        final JmxTableMetrics.Table bean = new JmxTableMetrics.Table(shared);
+        assertEquals(100L, bean.getTableSize());
+        assertTrue(bean.getTimestamp() > 0);
+        shared.close();
+        // a scrape racing close sees an empty table rather than failing
+        assertEquals(0L, bean.getTableSize());
+        assertEquals(0L, bean.getTimestamp());
+        assertEquals(0L, bean.getLookupCount());
+        assertEquals(0L, shared.size());
+        assertEquals(0L, shared.getSizeInBytes());
+        shared.setStatsLevel(TableReader.StatsLevel.LATENCIES);
+        shared.setKeySampler(null);
+    }
+
+    @Test
+    public void testLookupRateWindow() throws Exception {
+        try (final TableReader<Long, Long> reader = TableReader.open(writeTable())) {
+            final JmxTableMetrics.Table bean = new JmxTableMetrics.Table(reader);
+            final long start = System.nanoTime();
+            final long second = 1000000000L;
+            // reads by several clients within a window all see the rate since open
+            assertEquals(10.0, bean.getLookupRate(start + 10 * second, 100), 0.1);
+            assertEquals(10.0, bean.getLookupRate(start + 10 * second, 100), 0.1);
+            assertEquals(20.0, bean.getLookupRate(start + 20 * second, 400), 0.1);
+            // a new window starts, but the rate still covers the previous one
+            final long windowEnd = start + JmxTableMetrics.RATE_WINDOW_NANOS;
+            assertEquals(600.0 / 60, bean.getLookupRate(windowEnd, 600), 0.1);
+            assertEquals(600.0 / 60, bean.getLookupRate(windowEnd, 600), 0.1);
+            // and then only the previous window onwards
+            assertEquals(600.0 / 60, bean.getLookupRate(windowEnd + 60 * second, 1200), 0.1);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.indeed.mph;
+
+import com.indeed.mph.serializers.SmartLongSerializer;
+import com.indeed.mph.serializers.SmartStringSerializer;
+import com.indeed.util.core.Pair;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestTableSplit {
+
+    File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("tmptablesplit", "", new File("."));
+        tmpDir.delete();
+        tmpDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    @Test
+    public void testSplits() throws Exception {
+        final TableConfig.OffsetStorage[] storages = {
+            TableConfig.OffsetStorage.SELECTED, TableConfig.OffsetStorage.ELIAS_FANO, TableConfig.OffsetStorage.INDEXED,
+        };
+        final Random random = new Random(7);
+        final Set<Pair<Long, String>> entries = new HashSet<>();
+        for (long i = 0; i < 3000; ++i) {
+            // a few large entries to make splits by count unbalanced by bytes
+            final int len = random.nextInt(20) == 0 ? 1000 : random.nextInt(10);
+            final StringBuilder value = new StringBuilder();
+            for (int j = 0; j < len; ++j) {
+                value.append((char) ('a' + random.nextInt(26)));
+            }
+            entries.add(new Pair(i, value.toString()));
+        }
+        for (final TableConfig.OffsetStorage storage : storages) {
+            final File table = new File(tmpDir, "split" + storage);
+            final TableConfig<Long, String> config =
+                new TableConfig()
+                .withKeySerializer(new SmartLongSerializer())
+                .withValueSerializer(new SmartStringSerializer())
+                .withOffsetStorage(storage);
+            TableWriter.write(table, config, entries);
+            try (final TableReader<Long, String> reader = TableReader.open(table)) {
+                final long dataSize = reader.getMeta().getDataPath().length();
+                final List<TableSplit> splits = reader.getSplits(7);
+                assertEquals(7, splits.size());
+                final Set<Pair<Long, String>> extracted = new HashSet<>();
+                long expectedStart = 0;
+                for (final TableSplit split : splits) {
+                    final TableSplit copy = TestMphMap.roundTrip(split);
+                    assertEquals(expectedStart, copy.getStart());
+                    expectedStart = copy.getEnd();
+                    if (config.getOffsetStorage().equals(TableConfig.OffsetStorage.INDEXED)) {
+                        assertEquals(-1, copy.getLength());
+                        assertTrue(Math.abs(copy.size() - entries.size() / 7) <= 1);
+                    } else {
+                        // balanced to within the largest entry
+                        assertTrue(copy.toString(), Math.abs(copy.getLength() - dataSize / 7) < 1100);
+                    }
+                    long count = 0;
+                    for (final Iterator<Pair<Long, String>> iter = reader.iterator(copy); iter.hasNext(); ++count) {
+                        assertTrue(extracted.add(iter.next()));
+                    }
+                    assertEquals(copy.size(), count);
+                    final TableScanner<Long, String> scanner = reader.newScanner(copy);
+                    for (long hash = copy.getStart(); hash < copy.getEnd(); ++hash) {
+                        assertTrue(scanner.advance());
+                        if (copy.getStartOffset() >= 0 && hash == copy.getStart()) {
+                            assertEquals(copy.getStartOffset(), scanner.getKeyOffset());
+                        }
+                    }
+                }
+                assertEquals(entries.size(), expectedStart);
+                assertEquals(entries, extracted);
+                assertEquals(entries.size(), reader.getSplits(5000).stream().mapToLong(TableSplit::size).sum());
+            }
+        }
+    }
+
+    @Test
+    public void testSplitFromOtherTable() throws Exception {
+        final TableConfig<Long, String> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartStringSerializer());
+        final Set<Pair<Long, String>> entries = new HashSet<>();
+        for (long i = 0; i < 100; ++i) {
+            entries.add(new Pair(i, "value" + i));
+        }
+        final File table1 = new File(tmpDir, "table1");
+        final File table2 = new File(tmpDir, "table2");
+        TableWriter.write(table1, config, entries);
+        entries.add(new Pair(100L, "value100"));
+        TableWriter.write(table2, config, entries);
+        try (final TableReader<Long, String> reader1 = TableReader.open(table1);
+             final TableReader<Long, String> reader2 = TableReader.open(table2)) {
+            final TableSplit split = reader1.getSplits(2).get(0);
+            try {
+                reader2.newScanner(split);
+                fail("expected split to be rejected");
+            } catch (final IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.indeed.mph;
+
+import com.indeed.mph.serializers.SmartLongSerializer;
+import com.indeed.mph.serializers.SmartStringSerializer;
+import com.indeed.util.core.Pair;
+import com.indeed.util.mmap.Memory;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestTableWarmup {
+
+    File tmpDir;
+    File table;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("tmptablewarmup", "", new File("."));
+        tmpDir.delete();
+        tmpDir.mkdirs();
+        table = new File(tmpDir, "table");
+        final TableConfig<Long, String> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartStringSerializer())
+            .withOffsetStorage(TableConfig.OffsetStorage.INDEXED);
+        final Set<Pair<Long, String>> entries = new HashSet<>();
+        for (long i = 0; i < 5000; ++i) {
+            entries.add(new Pair(i, "value " + i));
+        }
+        TableWriter.write(table, config, entries);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    @Test
+    public void testSyncWarmup() throws Exception {
+        final AtomicLong lastWarmed = new AtomicLong();
+        final AtomicLong lastTotal = new AtomicLong();
+        final TableWarmup warmup = new TableWarmup()
+            .withThreads(3)
+            .withChunkSize(1)
+            .withProgressListener((warmed, total) -> {
+                    lastWarmed.accumulateAndGet(warmed, Math::max);
+                    lastTotal.set(total);
+                });
+        assertEquals(TableWarmup.PAGE_SIZE, warmup.getChunkSize());
+        try (final TableReader<Long, String> reader = TableReader.open(table, warmup)) {
+            assertTrue(reader.getWarmup().isDone());
+            assertEquals(1.0, reader.getWarmupProgress(), 0.0);
+            final long mapped = new File(table, TableMeta.DEFAULT_DATA_PATH).length() +
+                new File(table, TableMeta.DEFAULT_OFFSETS_PATH).length();
+            assertEquals(mapped, lastTotal.get());
+            assertEquals(mapped, lastWarmed.get());
+            assertEquals("value 42", reader.get(42L));
+        }
+        try (final SharedTableReader<Long, String> reader = SharedTableReader.open(table, warmup.withAsync(true))) {
+            reader.getWarmup().get(10, TimeUnit.SECONDS);
+            assertEquals("value 43", reader.get(43L));
+        }
+    }
+
+    @Test
+    public void testAsyncWarmup() throws Exception {
+        // the warming threads park in the listener until released
+        final CountDownLatch release = new CountDownLatch(1);
+        final TableWarmup parked = new TableWarmup()
+            .withThreads(2)
+            .withChunkSize(TableWarmup.PAGE_SIZE)
+            .withAsync(true)
+            .withProgressListener((warmed, total) -> {
+                    try {
+                        release.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        final TableReader<Long, String> reader = TableReader.open(table, parked);
+        final CompletableFuture<Void> future = reader.getWarmup();
+        assertEquals("value 7", reader.get(7L));
+        assertTrue(reader.getWarmupProgress() < 1.0);
+        assertFalse(future.isDone());
+        // closing cancels the warmup before unmapping, waiting for the threads to stop
+        final Thread closer = new Thread(() -> {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        closer.start();
+        while (closer.isAlive() && closer.getState() != Thread.State.WAITING) {
+            Thread.yield();
+        }
+        assertFalse(future.isDone());
+        release.countDown();
+        closer.join();
+        assertTrue(future.isDone());
+        try {
+            future.get();
+            fail("expected cancellation");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        // an unlimited one finishes
+        try (final TableReader<Long, String> fast = TableReader.open(table, parked.withProgressListener(null))) {
+            fast.getWarmup().get(10, TimeUnit.SECONDS);
+            assertEquals(1.0, fast.getWarmupProgress(), 0.0);
+        }
+    }
+
+    @Test
+    public void testThrottledWarmup() throws Exception {
+        // at 100 pages a second, the last page can't be touched before (pages - 1) * 10ms
+        final TableWarmup throttled = new TableWarmup()
+            .withThreads(2)
+            .withChunkSize(TableWarmup.PAGE_SIZE)
+            .withBytesPerSecond(TableWarmup.PAGE_SIZE * 100);
+        try (final TableReader<Long, String> reader = TableReader.open(table, (TableWarmup) null)) {
+            final long bytes = reader.getMappedRegions().stream().mapToLong(Memory::length).sum();
+            final long pages = (bytes + TableWarmup.PAGE_SIZE - 1) / TableWarmup.PAGE_SIZE;
+            final long start = System.nanoTime();
+            reader.warm(throttled);
+            assertTrue(System.nanoTime() - start >= (pages - 1) * 10000000L);
+            assertEquals(1.0, reader.getWarmupProgress(), 0.0);
+        }
+    }
+
+    @Test
+    public void testWarmRacesClose() throws Exception {
+        final TableWarmup slow = new TableWarmup()
+            .withThreads(2)
+            .withChunkSize(TableWarmup.PAGE_SIZE)
+            .withBytesPerSecond(TableWarmup.PAGE_SIZE * 100)
+            .withAsync(true);
+        for (int i = 0; i < 20; ++i) {
+            final TableReader<Long, String> reader = TableReader.open(table, (TableWarmup) null);
+            final CountDownLatch started = new CountDownLatch(1);
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            final Thread warmer = new Thread(() -> {
+                    started.countDown();
+                    try {
+                        while (true) {
+                            reader.warm(slow);
+                        }
+                    } catch (final IllegalStateException e) {
+                        // closed
+                    } catch (final Throwable e) {
+                        failure.set(e);
+                    }
+                });
+            warmer.start();
+            started.await();
+            reader.close();
+            // once close returns no warmup may still be touching the memory
+            assertTrue(reader.getWarmup().isDone());
+            warmer.join();
+            assertNull(failure.get());
+            assertTrue(reader.getWarmup().isDone());
+            try {
+                reader.warm(slow);
+                fail("expected closed");
+            } catch (final IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+}
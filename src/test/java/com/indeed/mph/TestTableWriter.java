@@ -10,14 +10,20 @@ import com.indeed.mph.serializers.SmartLongSerializer;
 import com.indeed.mph.serializers.SmartStringSerializer;
 import com.indeed.mph.serializers.SmartVLongSerializer;
 import com.indeed.util.core.Pair;
+import com.indeed.util.mmap.MemoryDataInput;
+import it.unimi.dsi.bits.BitVector;
+import it.unimi.dsi.sux4j.mph.Hashes;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -26,10 +32,14 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.Set;
+import java.util.stream.Collectors;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TestTableWriter {
 
@@ -47,6 +57,37 @@ public class TestTableWriter {
         FileUtils.deleteDirectory(tmpDir);
     }
 
+    @Test
+    public void testTransformationStrategyMatchesBytes() throws Exception {
+        final SmartStringSerializer serializer = new SmartStringSerializer();
+        final TableWriter.SerializerTransformationStrategy<String> strategy =
+            new TableWriter.SerializerTransformationStrategy<>(serializer);
+        final Random random = new Random(5);
+        final long[] expected = new long[3];
+        final long[] actual = new long[3];
+        for (int i = 0; i < 1000; ++i) {
+            final StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(40); j > 0; --j) {
+                sb.append((char) random.nextInt(0x3000));
+            }
+            final String key = sb.toString();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            serializer.write(key, new DataOutputStream(bytes));
+            final BitVector reference = new ByteArrayBitVector(bytes.toByteArray());
+            final BitVector bits = strategy.toBitVector(key);
+            assertEquals(reference.length(), bits.length());
+            assertEquals(reference.length(), strategy.length(key));
+            for (int k = 0; k < 10 && bits.length() > 0; ++k) {
+                final long from = (long) (random.nextDouble() * bits.length());
+                final long to = Math.min(bits.length(), from + random.nextInt(65));
+                assertEquals(reference.getLong(from, to), bits.getLong(from, to));
+            }
+            Hashes.spooky4(reference, 42L, expected);
+            Hashes.spooky4(bits, 42L, actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
     @Test
     public void testDups() throws Exception {
         final File table = new File(tmpDir, "dups");
@@ -599,6 +640,255 @@ public class TestTableWriter {
         }
     }
 
+    @Test
+    public void testWriteEliasFano() throws Exception {
+        final File eliasFanoTable = new File(tmpDir, "eliasfano");
+        final TableConfig<Long, String> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartStringSerializer())
+            .withOffsetStorage(TableConfig.OffsetStorage.ELIAS_FANO);
+        final Random random = new Random(3);
+        final Set<Pair<Long, String>> entries = new HashSet<>();
+        for (long i = 0; i < 2000; ++i) {
+            final StringBuilder value = new StringBuilder();
+            for (int len = random.nextInt(4) == 0 ? random.nextInt(500) : random.nextInt(4); len > 0; --len) {
+                value.append((char) ('a' + random.nextInt(26)));
+            }
+            entries.add(new Pair(i, value.toString()));
+        }
+        TableWriter.write(eliasFanoTable, config, entries);
+        try (final TableReader<Long, String> reader = TableReader.open(eliasFanoTable)) {
+            assertEquals(TableConfig.OffsetStorage.ELIAS_FANO, reader.getConfig().getOffsetStorage());
+            for (final Pair<Long, String> e : entries) {
+                assertEquals(e.getSecond(), reader.get(e.getFirst()));
+            }
+            assertEquals(null, reader.get(2001L));
+            final Set<Pair<Long, String>> extracted = new HashSet<>();
+            for (final Pair<Long, String> e : reader) {
+                extracted.add(e);
+            }
+            assertEquals(entries, extracted);
+            final long dataSize = reader.getMeta().getDataPath().length();
+            assertTrue(reader.getMeta().getOffsetsPath().length() < config.getIndexedOffsetSize(entries.size(), dataSize));
+            assertEquals(dataSize + reader.getMeta().getOffsetsPath().length(), reader.getSizeInBytes());
+        }
+        final MphMap<Long, String> map = TestMphMap.roundTrip(MphMap.<Long, String>load(eliasFanoTable));
+        for (final Pair<Long, String> e : entries) {
+            assertEquals(e.getSecond(), map.get(e.getFirst()));
+        }
+    }
+
+    @Test
+    public void testWriteBlockDelta() throws Exception {
+        final File blockDeltaTable = new File(tmpDir, "blockdelta");
+        final TableConfig<Long, String> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartStringSerializer())
+            .withOffsetStorage(TableConfig.OffsetStorage.BLOCK_DELTA);
+        final Random random = new Random(5);
+        final Set<Pair<Long, String>> entries = new HashSet<>();
+        for (long i = 0; i < 5000; ++i) {
+            final StringBuilder value = new StringBuilder();
+            for (int len = random.nextInt(40); len > 0; --len) {
+                value.append((char) ('a' + random.nextInt(26)));
+            }
+            entries.add(new Pair(i * 3, value.toString()));
+        }
+        TableWriter.write(blockDeltaTable, config, entries);
+        try (final TableReader<Long, String> reader = TableReader.open(blockDeltaTable)) {
+            assertEquals(TableConfig.OffsetStorage.BLOCK_DELTA, reader.getConfig().getOffsetStorage());
+            for (final Pair<Long, String> e : entries) {
+                assertEquals(e.getSecond(), reader.get(e.getFirst()));
+            }
+            assertEquals(null, reader.get(1L));
+            final Set<Pair<Long, String>> extracted = new HashSet<>();
+            for (final Pair<Long, String> e : reader) {
+                extracted.add(e);
+            }
+            assertEquals(entries, extracted);
+            // under 2 bytes per entry versus 4 for indexed
+            assertTrue(reader.getMeta().getOffsetsPath().length() < 2 * entries.size());
+        }
+        final MphMap<Long, String> map = TestMphMap.roundTrip(MphMap.<Long, String>load(blockDeltaTable));
+        for (final Pair<Long, String> e : entries) {
+            assertEquals(e.getSecond(), map.get(e.getFirst()));
+        }
+    }
+
+    @Test
+    public void testWriteInlined() throws Exception {
+        final File inlinedTable = new File(tmpDir, "inlined");
+        final TableConfig<Long, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartVLongSerializer())
+            .withKeyStorage(TableConfig.KeyStorage.IMPLICIT)
+            .withSignatureWidth(32)
+            .withOffsetStorage(TableConfig.OffsetStorage.INLINED);
+        final Set<Pair<Long, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 1000; ++i) {
+            entries.add(new Pair(i * 5, i % 10 == 0 ? Long.MAX_VALUE - i : i % 100));
+        }
+        TableWriter.write(inlinedTable, config, entries);
+        try (final TableReader<Long, Long> reader = TableReader.open(inlinedTable)) {
+            assertEquals(TableConfig.OffsetStorage.INLINED, reader.getConfig().getOffsetStorage());
+            for (final Pair<Long, Long> e : entries) {
+                assertEquals(e.getSecond(), reader.get(e.getFirst()));
+            }
+        }
+        try (final TableReader<Long, Long> reader = TableReader.open(inlinedTable, 0L)) {
+            final LongLongTableReader longReader = new LongLongTableReader(reader);
+            for (final Pair<Long, Long> e : entries) {
+                assertEquals(e.getSecond().longValue(), longReader.getLong(e.getFirst(), -1L));
+            }
+        }
+        final MphMap<Long, Long> map = TestMphMap.roundTrip(MphMap.<Long, Long>load(inlinedTable));
+        for (final Pair<Long, Long> e : entries) {
+            assertEquals(e.getSecond(), map.get(e.getFirst()));
+        }
+    }
+
+    @Test
+    public void testWriteInlinedExplicit() throws Exception {
+        final File inlinedTable = new File(tmpDir, "inlinedexplicit");
+        final TableConfig<String, String> config =
+            new TableConfig()
+            .withKeySerializer(new SmartStringSerializer())
+            .withValueSerializer(new SmartStringSerializer())
+            .withOffsetStorage(TableConfig.OffsetStorage.INLINED);
+        final Set<Pair<String, String>> entries = new HashSet<>();
+        for (int i = 0; i < 500; ++i) {
+            entries.add(new Pair(Integer.toString(i), i % 7 == 0 ? "" : Integer.toString(i)));
+        }
+        entries.add(new Pair("a", "x"));
+        entries.add(new Pair("b", "a much longer value which can't be inlined"));
+        TableWriter.write(inlinedTable, config, entries);
+        try (final TableReader<String, String> reader = TableReader.open(inlinedTable)) {
+            assertEquals(TableConfig.OffsetStorage.INLINED, reader.getConfig().getOffsetStorage());
+            for (final Pair<String, String> e : entries) {
+                assertEquals(e.getSecond(), reader.get(e.getFirst()));
+            }
+            assertEquals(null, reader.get("missing"));
+            assertEquals(new File(inlinedTable, TableMeta.DEFAULT_DATA_PATH).length(), reader.getSizeInBytes());
+            final Set<Pair<String, String>> extracted = new HashSet<>();
+            for (final Pair<String, String> e : reader) {
+                extracted.add(e);
+            }
+            assertEquals(entries, extracted);
+            assertEquals("x", config.getValueSerializer().read(new MemoryDataInput(reader.getValueSlice("a"))));
+        }
+    }
+
+    // a serializer whose sizeOf overstates the real encoding
+    private static class OversizedStringSerializer extends SmartStringSerializer {
+        @Override
+        public long sizeOf(final String s) throws IOException {
+            return super.sizeOf(s) + 1;
+        }
+    }
+
+    @Test
+    public void testTransformLengthIgnoresSizeOf() throws Exception {
+        final TableWriter.SerializerTransformationStrategy<String> strategy =
+            new TableWriter.SerializerTransformationStrategy<>(new OversizedStringSerializer());
+        // a 1 byte length followed by the 5 bytes
+        assertEquals(6 * 8, strategy.length("hello"));
+    }
+
+    private static class CountingStringSerializer extends SmartStringSerializer {
+        int writes;
+
+        @Override
+        public void write(@Nonnull final String s, final DataOutput out) throws IOException {
+            ++writes;
+            super.write(s, out);
+        }
+    }
+
+    private static BitVector stringBits(final String s) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new SmartStringSerializer().write(s, new DataOutputStream(bytes));
+        return new ByteArrayBitVector(bytes.toByteArray());
+    }
+
+    @Test
+    public void testTransformLengthSerializesOnce() throws Exception {
+        final CountingStringSerializer serializer = new CountingStringSerializer();
+        final TableWriter.SerializerTransformationStrategy<String> strategy =
+            new TableWriter.SerializerTransformationStrategy<>(serializer);
+        final String key = "hello";
+        final BitVector expected = stringBits(key);
+        assertEquals(expected.length(), strategy.length(key));
+        assertEquals(expected, strategy.toBitVector(key));
+        assertEquals(1, serializer.writes);
+        // only the call directly following length reuses the bytes
+        assertEquals(expected, strategy.toBitVector(key));
+        assertEquals(2, serializer.writes);
+        strategy.length(key);
+        assertEquals(stringBits("world"), strategy.toBitVector("world"));
+        assertEquals(expected, strategy.toBitVector(key));
+        assertEquals(5, serializer.writes);
+    }
+
+    @Test
+    public void testWriteInlinedSizeMismatch() throws Exception {
+        final File inlinedTable = new File(tmpDir, "inlinedmismatch");
+        final TableConfig<String, String> config =
+            new TableConfig()
+            .withKeySerializer(new SmartStringSerializer())
+            .withValueSerializer(new OversizedStringSerializer())
+            .withOffsetStorage(TableConfig.OffsetStorage.INLINED);
+        final Set<Pair<String, String>> entries = new HashSet<>();
+        for (int i = 0; i < 100; ++i) {
+            entries.add(new Pair(Integer.toString(i), Integer.toString(i)));
+        }
+        try {
+            TableWriter.write(inlinedTable, config, entries);
+            fail("expected the size mismatch to be detected");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains("sizeOf"));
+        }
+    }
+
+    @Test
+    public void testWriteFingerprints() throws Exception {
+        for (final int width : new int[] {8, 16}) {
+            final File table = new File(tmpDir, "fingerprints" + width);
+            final TableConfig<String, Long> config =
+                new TableConfig()
+                .withKeySerializer(new SmartStringSerializer())
+                .withValueSerializer(new SmartVLongSerializer())
+                .withFingerprintWidth(width);
+            final Set<Pair<String, Long>> entries = new HashSet<>();
+            for (long i = 0; i < 1000; ++i) {
+                entries.add(new Pair("key" + i, i));
+            }
+            TableWriter.write(table, config, entries);
+            assertTrue(new File(table, TableMeta.DEFAULT_FINGERPRINTS_PATH).exists());
+            try (final TableReader<String, Long> reader = TableReader.open(table)) {
+                for (long i = 0; i < 1000; ++i) {
+                    assertEquals(new Long(i), reader.get("key" + i));
+                    assertTrue(reader.getOffset("key" + i) >= 0);
+                }
+                for (long i = 0; i < 10000; ++i) {
+                    assertEquals(null, reader.get("nokey" + i));
+                }
+                // all but about 1 in 2^width misses are rejected before reading the data
+                final TableReader.TableStats stats = reader.getStats();
+                assertEquals(1000, stats.retrievedCount);
+                assertEquals(10000, stats.filteredCount + stats.missingCount);
+                assertTrue(stats.missingCount <= (width == 8 ? 200 : 10));
+            }
+            final MphMap<String, Long> map = TestMphMap.roundTrip(MphMap.<String, Long>load(table));
+            for (long i = 0; i < 1000; ++i) {
+                assertEquals(new Long(i), map.get("key" + i));
+                assertEquals(null, map.get("nokey" + i));
+            }
+        }
+    }
+
     @Test
     public void testWriteHeapData() throws Exception {
         final File heapTable = new File(tmpDir, "heapdata");
@@ -668,6 +958,53 @@ public class TestTableWriter {
         }
     }
 
+    @Test
+    public void testStreams() throws Exception {
+        final TableConfig.OffsetStorage[] storages = {
+            TableConfig.OffsetStorage.INDEXED, TableConfig.OffsetStorage.SELECTED,
+            TableConfig.OffsetStorage.ELIAS_FANO, TableConfig.OffsetStorage.BLOCK_DELTA,
+            TableConfig.OffsetStorage.INLINED,
+        };
+        final Set<Pair<Long, String>> entries = new HashSet<>();
+        for (long i = 0; i < 10000; ++i) {
+            entries.add(new Pair(i, "value" + (i % 97)));
+        }
+        for (final TableConfig.OffsetStorage storage : storages) {
+            final File table = new File(tmpDir, "stream" + storage);
+            final TableConfig<Long, String> config =
+                new TableConfig()
+                .withKeySerializer(new SmartLongSerializer())
+                .withValueSerializer(new SmartStringSerializer())
+                .withOffsetStorage(storage);
+            TableWriter.write(table, config, entries);
+            try (final TableReader<Long, String> reader = TableReader.open(table)) {
+                assertEquals(entries, reader.stream().collect(Collectors.toSet()));
+                // the sequential scan crosses several verification points
+                final List<Pair<Long, String>> scanned = new ArrayList<>();
+                for (final Pair<Long, String> e : reader) {
+                    scanned.add(e);
+                }
+                assertEquals(entries.size(), scanned.size());
+                for (int i = 0; i < scanned.size(); i += 997) {
+                    assertEquals(i, reader.getHash(scanned.get(i).getFirst()));
+                }
+                assertEquals(entries, reader.parallelStream().collect(Collectors.toSet()));
+                assertEquals(entries.stream().mapToLong(Pair::getFirst).sum(),
+                             reader.parallelStream().mapToLong(Pair::getFirst).sum());
+                // splits partition the hash range
+                final TableSpliterator<Long, String, Pair<Long, String>> spliterator = reader.spliterator();
+                final TableSpliterator<Long, String, Pair<Long, String>> prefix =
+                    (TableSpliterator<Long, String, Pair<Long, String>>) spliterator.trySplit();
+                assertEquals(0, prefix.getStart());
+                assertEquals(prefix.getEnd(), spliterator.getStart());
+                assertEquals(entries.size(), prefix.estimateSize() + spliterator.estimateSize());
+            }
+            final MphMap<Long, String> map = MphMap.load(table);
+            assertEquals(entries.size(), map.parallelStream().count());
+            assertEquals(entries.stream().map(Pair::getFirst).collect(Collectors.toSet()), map.keySet());
+        }
+    }
+
     @Ignore("requires >10G disk space and takes >10 minutes to run")
     @Test
     public void test4GigBarrier() throws Exception {
@@ -0,0 +1,144 @@
+package com.indeed.mph;
+
+import com.indeed.mph.serializers.SmartLongSerializer;
+import com.indeed.mph.serializers.SmartStringSerializer;
+import com.indeed.mph.serializers.SmartVLongSerializer;
+import com.indeed.util.core.Pair;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestXorFilter {
+
+    File tmpDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = File.createTempFile("tmpxorfilter", "", new File("."));
+        tmpDir.delete();
+        tmpDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        for (final int size : new int[] {0, 1, 10, 100000}) {
+            final Random random = new Random(size);
+            final long[] keys = new long[size];
+            final Set<Long> keySet = new HashSet<>();
+            for (int i = 0; i < size; ++i) {
+                keys[i] = random.nextLong();
+                keySet.add(keys[i]);
+            }
+            final File path = new File(tmpDir, "filter" + size + ".bin");
+            XorFilter.writeTo(keys.clone(), path);
+            try (final XorFilter filter = XorFilter.open(path)) {
+                assertEquals(keySet.size(), filter.numKeys());
+                for (final long key : keys) {
+                    assertTrue(filter.mayContain(key));
+                }
+                int falsePositives = 0;
+                for (int i = 0; i < 100000; ++i) {
+                    final long key = random.nextLong();
+                    if (!keySet.contains(key) && filter.mayContain(key)) {
+                        ++falsePositives;
+                    }
+                }
+                // expect about 1/256
+                assertTrue("false positives: " + falsePositives, falsePositives < 600);
+                if (size >= 100000) {
+                    assertTrue(filter.length() * 8.0 / size < 11.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDuplicates() throws Exception {
+        final File path = new File(tmpDir, "dups.bin");
+        XorFilter.writeTo(new long[] {5, 7, 5, 5, 7}, path);
+        try (final XorFilter filter = XorFilter.open(path)) {
+            assertEquals(2, filter.numKeys());
+            assertTrue(filter.mayContain(5));
+            assertTrue(filter.mayContain(7));
+        }
+    }
+
+    @Test
+    public void testTableWithFilter() throws Exception {
+        final File table = new File(tmpDir, "table");
+        final TableConfig<String, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartStringSerializer())
+            .withValueSerializer(new SmartVLongSerializer())
+            .withKeyFilter(true);
+        final Set<Pair<String, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 2000; ++i) {
+            entries.add(new Pair("key" + i, i));
+        }
+        TableWriter.write(table, config, entries);
+        assertTrue(new File(table, TableMeta.DEFAULT_FILTER_PATH).exists());
+        try (final TableReader<String, Long> reader = TableReader.open(table)) {
+            for (long i = 0; i < 2000; ++i) {
+                assertEquals(new Long(i), reader.get("key" + i));
+                assertTrue(reader.containsKey("key" + i));
+            }
+            for (long i = 0; i < 10000; ++i) {
+                assertNull(reader.get("nokey" + i));
+                assertFalse(reader.containsKey("nokey" + i));
+            }
+            // containsKey validates with get, so each key was looked up twice
+            final TableReader.TableStats stats = reader.getStats();
+            assertEquals(4000, stats.retrievedCount);
+            assertEquals(20000, stats.filteredCount + stats.missingCount);
+            assertTrue(stats.missingCount < 200);
+        }
+        final MphMap<String, Long> map = TestMphMap.roundTrip(MphMap.<String, Long>load(table));
+        for (long i = 0; i < 2000; ++i) {
+            assertEquals(new Long(i), map.get("key" + i));
+            assertNull(map.get("nokey" + i));
+        }
+    }
+
+    @Test
+    public void testLongTableWithFilter() throws Exception {
+        final File table = new File(tmpDir, "longs");
+        final TableConfig<Long, Long> config =
+            new TableConfig()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(new SmartLongSerializer())
+            .withKeyStorage(TableConfig.KeyStorage.IMPLICIT)
+            .withKeyFilter(true);
+        final Set<Pair<Long, Long>> entries = new HashSet<>();
+        for (long i = 0; i < 2000; ++i) {
+            entries.add(new Pair(i * 3, i));
+        }
+        TableWriter.write(table, config, entries);
+        try (final LongLongTableReader reader = LongLongTableReader.open(table)) {
+            int falsePositives = 0;
+            for (long i = 0; i < 6000; ++i) {
+                if (i % 3 == 0) {
+                    assertEquals(i / 3, reader.getLong(i, -1L));
+                } else if (reader.containsKey(i)) {
+                    ++falsePositives;
+                }
+            }
+            assertTrue("false positives: " + falsePositives, falsePositives < 50);
+        }
+    }
+}
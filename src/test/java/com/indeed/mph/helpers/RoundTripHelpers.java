@@ -27,6 +27,19 @@ public class RoundTripHelpers {
 
     public static <T> void assertRoundTrip(final SmartSerializer<T> serializer, final T value) throws IOException {
         assertEquals(value, roundTrip(serializer, value));
+        assertSkip(serializer, value);
+    }
+
+    public static <T> void assertSkip(final SmartSerializer<T> serializer, final T value) throws IOException {
+        final ByteArrayOutputStream outBuf = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(outBuf);
+        serializer.write(value, out);
+        serializer.write(value, out);
+        out.writeByte(42);
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(outBuf.toByteArray()));
+        serializer.skip(in, 2);
+        assertEquals(42, in.read());
+        assertEquals(-1, in.read());
     }
 
     public static <T> void assertParseRoundTrip(final SmartSerializer<T> serializer, final String s) throws IOException {
@@ -0,0 +1,48 @@
+package com.indeed.mph.helpers;
+
+import com.indeed.mph.SmartSerializer;
+import com.indeed.mph.TableConfig;
+import com.indeed.mph.TableWriter;
+import com.indeed.mph.serializers.SmartLongSerializer;
+import com.indeed.util.core.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.LongFunction;
+
+public class TableVersionHelpers {
+    private TableVersionHelpers() {
+        // Intentionally left blank
+    }
+
+    /**
+     * Writes a version of a table for tests of reloading and warming,
+     * mapping each long key i below numKeys to value(i).
+     *
+     * @param parent          the directory to write the version under
+     * @param name            the version's path relative to parent
+     * @param valueSerializer the value serializer
+     * @param numKeys         the number of keys
+     * @param value           the value for each key
+     * @return the table directory
+     */
+    public static <V> File writeVersion(final File parent,
+                                        final String name,
+                                        final SmartSerializer<V> valueSerializer,
+                                        final long numKeys,
+                                        final LongFunction<V> value) throws IOException {
+        final File dir = new File(parent, name);
+        final TableConfig<Long, V> config =
+            new TableConfig<Long, V>()
+            .withKeySerializer(new SmartLongSerializer())
+            .withValueSerializer(valueSerializer);
+        final Set<Pair<Long, V>> entries = new HashSet<>();
+        for (long i = 0; i < numKeys; ++i) {
+            entries.add(new Pair<>(i, value.apply(i)));
+        }
+        TableWriter.write(dir, config, entries);
+        return dir;
+    }
+}
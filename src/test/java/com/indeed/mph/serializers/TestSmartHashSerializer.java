@@ -0,0 +1,48 @@
+package com.indeed.mph.serializers;
+
+import com.indeed.mph.TableConfig;
+import com.indeed.mph.TableMeta;
+import com.indeed.mph.TableWriter;
+import com.indeed.util.core.Pair;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSmartHashSerializer {
+    @Test
+    public void canHashWithMappedTable() throws Exception {
+        final File tmpDir = File.createTempFile("tmphashserializer", "", new File("."));
+        tmpDir.delete();
+        tmpDir.mkdirs();
+        try {
+            final TableConfig<Long, Long> config =
+                new TableConfig()
+                .withKeySerializer(new SmartLongSerializer())
+                .withValueSerializer(new SmartLongSerializer())
+                .withHashStorage(TableConfig.HashStorage.MMAPPED);
+            final Set<Pair<Long, Long>> entries = new HashSet<>();
+            for (long i = 0; i < 1000; ++i) {
+                entries.add(new Pair(i * 7, i));
+            }
+            TableWriter.write(tmpDir, config, entries);
+            // the hash function is copied to the heap and the table closed
+            final SmartHashSerializer serializer =
+                new SmartHashSerializer(new File(tmpDir, TableMeta.DEFAULT_META_PATH).getPath());
+            final Set<Integer> hashes = new HashSet<>();
+            for (long i = 0; i < 1000; ++i) {
+                final int hash = serializer.parseFromString(Long.toString(i * 7));
+                assertTrue(hash >= 0 && hash < 1000);
+                hashes.add(hash);
+            }
+            assertEquals(1000, hashes.size());
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+}
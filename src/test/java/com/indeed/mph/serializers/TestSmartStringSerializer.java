@@ -1,12 +1,21 @@
 package com.indeed.mph.serializers;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.LittleEndianDataOutputStream;
+import com.indeed.mph.Utf8View;
+import com.indeed.util.mmap.HeapMemory;
 import com.pholser.junit.quickcheck.Property;
 import com.pholser.junit.quickcheck.runner.JUnitQuickcheck;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteOrder;
 
 import static com.indeed.mph.helpers.RoundTripHelpers.assertRoundTrip;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(JUnitQuickcheck.class)
 public class TestSmartStringSerializer {
@@ -15,4 +24,22 @@ public class TestSmartStringSerializer {
         SmartStringSerializer serializer = new SmartStringSerializer();
         assertRoundTrip(serializer, target);
     }
+
+    @Property
+    public void canViewStrings(final String target) throws IOException {
+        final SmartStringSerializer serializer = new SmartStringSerializer();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        serializer.write(target, new LittleEndianDataOutputStream(bytes));
+        assertEquals(bytes.size(), serializer.sizeOf(target));
+        final Utf8View view = SmartStringSerializer.readView(new HeapMemory(bytes.toByteArray(), ByteOrder.LITTLE_ENDIAN), 0);
+        assertEquals(target.getBytes(Charsets.UTF_8).length, view.byteLength());
+        assertEquals(bytes.size(), SmartStringSerializer.serializedSize(view.byteLength()));
+        assertTrue(view.contentEquals(target));
+        assertFalse(view.contentEquals(target + "x"));
+        assertEquals(Utf8View.of(target), view);
+        assertEquals(Utf8View.of(target).hashCode(), view.hashCode());
+        assertEquals(0, Utf8View.of(target).compareTo(view));
+        assertTrue(view.compareTo(Utf8View.of(target + "\u00e9")) < 0);
+        assertEquals(new String(target.getBytes(Charsets.UTF_8), Charsets.UTF_8), view.toString());
+    }
 }
@@ -0,0 +1,25 @@
+package com.indeed.mph.serializers;
+
+import com.pholser.junit.quickcheck.Property;
+import com.pholser.junit.quickcheck.runner.JUnitQuickcheck;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static com.indeed.mph.helpers.RoundTripHelpers.assertRoundTrip;
+
+@RunWith(JUnitQuickcheck.class)
+public class TestSmartVLongSerializer {
+    @Property
+    public void canRoundTripLongs(final long target) throws IOException {
+        final SmartVLongSerializer serializer = new SmartVLongSerializer();
+        assertRoundTrip(serializer, target);
+    }
+
+    @Property
+    public void canRoundTripSmallLongs(final short target) throws IOException {
+        final SmartVLongSerializer serializer = new SmartVLongSerializer();
+        assertRoundTrip(serializer, (long) target);
+        assertRoundTrip(serializer, (long) target << 20);
+    }
+}